@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+import com.example.android.sunshine.data.TestUtilities;
+import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.PollingCheck;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Measures how long it takes to bind a forecast row and how many frames are dropped while the
+ * forecast list is scrolled. For comparison, the time it takes to build a {@link ForecastRow},
+ * which is the work onBindViewHolder used to do for every row, is measured as well.
+ * <p>
+ * The results are written to logcat under the tag of this class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestForecastListPerformance {
+
+    private static final String TAG = TestForecastListPerformance.class.getSimpleName();
+
+    /* Enough days to fill several screens */
+    private static final int DAYS_IN_FORECAST = 120;
+
+    private static final int BIND_RUNS = 20;
+
+    /* How long to fling the list up and down for, and how far each fling goes */
+    private static final long SCROLL_DURATION_MILLIS = 4000;
+    private static final int SCROLL_DISTANCE_PX = 4000;
+
+    @Rule
+    public final ActivityTestRule<MainActivity> mActivityRule =
+            new ActivityTestRule<>(MainActivity.class, false, false);
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+    private final Instrumentation mInstrumentation = InstrumentationRegistry.getInstrumentation();
+
+    @Before
+    public void setUp() throws Exception {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                TestUtilities.createForecastValues(
+                        SunshineDateUtils.getNormalizedUtcDateForToday(), DAYS_IN_FORECAST));
+
+        mActivityRule.launchActivity(null);
+
+        /* The rest of the forecast is paged in as the list is scrolled */
+        PollingCheck.check("The forecast was not loaded", 5000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return getRecyclerView().getAdapter().getItemCount() >= ForecastPager.PAGE_SIZE;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void benchmarkBind() {
+        /* What every bind used to do: read the cursor and format everything */
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                MainActivity.MAIN_FORECAST_PROJECTION,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        long formatNanos = 0;
+        for (int run = 0; run < BIND_RUNS; run++) {
+            for (int position = 0; position < cursor.getCount(); position++) {
+                long start = System.nanoTime();
+                cursor.moveToPosition(position);
+                ForecastRow.fromCursor(mContext, cursor);
+                formatNanos += System.nanoTime() - start;
+            }
+        }
+        cursor.close();
+
+        /* What a bind does now */
+        final long[] bindNanos = new long[1];
+        final int[] rowsBound = new int[1];
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                RecyclerView recyclerView = getRecyclerView();
+                ForecastAdapter adapter = (ForecastAdapter) recyclerView.getAdapter();
+
+                ForecastAdapter.ForecastAdapterViewHolder today = adapter
+                        .onCreateViewHolder(recyclerView, adapter.getItemViewType(0));
+                ForecastAdapter.ForecastAdapterViewHolder futureDay = adapter
+                        .onCreateViewHolder(recyclerView, adapter.getItemViewType(1));
+
+                for (int run = 0; run < BIND_RUNS; run++) {
+                    for (int position = 0; position < adapter.getItemCount(); position++) {
+                        ForecastAdapter.ForecastAdapterViewHolder holder =
+                                position == 0 ? today : futureDay;
+                        long start = System.nanoTime();
+                        adapter.onBindViewHolder(holder, position);
+                        bindNanos[0] += System.nanoTime() - start;
+                        rowsBound[0]++;
+                    }
+                }
+            }
+        });
+
+        Log.i(TAG, String.format("Per row: formatting %.1f us, binding %.1f us",
+                formatNanos / 1000.0 / (BIND_RUNS * DAYS_IN_FORECAST),
+                bindNanos[0] / 1000.0 / rowsBound[0]));
+    }
+
+    @Test
+    public void benchmarkScrolling() throws Exception {
+        WindowManager windowManager =
+                (WindowManager) mContext.getSystemService(Context.WINDOW_SERVICE);
+        long framePeriodNanos = (long) (TimeUnit.SECONDS.toNanos(1)
+                / windowManager.getDefaultDisplay().getRefreshRate());
+        final FrameCounter frameCounter = new FrameCounter(getRecyclerView(), framePeriodNanos);
+
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                Choreographer.getInstance().postFrameCallback(frameCounter);
+            }
+        });
+
+        long end = System.currentTimeMillis() + SCROLL_DURATION_MILLIS;
+        int direction = 1;
+        while (System.currentTimeMillis() < end) {
+            final int distance = direction * SCROLL_DISTANCE_PX;
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    frameCounter.startScroll();
+                    getRecyclerView().smoothScrollBy(0, distance);
+                }
+            });
+            Thread.sleep(500);
+            direction = -direction;
+        }
+
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                frameCounter.stop();
+            }
+        });
+
+        assertTrue("No frames were drawn", frameCounter.mFrames > 0);
+        Log.i(TAG, String.format("Scrolling: %d frames, %d dropped, slowest frame %d ms",
+                frameCounter.mFrames,
+                frameCounter.mDroppedFrames,
+                TimeUnit.NANOSECONDS.toMillis(frameCounter.mSlowestFrameNanos)));
+    }
+
+    private RecyclerView getRecyclerView() {
+        return (RecyclerView) mActivityRule.getActivity().findViewById(R.id.recyclerview_forecast);
+    }
+
+    /**
+     * Counts frames through the Choreographer while the list is scrolling. A frame that starts
+     * n display refreshes after the previous one means n - 1 frames were dropped in between.
+     * Frames while the list is idle are not counted, and neither is the gap from the last of
+     * them to the first frame of a scroll. Only used on the main thread.
+     */
+    private static final class FrameCounter implements Choreographer.FrameCallback {
+
+        private final RecyclerView mRecyclerView;
+        private final long mFramePeriodNanos;
+
+        /* Time of the previous frame of the current scroll, or 0 at the start of a scroll */
+        private long mLastFrameNanos;
+        private boolean mStopped;
+
+        int mFrames;
+        int mDroppedFrames;
+        long mSlowestFrameNanos;
+
+        FrameCounter(RecyclerView recyclerView, long framePeriodNanos) {
+            mRecyclerView = recyclerView;
+            mFramePeriodNanos = framePeriodNanos;
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (mStopped) {
+                return;
+            }
+
+            if (mRecyclerView.getScrollState() == RecyclerView.SCROLL_STATE_IDLE) {
+                mLastFrameNanos = 0;
+            } else {
+                if (mLastFrameNanos != 0) {
+                    long frameNanos = frameTimeNanos - mLastFrameNanos;
+                    mFrames++;
+                    mSlowestFrameNanos = Math.max(mSlowestFrameNanos, frameNanos);
+                    long refreshes = Math.round((double) frameNanos / mFramePeriodNanos);
+                    if (refreshes > 1) {
+                        mDroppedFrames += refreshes - 1;
+                    }
+                }
+                mLastFrameNanos = frameTimeNanos;
+            }
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        /* Called right before each scroll starts, so it is timed from its own first frame */
+        void startScroll() {
+            mLastFrameNanos = 0;
+        }
+
+        void stop() {
+            mStopped = true;
+        }
+    }
+}
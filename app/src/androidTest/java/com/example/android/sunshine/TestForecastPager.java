@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.TestUtilities;
+import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Scrolls a {@link ForecastPager} through a forecast far larger than a page and checks that every
+ * day shows up once, in order, while no more than a few pages are ever held in memory.
+ * <p>
+ * Pages are loaded on the main thread here rather than in the background, and every step runs
+ * through runOnMainSync, so each step sees the pages loaded by the one before it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestForecastPager {
+
+    private static final String TAG = TestForecastPager.class.getSimpleName();
+
+    /* Far more days than fit in MAX_RESIDENT_PAGES pages */
+    private static final int DAYS_IN_FORECAST = 1000;
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+    private final Instrumentation mInstrumentation = InstrumentationRegistry.getInstrumentation();
+
+    private final RecordingCallback mCallback = new RecordingCallback();
+    private ForecastPager mPager;
+
+    @Before
+    public void setUp() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                TestUtilities.createForecastValues(
+                        SunshineDateUtils.getNormalizedUtcDateForToday(), DAYS_IN_FORECAST));
+    }
+
+    @After
+    public void tearDown() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void testLimitParameterLimitsRows() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherUriWithLimit(7),
+                MainActivity.MAIN_FORECAST_PROJECTION,
+                WeatherContract.WeatherEntry.SQL_SELECT_FROM_DATE,
+                WeatherContract.WeatherEntry.getSelectionArgsForTodayOnwards(),
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+
+        assertNotNull("Cursor was null.", cursor);
+        assertEquals("The limit was not applied", 7, cursor.getCount());
+        cursor.close();
+    }
+
+    @Test
+    public void testScrollingThroughEveryPage() {
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        final List<ForecastRow> firstPage = ForecastPager.loadPage(mContext, today);
+        assertEquals(ForecastPager.PAGE_SIZE, firstPage.size());
+
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPager = new ForecastPager(mContext, firstPage, mCallback, DIRECT_EXECUTOR);
+            }
+        });
+
+        /* Scroll all the way down, one row at a time */
+        int maxResidentRows = 0;
+        for (int position = 0; position < DAYS_IN_FORECAST; position++) {
+            ForecastRow row = getRow(position);
+            assertNotNull("Row " + position + " was not loaded", row);
+            assertEquals("Row " + position + " is out of order",
+                    today + position * SunshineDateUtils.DAY_IN_MILLIS, row.date);
+            maxResidentRows = Math.max(maxResidentRows, getResidentRowCount());
+        }
+
+        assertEquals("Not every day was paged in", DAYS_IN_FORECAST, getRowCount());
+        assertEquals("Rows were inserted more than once",
+                DAYS_IN_FORECAST - ForecastPager.PAGE_SIZE, mCallback.mRowsInserted);
+        assertTrue("Too many rows were held in memory: " + maxResidentRows,
+                maxResidentRows <= ForecastPager.MAX_RESIDENT_PAGES * ForecastPager.PAGE_SIZE);
+
+        /* The first page was dropped long ago, so it has to be loaded again */
+        assertNull("The first page was still in memory", getRow(0));
+        ForecastRow first = getRow(0);
+        assertNotNull("The first page was not loaded again", first);
+        assertEquals(today, first.date);
+        assertEquals(ForecastPager.PAGE_SIZE, mCallback.mRowsChanged);
+
+        Log.i(TAG, String.format("%d days paged in, at most %d rows held in memory",
+                DAYS_IN_FORECAST, maxResidentRows));
+    }
+
+    private ForecastRow getRow(final int position) {
+        final ForecastRow[] row = new ForecastRow[1];
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                row[0] = mPager.get(position);
+            }
+        });
+
+        /* Let the pages that get asked for be delivered */
+        mInstrumentation.waitForIdleSync();
+        return row[0];
+    }
+
+    private int getRowCount() {
+        final int[] rowCount = new int[1];
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                rowCount[0] = mPager.getRowCount();
+            }
+        });
+        return rowCount[0];
+    }
+
+    private int getResidentRowCount() {
+        final int[] rowCount = new int[1];
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                rowCount[0] = mPager.getResidentRowCount();
+            }
+        });
+        return rowCount[0];
+    }
+
+    /**
+     * Counts the rows the pager reports. Only used on the main thread.
+     */
+    private static final class RecordingCallback implements ForecastPager.Callback {
+
+        int mRowsInserted;
+        int mRowsChanged;
+
+        @Override
+        public void onRowsInserted(int positionStart, int rowCount) {
+            mRowsInserted += rowCount;
+        }
+
+        @Override
+        public void onRowsChanged(int positionStart, int rowCount) {
+            mRowsChanged += rowCount;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.example.android.sunshine.data.TestUtilities.createForecastValues;
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Measures how long {@link WeatherProvider#bulkInsert} takes for forecasts of different sizes
+ * and compares it with inserting every row through {@link SQLiteDatabase#insert}, which is what
+ * the provider did before it compiled its INSERT statement. Both run in a single transaction so
+ * the only difference is the per row work.
+ * <p>
+ * The results are written to logcat under the tag of this class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestBulkInsertPerformance {
+
+    private static final String TAG = TestBulkInsertPerformance.class.getSimpleName();
+
+    /* A regular forecast, a large batch and a stress test */
+    private static final int[] ROW_COUNTS = {14, 1000, 100000};
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Before
+    public void setUp() {
+        deleteAllRecordsFromWeatherTable();
+    }
+
+    @After
+    public void tearDown() {
+        deleteAllRecordsFromWeatherTable();
+    }
+
+    @Test
+    public void benchmarkBulkInsert() {
+        ContentResolver contentResolver = mContext.getContentResolver();
+
+        for (int rowCount : ROW_COUNTS) {
+            ContentValues[] weatherValues =
+                    createForecastValues(TestUtilities.DATE_NORMALIZED, rowCount);
+
+            /* The baseline: one db.insert, and so one freshly built INSERT, per row */
+            WeatherDbHelper helper = new WeatherDbHelper(mContext);
+            SQLiteDatabase database = helper.getWritableDatabase();
+            long start = System.nanoTime();
+            database.beginTransaction();
+            try {
+                for (ContentValues value : weatherValues) {
+                    database.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+            long contentValuesNanos = System.nanoTime() - start;
+            database.close();
+
+            deleteAllRecordsFromWeatherTable();
+
+            /* The provider, which binds every row to a single compiled statement */
+            start = System.nanoTime();
+            int rowsInserted = contentResolver.bulkInsert(
+                    WeatherContract.WeatherEntry.CONTENT_URI,
+                    weatherValues);
+            long compiledNanos = System.nanoTime() - start;
+
+            assertEquals("Not every row was inserted", rowCount, rowsInserted);
+            assertEquals("Not every row was stored", rowCount, countRows());
+
+            Log.i(TAG, String.format("%d rows: db.insert %d us total / %.2f us per row,"
+                            + " compiled statement %d us total / %.2f us per row",
+                    rowCount,
+                    contentValuesNanos / 1000,
+                    contentValuesNanos / 1000.0 / rowCount,
+                    compiledNanos / 1000,
+                    compiledNanos / 1000.0 / rowCount));
+
+            deleteAllRecordsFromWeatherTable();
+        }
+    }
+
+    /**
+     * Rows that don't match the columns of the compiled statement must still be inserted the way
+     * they used to be.
+     */
+    @Test
+    public void testBulkInsertFallsBackForRowsWithExtraColumns() {
+        ContentValues[] weatherValues = createForecastValues(TestUtilities.DATE_NORMALIZED, 2);
+        weatherValues[1].put(WeatherContract.WeatherEntry._ID, 1000);
+
+        int rowsInserted = mContext.getContentResolver().bulkInsert(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                weatherValues);
+
+        assertEquals(2, rowsInserted);
+        assertEquals(2, countRows());
+    }
+
+    private int countRows() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                new String[]{WeatherContract.WeatherEntry._ID},
+                null,
+                null,
+                null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    private void deleteAllRecordsFromWeatherTable() {
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        SQLiteDatabase database = helper.getWritableDatabase();
+        database.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+        database.close();
+    }
+}
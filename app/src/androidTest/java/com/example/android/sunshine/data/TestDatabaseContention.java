@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.example.android.sunshine.data.TestUtilities.createBulkInsertTestWeatherValues;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Runs a loop of forecast writes, like back to back syncs, against readers doing what the
+ * forecast list and the detail screen do, and reports how long those readers had to wait.
+ * <p>
+ * The results are written to logcat under the tag of this class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestDatabaseContention {
+
+    private static final String TAG = TestDatabaseContention.class.getSimpleName();
+
+    /* How long the writer and the readers run concurrently */
+    private static final long CONTENTION_DURATION_MILLIS = 3000;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Before
+    public void setUp() {
+        deleteAllRecordsFromWeatherTable();
+    }
+
+    @After
+    public void tearDown() {
+        deleteAllRecordsFromWeatherTable();
+    }
+
+    @Test
+    public void testDatabaseUsesWriteAheadLogging() {
+        SQLiteDatabase database = new WeatherDbHelper(mContext).getReadableDatabase();
+        Cursor cursor = database.rawQuery("PRAGMA journal_mode", null);
+
+        assertTrue("journal_mode returned no rows", cursor.moveToFirst());
+        assertEquals("wal", cursor.getString(0).toLowerCase());
+
+        cursor.close();
+        database.close();
+    }
+
+    @Test
+    public void testReadersDuringSyncLoop() throws Exception {
+        final ContentResolver contentResolver = mContext.getContentResolver();
+        final ContentValues[] weatherValues = createBulkInsertTestWeatherValues();
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, weatherValues);
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch finished = new CountDownLatch(3);
+
+        /* Rewrites the whole forecast over and over, changing a temperature each time */
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int syncs = 0;
+                try {
+                    while (running.get()) {
+                        for (ContentValues value : weatherValues) {
+                            value.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, syncs % 40);
+                        }
+                        contentResolver.delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                                null, null);
+                        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                                weatherValues);
+                        syncs++;
+                    }
+                    Log.i(TAG, "Writer completed " + syncs + " syncs");
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    finished.countDown();
+                }
+            }
+        }, "sync-writer");
+
+        ReaderStats listStats = new ReaderStats("list");
+        ReaderStats detailStats = new ReaderStats("detail");
+
+        Thread listReader = createReader(listStats, WeatherContract.WeatherEntry.CONTENT_URI,
+                running, failure, finished);
+        Thread detailReader = createReader(detailStats,
+                WeatherContract.WeatherEntry.buildWeatherUriWithDate(
+                        weatherValues[0].getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE)),
+                running, failure, finished);
+
+        writer.start();
+        listReader.start();
+        detailReader.start();
+
+        Thread.sleep(CONTENTION_DURATION_MILLIS);
+        running.set(false);
+        assertTrue("Threads did not finish", finished.await(10, TimeUnit.SECONDS));
+
+        assertNull("A thread failed: " + failure.get(), failure.get());
+
+        Log.i(TAG, listStats.toString());
+        Log.i(TAG, detailStats.toString());
+    }
+
+    /**
+     * Creates a thread that keeps querying uri and records how long every query took, including
+     * reading the whole cursor, since that is when the rows are actually fetched.
+     */
+    private Thread createReader(final ReaderStats stats, final Uri uri,
+            final AtomicBoolean running, final AtomicReference<Throwable> failure,
+            final CountDownLatch finished) {
+        final ContentResolver contentResolver = mContext.getContentResolver();
+        return new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (running.get()) {
+                        long start = System.nanoTime();
+                        Cursor cursor = contentResolver.query(uri, null, null, null,
+                                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+                        while (cursor.moveToNext()) {
+                            cursor.getDouble(cursor.getColumnIndex(
+                                    WeatherContract.WeatherEntry.COLUMN_MAX_TEMP));
+                        }
+                        cursor.close();
+                        stats.record(System.nanoTime() - start);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    finished.countDown();
+                }
+            }
+        }, stats.mName + "-reader");
+    }
+
+    private void deleteAllRecordsFromWeatherTable() {
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        SQLiteDatabase database = helper.getWritableDatabase();
+        database.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+        database.close();
+    }
+
+    /**
+     * Latencies of the queries made by one reader thread. Only that thread writes to it, and it
+     * is read once the thread has finished.
+     */
+    private static final class ReaderStats {
+
+        /* Queries slower than this count as stalled behind the writer */
+        private static final long STALL_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+
+        private final String mName;
+        private long mQueryCount;
+        private long mTotalNanos;
+        private long mMaxNanos;
+        private long mStallCount;
+
+        ReaderStats(String name) {
+            mName = name;
+        }
+
+        void record(long nanos) {
+            mQueryCount++;
+            mTotalNanos += nanos;
+            mMaxNanos = Math.max(mMaxNanos, nanos);
+            if (nanos > STALL_THRESHOLD_NANOS) {
+                mStallCount++;
+            }
+        }
+
+        @Override
+        public String toString() {
+            long averageMicros = mQueryCount == 0 ? 0 : mTotalNanos / mQueryCount / 1000;
+            return String.format("%s reader: %d queries, average %d us, max %d us,"
+                            + " %d queries over 16 ms",
+                    mName, mQueryCount, averageMicros, mMaxNanos / 1000, mStallCount);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.example.android.sunshine.data.WeatherContract.WeatherEntry.COLUMN_DATE;
+import static com.example.android.sunshine.data.WeatherContract.WeatherEntry.COLUMN_DEGREES;
+import static com.example.android.sunshine.data.WeatherContract.WeatherEntry.COLUMN_HUMIDITY;
+import static com.example.android.sunshine.data.WeatherContract.WeatherEntry.COLUMN_MAX_TEMP;
+import static com.example.android.sunshine.data.WeatherContract.WeatherEntry.COLUMN_MIN_TEMP;
+import static com.example.android.sunshine.data.WeatherContract.WeatherEntry.COLUMN_PRESSURE;
+import static com.example.android.sunshine.data.WeatherContract.WeatherEntry.COLUMN_WEATHER_ID;
+import static com.example.android.sunshine.data.WeatherContract.WeatherEntry.COLUMN_WIND_SPEED;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.fail;
+
+/**
+ * Checks that a {@link ForecastBatch} survives the trip through a Bundle and that reconciling
+ * one through {@link WeatherContract#reconcileForecast} stores exactly what a bulkInsert of the
+ * same forecast as ContentValues stores.
+ * <p>
+ * The benchmark compares the bytes allocated by both paths, from building the forecast to
+ * storing it. The results are written to logcat under the tag of this class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestForecastBatch {
+
+    private static final String TAG = TestForecastBatch.class.getSimpleName();
+
+    /* A regular forecast and a large batch */
+    private static final int[] BENCHMARK_ROW_COUNTS = {14, 10000};
+
+    private static final int BENCHMARK_WARM_UP_RUNS = 2;
+    private static final int BENCHMARK_RUNS = 5;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Before
+    public void setUp() {
+        deleteAllRecordsFromWeatherTables();
+    }
+
+    @After
+    public void tearDown() {
+        deleteAllRecordsFromWeatherTables();
+    }
+
+    @Test
+    public void testBundleRoundTrip() {
+        /* More days than the default capacity, so the arrays have to grow */
+        ForecastBatch batch = createBatch(0, 40);
+
+        ForecastBatch copy = ForecastBatch.fromBundle(batch.toBundle());
+
+        assertEquals("Number of days differs", batch.size(), copy.size());
+        for (int day = 0; day < batch.size(); day++) {
+            assertSameDay(day, batch, copy);
+        }
+
+        /* Going through ContentValues must not change a thing either */
+        ForecastBatch fromValues = ForecastBatch.fromContentValues(batch.toContentValues());
+        for (int day = 0; day < batch.size(); day++) {
+            assertSameDay(day, batch, fromValues);
+        }
+    }
+
+    @Test
+    public void testFromBundleRejectsShortArrays() {
+        Bundle bundle = createBatch(0, 3).toBundle();
+        bundle.putDoubleArray(COLUMN_PRESSURE, new double[1]);
+
+        try {
+            ForecastBatch.fromBundle(bundle);
+            fail("A bundle with a short column was accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * Stores a forecast, then reconciles a newer forecast in which the first day has expired,
+     * one day changed and one day was added. Only the changed and the added day may be written.
+     */
+    @Test
+    public void testReconcileBatchWritesOnlyChangedDays() {
+        ContentResolver contentResolver = mContext.getContentResolver();
+
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_RECONCILE_URI,
+                createBatch(0, TestUtilities.BULK_INSERT_RECORDS_TO_INSERT).toContentValues());
+
+        ForecastBatch newBatch = new ForecastBatch();
+        ForecastBatch stored = createBatch(1, TestUtilities.BULK_INSERT_RECORDS_TO_INSERT);
+        for (int day = 0; day < stored.size(); day++) {
+            /* The last stored day got a little warmer */
+            double maxTemp = day == stored.size() - 1
+                    ? stored.getMaxTemp(day) + 1
+                    : stored.getMaxTemp(day);
+            newBatch.add(stored.getDate(day), stored.getWeatherId(day), stored.getMinTemp(day),
+                    maxTemp, stored.getHumidity(day), stored.getPressure(day),
+                    stored.getWindSpeed(day), stored.getDegrees(day));
+        }
+        ForecastBatch addedDay = createBatch(TestUtilities.BULK_INSERT_RECORDS_TO_INSERT, 1);
+        newBatch.add(addedDay.getDate(0), addedDay.getWeatherId(0), addedDay.getMinTemp(0),
+                addedDay.getMaxTemp(0), addedDay.getHumidity(0), addedDay.getPressure(0),
+                addedDay.getWindSpeed(0), addedDay.getDegrees(0));
+
+        int rowsWritten = WeatherContract.reconcileForecast(contentResolver,
+                WeatherContract.WeatherEntry.CONTENT_RECONCILE_URI, newBatch);
+
+        assertEquals("Only the changed and the added day should have been written",
+                2,
+                rowsWritten);
+
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                COLUMN_DATE + " ASC");
+
+        assertNotNull("Cursor was null.", cursor);
+        assertEquals("The expired day was not deleted", newBatch.size(), cursor.getCount());
+
+        for (int day = 0; cursor.moveToNext(); day++) {
+            assertEquals(newBatch.getDate(day),
+                    cursor.getLong(cursor.getColumnIndex(COLUMN_DATE)));
+            assertEquals(newBatch.getWeatherId(day),
+                    cursor.getInt(cursor.getColumnIndex(COLUMN_WEATHER_ID)));
+            assertEquals(newBatch.getMinTemp(day),
+                    cursor.getDouble(cursor.getColumnIndex(COLUMN_MIN_TEMP)));
+            assertEquals(newBatch.getMaxTemp(day),
+                    cursor.getDouble(cursor.getColumnIndex(COLUMN_MAX_TEMP)));
+            assertEquals((double) newBatch.getHumidity(day),
+                    cursor.getDouble(cursor.getColumnIndex(COLUMN_HUMIDITY)));
+            assertEquals(newBatch.getPressure(day),
+                    cursor.getDouble(cursor.getColumnIndex(COLUMN_PRESSURE)));
+            assertEquals(newBatch.getWindSpeed(day),
+                    cursor.getDouble(cursor.getColumnIndex(COLUMN_WIND_SPEED)));
+            assertEquals(newBatch.getDegrees(day),
+                    cursor.getDouble(cursor.getColumnIndex(COLUMN_DEGREES)));
+        }
+        cursor.close();
+
+        /* Nothing differs anymore, neither for the batch nor for the same days as ContentValues */
+        assertEquals("Unchanged days were written again", 0,
+                WeatherContract.reconcileForecast(contentResolver,
+                        WeatherContract.WeatherEntry.CONTENT_RECONCILE_URI, newBatch));
+        assertEquals("Unchanged days were written again", 0,
+                contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_RECONCILE_URI,
+                        newBatch.toContentValues()));
+    }
+
+    /**
+     * Compares the bytes allocated on this thread to build a forecast and reconcile it into an
+     * empty table, once as ContentValues through bulkInsert and once as a ForecastBatch through
+     * reconcileForecast. Both are built from the same days, read out of a batch that is made
+     * before counting starts, the way the parser builds them from the values it read.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void benchmarkAllocations() {
+        ContentResolver contentResolver = mContext.getContentResolver();
+
+        for (int rowCount : BENCHMARK_ROW_COUNTS) {
+            ForecastBatch forecast = createBatch(0, rowCount);
+
+            for (int i = 0; i < BENCHMARK_WARM_UP_RUNS; i++) {
+                reconcileContentValues(contentResolver, forecast);
+                deleteAllRecordsFromWeatherTables();
+                reconcileBatch(contentResolver, forecast);
+                deleteAllRecordsFromWeatherTables();
+            }
+
+            long contentValuesNanos = 0;
+            long contentValuesBytes = 0;
+            long batchNanos = 0;
+            long batchBytes = 0;
+
+            for (int i = 0; i < BENCHMARK_RUNS; i++) {
+                Runtime.getRuntime().gc();
+                Debug.resetThreadAllocSize();
+                Debug.startAllocCounting();
+                long start = System.nanoTime();
+                int rowsWritten = reconcileContentValues(contentResolver, forecast);
+                contentValuesNanos += System.nanoTime() - start;
+                Debug.stopAllocCounting();
+                contentValuesBytes += Debug.getThreadAllocSize();
+                assertEquals("Not every row was written", rowCount, rowsWritten);
+                deleteAllRecordsFromWeatherTables();
+
+                Runtime.getRuntime().gc();
+                Debug.resetThreadAllocSize();
+                Debug.startAllocCounting();
+                start = System.nanoTime();
+                rowsWritten = reconcileBatch(contentResolver, forecast);
+                batchNanos += System.nanoTime() - start;
+                Debug.stopAllocCounting();
+                batchBytes += Debug.getThreadAllocSize();
+                assertEquals("Not every row was written", rowCount, rowsWritten);
+                deleteAllRecordsFromWeatherTables();
+            }
+
+            Log.i(TAG, String.format("%d rows: ContentValues %d us / %d KB allocated,"
+                            + " ForecastBatch %d us / %d KB allocated",
+                    rowCount,
+                    contentValuesNanos / BENCHMARK_RUNS / 1000,
+                    contentValuesBytes / BENCHMARK_RUNS / 1024,
+                    batchNanos / BENCHMARK_RUNS / 1000,
+                    batchBytes / BENCHMARK_RUNS / 1024));
+        }
+    }
+
+    /**
+     * Builds the forecast the way the parser used to, one ContentValues per day, and reconciles
+     * it through bulkInsert.
+     */
+    private static int reconcileContentValues(ContentResolver contentResolver,
+            ForecastBatch forecast) {
+        return contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_RECONCILE_URI,
+                forecast.toContentValues());
+    }
+
+    /**
+     * Builds the same forecast as reconcileContentValues into a new batch and reconciles it
+     * through reconcileForecast.
+     */
+    private static int reconcileBatch(ContentResolver contentResolver, ForecastBatch forecast) {
+        ForecastBatch batch = new ForecastBatch(forecast.size());
+        for (int day = 0; day < forecast.size(); day++) {
+            batch.add(forecast.getDate(day), forecast.getWeatherId(day),
+                    forecast.getMinTemp(day), forecast.getMaxTemp(day),
+                    forecast.getHumidity(day), forecast.getPressure(day),
+                    forecast.getWindSpeed(day), forecast.getDegrees(day));
+        }
+        return WeatherContract.reconcileForecast(contentResolver,
+                WeatherContract.WeatherEntry.CONTENT_RECONCILE_URI, batch);
+    }
+
+    /**
+     * Creates a forecast of normalized, consecutive days, with the same weather as
+     * TestUtilities.createForecastValues.
+     *
+     * @param firstDay Days after TestUtilities.DATE_NORMALIZED of the first day
+     * @param rowCount Number of days
+     * @return The forecast
+     */
+    private static ForecastBatch createBatch(int firstDay, int rowCount) {
+        return ForecastBatch.fromContentValues(TestUtilities.createForecastValues(
+                TestUtilities.DATE_NORMALIZED + firstDay * SunshineDateUtils.DAY_IN_MILLIS,
+                rowCount));
+    }
+
+    private static void assertSameDay(int day, ForecastBatch expected, ForecastBatch actual) {
+        String error = "Day " + day + " differs";
+        assertEquals(error, expected.getDate(day), actual.getDate(day));
+        assertEquals(error, expected.getWeatherId(day), actual.getWeatherId(day));
+        assertEquals(error, expected.getMinTemp(day), actual.getMinTemp(day));
+        assertEquals(error, expected.getMaxTemp(day), actual.getMaxTemp(day));
+        assertEquals(error, expected.getHumidity(day), actual.getHumidity(day));
+        assertEquals(error, expected.getPressure(day), actual.getPressure(day));
+        assertEquals(error, expected.getWindSpeed(day), actual.getWindSpeed(day));
+        assertEquals(error, expected.getDegrees(day), actual.getDegrees(day));
+    }
+
+    private void deleteAllRecordsFromWeatherTables() {
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        SQLiteDatabase database = helper.getWritableDatabase();
+        database.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+        database.delete(WeatherContract.HistoryEntry.TABLE_NAME, null, null);
+        database.close();
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.example.android.sunshine.data.TestUtilities.BULK_INSERT_RECORDS_TO_INSERT;
+import static com.example.android.sunshine.data.TestUtilities.createBulkInsertTestWeatherValues;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests the forecast history: that syncs append to it, that the "as of" and date range URIs
+ * return the right forecasts and that the retention policy thins out and drops old forecasts.
+ * <p>
+ * The benchmark fills the history with a year of hourly fetches and times the range and "as of"
+ * queries. Its results are written to logcat under the tag of this class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestForecastHistory {
+
+    private static final String TAG = TestForecastHistory.class.getSimpleName();
+
+    private static final long HOUR_IN_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /* A year of syncs, once an hour, with 14 days in each forecast */
+    private static final int BENCHMARK_FETCHES = 365 * 24;
+    private static final int BENCHMARK_DAYS_PER_FORECAST = 14;
+    private static final int BENCHMARK_QUERIES = 50;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Before
+    public void setUp() {
+        deleteAllRecords();
+    }
+
+    @After
+    public void tearDown() {
+        deleteAllRecords();
+    }
+
+    @Test
+    public void testReconcileAppendsToHistory() throws Exception {
+        ContentResolver contentResolver = mContext.getContentResolver();
+        ContentValues[] firstForecast = createBulkInsertTestWeatherValues();
+
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_RECONCILE_URI,
+                firstForecast);
+
+        /* Make sure the second forecast gets a later fetch time than the first */
+        Thread.sleep(10);
+        long betweenFetches = System.currentTimeMillis();
+        Thread.sleep(10);
+
+        ContentValues[] secondForecast = createBulkInsertTestWeatherValues();
+        for (ContentValues day : secondForecast) {
+            day.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 42.0);
+        }
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_RECONCILE_URI,
+                secondForecast);
+
+        Cursor history = contentResolver.query(HistoryEntry.CONTENT_URI, null, null, null, null);
+        assertNotNull("Cursor was null.", history);
+        assertEquals("Every day of both forecasts should be in the history",
+                BULK_INSERT_RECORDS_TO_INSERT * 2,
+                history.getCount());
+        history.close();
+
+        /* As of a time between the two syncs, the first forecast was the current one */
+        Cursor asOf = contentResolver.query(HistoryEntry.buildHistoryUriAsOf(betweenFetches),
+                null, null, null, null);
+        assertNotNull("Cursor was null.", asOf);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, asOf.getCount());
+        asOf.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, asOf.moveToNext()) {
+            TestUtilities.validateCurrentRecord(
+                    "testReconcileAppendsToHistory. Error validating day " + i,
+                    asOf,
+                    firstForecast[i]);
+        }
+        asOf.close();
+
+        /* A single day has two forecasts, the first fetch before the second */
+        long day = firstForecast[2].getAsLong(HistoryEntry.COLUMN_DATE);
+        Cursor range = contentResolver.query(HistoryEntry.buildHistoryUriWithDateRange(day, day),
+                null, null, null, null);
+        assertNotNull("Cursor was null.", range);
+        assertEquals(2, range.getCount());
+        range.moveToFirst();
+        TestUtilities.validateCurrentRecord("First forecast for the day", range, firstForecast[2]);
+        range.moveToNext();
+        TestUtilities.validateCurrentRecord("Second forecast for the day", range,
+                secondForecast[2]);
+        range.close();
+    }
+
+    @Test
+    public void testCompactionAppliesRetentionPolicy() {
+        long now = System.currentTimeMillis();
+        long today = SunshineDateUtils.normalizeDate(now);
+
+        SQLiteDatabase database = new WeatherDbHelper(mContext).getWritableDatabase();
+        database.beginTransaction();
+        try {
+            /* Within the last week: both fetches of the day are kept */
+            insertForecast(database, now - HOUR_IN_MILLIS * 2, 1);
+            insertForecast(database, now - HOUR_IN_MILLIS, 1);
+
+            /* A month ago: only the last of the three fetches that day is kept */
+            long monthAgo = today - TimeUnit.DAYS.toMillis(30);
+            insertForecast(database, monthAgo + HOUR_IN_MILLIS, 1);
+            insertForecast(database, monthAgo + HOUR_IN_MILLIS * 2, 1);
+            insertForecast(database, monthAgo + HOUR_IN_MILLIS * 3, 1);
+
+            /* More than a year ago: dropped */
+            insertForecast(database, today - TimeUnit.DAYS.toMillis(400), 1);
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        database.close();
+
+        int rowsDeleted = mContext.getContentResolver()
+                .delete(HistoryEntry.CONTENT_COMPACT_URI, null, null);
+        assertEquals("Two fetches from a month ago and the one from last year should go",
+                3,
+                rowsDeleted);
+
+        Cursor history = mContext.getContentResolver().query(HistoryEntry.CONTENT_URI,
+                new String[]{HistoryEntry.COLUMN_FETCH_TIME}, null, null,
+                HistoryEntry.COLUMN_FETCH_TIME + " ASC");
+        assertNotNull("Cursor was null.", history);
+        assertEquals(3, history.getCount());
+        history.moveToFirst();
+        assertEquals("The last fetch of the day should have been kept",
+                today - TimeUnit.DAYS.toMillis(30) + HOUR_IN_MILLIS * 3,
+                history.getLong(0));
+        history.close();
+    }
+
+    @Test
+    public void benchmarkHistoryQueries() {
+        long now = System.currentTimeMillis();
+        long firstFetch = now - BENCHMARK_FETCHES * HOUR_IN_MILLIS;
+
+        SQLiteDatabase database = new WeatherDbHelper(mContext).getWritableDatabase();
+        database.beginTransaction();
+        try {
+            for (int fetch = 0; fetch < BENCHMARK_FETCHES; fetch++) {
+                insertForecast(database, firstFetch + fetch * HOUR_IN_MILLIS,
+                        BENCHMARK_DAYS_PER_FORECAST);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        /* Both kinds of query must be answered from an index rather than a table scan */
+        assertUsesIndex(database, "SELECT * FROM " + HistoryEntry.TABLE_NAME
+                + " WHERE location_id = 0 AND date BETWEEN 0 AND 1 ORDER BY date, fetch_time");
+        assertUsesIndex(database, "SELECT MAX(fetch_time) FROM " + HistoryEntry.TABLE_NAME
+                + " WHERE location_id = 0 AND fetch_time <= 1");
+        database.close();
+
+        ContentResolver contentResolver = mContext.getContentResolver();
+        long rangeNanos = 0;
+        long asOfNanos = 0;
+        int rangeRows = 0;
+
+        for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+            /* A week of days, somewhere in the year */
+            long fetchTime = firstFetch + (long) (BENCHMARK_FETCHES * (i + 0.5) / BENCHMARK_QUERIES)
+                    * HOUR_IN_MILLIS;
+            long startDate = SunshineDateUtils.normalizeDate(fetchTime);
+            long endDate = startDate + TimeUnit.DAYS.toMillis(6);
+
+            long start = System.nanoTime();
+            Cursor range = contentResolver.query(
+                    HistoryEntry.buildHistoryUriWithDateRange(startDate, endDate),
+                    null, null, null, null);
+            assertNotNull("Cursor was null.", range);
+            rangeRows += range.getCount();
+            range.close();
+            rangeNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Cursor asOf = contentResolver.query(HistoryEntry.buildHistoryUriAsOf(fetchTime),
+                    null, null, null, null);
+            assertNotNull("Cursor was null.", asOf);
+            assertEquals(BENCHMARK_DAYS_PER_FORECAST, asOf.getCount());
+            asOf.close();
+            asOfNanos += System.nanoTime() - start;
+        }
+
+        Log.i(TAG, String.format("%d history rows: week range %d us (%d rows), as of %d us",
+                BENCHMARK_FETCHES * BENCHMARK_DAYS_PER_FORECAST,
+                rangeNanos / BENCHMARK_QUERIES / 1000,
+                rangeRows / BENCHMARK_QUERIES,
+                asOfNanos / BENCHMARK_QUERIES / 1000));
+    }
+
+    /**
+     * Appends a forecast fetched at the given time, starting on the day of the fetch, to the
+     * history of the preferred location.
+     */
+    private static void insertForecast(SQLiteDatabase database, long fetchTime, int days) {
+        SQLiteStatement insert = database.compileStatement("INSERT INTO "
+                + HistoryEntry.TABLE_NAME + " ("
+                + HistoryEntry.COLUMN_LOCATION_ID + ", "
+                + HistoryEntry.COLUMN_FETCH_TIME + ", "
+                + HistoryEntry.COLUMN_DATE + ", "
+                + HistoryEntry.COLUMN_WEATHER_ID + ", "
+                + HistoryEntry.COLUMN_MIN_TEMP + ", "
+                + HistoryEntry.COLUMN_MAX_TEMP + ", "
+                + HistoryEntry.COLUMN_HUMIDITY + ", "
+                + HistoryEntry.COLUMN_PRESSURE + ", "
+                + HistoryEntry.COLUMN_WIND_SPEED + ", "
+                + HistoryEntry.COLUMN_DEGREES
+                + ") VALUES (0, ?, ?, 800, 10.5, 20.5, 50, 1000, 3.5, 180)");
+        try {
+            long firstDay = SunshineDateUtils.normalizeDate(fetchTime);
+            for (int day = 0; day < days; day++) {
+                insert.bindLong(1, fetchTime);
+                insert.bindLong(2, firstDay + day * SunshineDateUtils.DAY_IN_MILLIS);
+                insert.executeInsert();
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    private static void assertUsesIndex(SQLiteDatabase database, String query) {
+        Cursor plan = database.rawQuery("EXPLAIN QUERY PLAN " + query, null);
+        StringBuilder details = new StringBuilder();
+        try {
+            int detailIndex = plan.getColumnIndex("detail");
+            while (plan.moveToNext()) {
+                details.append(plan.getString(detailIndex)).append('\n');
+            }
+        } finally {
+            plan.close();
+        }
+        assertTrue("Query doesn't use an index: " + query + "\n" + details,
+                details.toString().contains("INDEX"));
+    }
+
+    private void deleteAllRecords() {
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        SQLiteDatabase database = helper.getWritableDatabase();
+        database.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+        database.delete(HistoryEntry.TABLE_NAME, null, null);
+        database.close();
+    }
+}
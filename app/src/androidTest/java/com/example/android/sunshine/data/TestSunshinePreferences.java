@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+import com.example.android.sunshine.utils.PollingCheck;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Callable;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks that the cached preferences follow changes made through SharedPreferences and compares
+ * formatTemperature reading the preferences from the snapshot with reading them from
+ * SharedPreferences on every call, as it used to.
+ * <p>
+ * The benchmark results are written to logcat under the tag of this class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestSunshinePreferences {
+
+    private static final String TAG = TestSunshinePreferences.class.getSimpleName();
+
+    private static final int BENCHMARK_WARM_UP_RUNS = 1000;
+    private static final int BENCHMARK_RUNS = 20000;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private SharedPreferences mSharedPreferences;
+    private String mUnitsKey;
+
+    @Before
+    public void setUp() {
+        mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        setUnitsAndWait(mContext.getString(R.string.pref_units_metric));
+    }
+
+    @After
+    public void tearDown() {
+        setUnitsAndWait(mContext.getString(R.string.pref_units_metric));
+        SunshinePreferences.resetLocationCoordinates(mContext);
+    }
+
+    @Test
+    public void testSnapshotFollowsUnitsChanges() {
+        assertTrue(SunshinePreferences.isMetric(mContext));
+
+        setUnitsAndWait(mContext.getString(R.string.pref_units_imperial));
+        assertEquals("Temperature was not formatted in Fahrenheit",
+                String.format(mContext.getString(R.string.format_temperature), 50.0),
+                SunshineWeatherUtils.formatTemperature(mContext, 10));
+    }
+
+    @Test
+    public void testLocationDetailsAreVisibleImmediately() {
+        SunshinePreferences.setLocationDetails(mContext, 37.3861, -122.0838);
+
+        /* No waiting here: our own setters refresh the snapshot before they return */
+        assertTrue(SunshinePreferences.isLocationLatLonAvailable(mContext));
+        double[] coordinates = SunshinePreferences.getLocationCoordinates(mContext);
+        assertEquals(37.3861, coordinates[0]);
+        assertEquals(-122.0838, coordinates[1]);
+
+        SunshinePreferences.resetLocationCoordinates(mContext);
+        assertFalse(SunshinePreferences.isLocationLatLonAvailable(mContext));
+    }
+
+    @Test
+    public void benchmarkFormatTemperature() {
+        for (int i = 0; i < BENCHMARK_WARM_UP_RUNS; i++) {
+            formatTemperatureFromSharedPreferences(i % 40);
+            SunshineWeatherUtils.formatTemperature(mContext, i % 40);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_RUNS; i++) {
+            formatTemperatureFromSharedPreferences(i % 40);
+        }
+        long sharedPreferencesNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_RUNS; i++) {
+            SunshineWeatherUtils.formatTemperature(mContext, i % 40);
+        }
+        long snapshotNanos = System.nanoTime() - start;
+
+        Log.i(TAG, String.format("formatTemperature: SharedPreferences %d ns, snapshot %d ns",
+                sharedPreferencesNanos / BENCHMARK_RUNS,
+                snapshotNanos / BENCHMARK_RUNS));
+    }
+
+    /**
+     * formatTemperature as it was before the preferences were cached: every call looks up the
+     * default SharedPreferences and the key and default value of the units preference.
+     */
+    private String formatTemperatureFromSharedPreferences(double temperature) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(mContext);
+
+        String keyForUnits = mContext.getString(R.string.pref_units_key);
+        String defaultUnits = mContext.getString(R.string.pref_units_metric);
+        String preferredUnits = sp.getString(keyForUnits, defaultUnits);
+        String metric = mContext.getString(R.string.pref_units_metric);
+
+        if (!metric.equals(preferredUnits)) {
+            temperature = (temperature * 1.8) + 32;
+        }
+
+        return String.format(mContext.getString(R.string.format_temperature), temperature);
+    }
+
+    /**
+     * Changes the units the way the settings screen does and waits for the change listener,
+     * which runs on the main thread, to update the snapshot.
+     */
+    private void setUnitsAndWait(final String units) {
+        mSharedPreferences.edit().putString(mUnitsKey, units).commit();
+
+        final boolean metric = units.equals(mContext.getString(R.string.pref_units_metric));
+        PollingCheck.check("The preferences snapshot was not updated", 5000,
+                new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return SunshinePreferences.isMetric(mContext) == metric;
+                    }
+                });
+    }
+}
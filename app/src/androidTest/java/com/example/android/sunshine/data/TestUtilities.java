@@ -52,7 +52,7 @@ import static junit.framework.Assert.assertTrue;
  * NOTE: If your WeatherContract class doesn't exactly match ours, THIS WILL NOT WORK as we've
  * provided and you will need to make changes to this code to use it to pass your tests.
  */
-class TestUtilities {
+public class TestUtilities {
 
     /* October 1st, 2016 at midnight, GMT time */
     static final long DATE_NORMALIZED = 1475280000000L;
@@ -172,6 +172,37 @@ class TestUtilities {
         return bulkTestWeatherValues;
     }
 
+    /**
+     * Creates a forecast of consecutive days of varied weather, as the parser stores it. The
+     * weather of each day only depends on its date, so forecasts that overlap agree on the days
+     * they share.
+     *
+     * @param firstDay Normalized UTC date of the first day
+     * @param days     Number of days
+     * @return One ContentValues per day
+     */
+    public static ContentValues[] createForecastValues(long firstDay, int days) {
+        ContentValues[] forecast = new ContentValues[days];
+
+        for (int i = 0; i < days; i++) {
+            long date = firstDay + i * SunshineDateUtils.DAY_IN_MILLIS;
+            long day = date / SunshineDateUtils.DAY_IN_MILLIS;
+
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(COLUMN_DATE, date);
+            weatherValues.put(COLUMN_WEATHER_ID, 800 + (int) (day % 5));
+            weatherValues.put(COLUMN_MIN_TEMP, 10.5 + day % 7);
+            weatherValues.put(COLUMN_MAX_TEMP, 20.5 + day % 9);
+            weatherValues.put(COLUMN_HUMIDITY, 40 + (int) (day % 50));
+            weatherValues.put(COLUMN_PRESSURE, 1000.5 + day % 30);
+            weatherValues.put(COLUMN_WIND_SPEED, 1.3 + day % 12);
+            weatherValues.put(COLUMN_DEGREES, (double) (day * 37 % 360));
+            forecast[i] = weatherValues;
+        }
+
+        return forecast;
+    }
+
 
     static TestContentObserver getTestContentObserver() {
         return TestContentObserver.getTestContentObserver();
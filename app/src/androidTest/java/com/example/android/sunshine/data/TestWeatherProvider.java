@@ -27,6 +27,8 @@ import android.net.Uri;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -423,6 +425,154 @@ public class TestWeatherProvider {
         shouldBeEmptyCursor.close();
     }
 
+    /**
+     * This test reconciles a new forecast with the one stored by {@link #testBulkInsert()}. The
+     * new forecast no longer contains the first day, changes the high temperature of another day
+     * and adds a day at the end. Only the changed and the added day should be written, the first
+     * day should be deleted and every other day should be left alone.
+     * <p>
+     * Reconciling the same forecast a second time must not write anything.
+     */
+    @Test
+    public void testReconcileWritesOnlyChangedDays() {
+
+        /* Store the forecast we are going to reconcile against */
+        testBulkInsert();
+
+        ContentValues[] storedValues = createBulkInsertTestWeatherValues();
+        ContentValues[] newValues = new ContentValues[BULK_INSERT_RECORDS_TO_INSERT];
+
+        /* Every day but the first moves up by one, so the first day has expired */
+        for (int i = 1; i < BULK_INSERT_RECORDS_TO_INSERT; i++) {
+            newValues[i - 1] = new ContentValues(storedValues[i]);
+        }
+
+        /* Change one of the days we already have */
+        int changedDay = 3;
+        newValues[changedDay].put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 100.0);
+
+        /* And add a day after the last stored one */
+        ContentValues addedDay = new ContentValues(storedValues[BULK_INSERT_RECORDS_TO_INSERT - 1]);
+        addedDay.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                addedDay.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE)
+                        + SunshineDateUtils.DAY_IN_MILLIS);
+        newValues[BULK_INSERT_RECORDS_TO_INSERT - 1] = addedDay;
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        ContentResolver contentResolver = mContext.getContentResolver();
+        contentResolver.registerContentObserver(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                true,
+                weatherObserver);
+
+        int rowsWritten = contentResolver.bulkInsert(
+                WeatherContract.WeatherEntry.CONTENT_RECONCILE_URI,
+                newValues);
+
+        /* Something changed, so observers of the weather URI must be told about it */
+        weatherObserver.waitForNotificationOrFail();
+        contentResolver.unregisterContentObserver(weatherObserver);
+
+        assertEquals("Only the changed and the added day should have been written",
+                2,
+                rowsWritten);
+
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+
+        assertNotNull("Cursor was null.", cursor);
+        assertEquals("The expired day was not deleted",
+                BULK_INSERT_RECORDS_TO_INSERT,
+                cursor.getCount());
+
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord(
+                    "testReconcileWritesOnlyChangedDays. Error validating WeatherEntry " + i,
+                    cursor,
+                    newValues[i]);
+        }
+        cursor.close();
+
+        /* Nothing differs anymore, so reconciling again must not write a single day */
+        int rowsRewritten = contentResolver.bulkInsert(
+                WeatherContract.WeatherEntry.CONTENT_RECONCILE_URI,
+                newValues);
+
+        assertEquals("Unchanged days were written again", 0, rowsRewritten);
+    }
+
+    /**
+     * Tests that the forecast of a saved location is kept apart from the forecast of the
+     * preferred location, and that deleting the location deletes its forecast.
+     */
+    @Test
+    public void testSavedLocationForecastIsSeparate() {
+
+        /* The preferred location has a forecast of its own */
+        testBulkInsert();
+
+        ContentResolver contentResolver = mContext.getContentResolver();
+
+        ContentValues location = new ContentValues();
+        location.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, "London, UK");
+        Uri locationUri = contentResolver.insert(WeatherContract.LocationEntry.CONTENT_URI,
+                location);
+        assertNotNull("Saving a location didn't return its URI", locationUri);
+
+        /* Saving it a second time must hand back the same location */
+        assertEquals("Saving a location twice created two locations",
+                locationUri,
+                contentResolver.insert(WeatherContract.LocationEntry.CONTENT_URI, location));
+
+        long locationId = Long.parseLong(locationUri.getLastPathSegment());
+        Uri forecastUri = WeatherContract.LocationEntry.buildWeatherUri(locationId);
+
+        /* Store a shorter forecast for the same dates under the saved location */
+        ContentValues[] savedLocationValues = new ContentValues[3];
+        ContentValues[] preferredValues = createBulkInsertTestWeatherValues();
+        for (int i = 0; i < savedLocationValues.length; i++) {
+            savedLocationValues[i] = new ContentValues(preferredValues[i]);
+            savedLocationValues[i].put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, -10.0 - i);
+        }
+        assertEquals(savedLocationValues.length,
+                contentResolver.bulkInsert(forecastUri, savedLocationValues));
+
+        Cursor preferredCursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI, null, null, null, null);
+        assertNotNull("Cursor was null.", preferredCursor);
+        assertEquals("The saved location's forecast replaced the preferred location's",
+                BULK_INSERT_RECORDS_TO_INSERT,
+                preferredCursor.getCount());
+        preferredCursor.close();
+
+        Cursor savedLocationCursor = contentResolver.query(forecastUri, null, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        assertNotNull("Cursor was null.", savedLocationCursor);
+        assertEquals(savedLocationValues.length, savedLocationCursor.getCount());
+        savedLocationCursor.moveToFirst();
+        for (int i = 0; i < savedLocationValues.length; i++, savedLocationCursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord(
+                    "testSavedLocationForecastIsSeparate. Error validating WeatherEntry " + i,
+                    savedLocationCursor,
+                    savedLocationValues[i]);
+        }
+        savedLocationCursor.close();
+
+        assertEquals(1, contentResolver.delete(locationUri, null, null));
+
+        savedLocationCursor = contentResolver.query(forecastUri, null, null, null, null);
+        assertNotNull("Cursor was null.", savedLocationCursor);
+        assertEquals("Deleting the location didn't delete its forecast",
+                0,
+                savedLocationCursor.getCount());
+        savedLocationCursor.close();
+    }
+
     /**
      * This method will clear all rows from the weather table in our database.
      * <p>
@@ -442,6 +592,8 @@ public class TestWeatherProvider {
 
         /* The delete method deletes all of the desired rows from the table, not the table itself */
         database.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+        database.delete(WeatherContract.LocationEntry.TABLE_NAME, null, null);
+        database.delete(WeatherContract.HistoryEntry.TABLE_NAME, null, null);
 
         /* Always close the database when you're through with it */
         database.close();
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks that overlapping sync requests are merged. The real sync goes to the network, so these
+ * tests give the coordinator a sync that only finishes when the test lets it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestSunshineSyncCoordinator {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final AtomicInteger mSyncCount = new AtomicInteger();
+    private final Semaphore mSyncStarted = new Semaphore(0);
+    private final Semaphore mFinishSync = new Semaphore(0);
+
+    private ExecutorService mExecutor;
+    private SunshineSyncCoordinator mCoordinator;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newSingleThreadExecutor();
+
+        Callable<List<String>> sync = new Callable<List<String>>() {
+            @Override
+            public List<String> call() throws Exception {
+                int syncNumber = mSyncCount.incrementAndGet();
+                mSyncStarted.release();
+                mFinishSync.acquire();
+                return Collections.singletonList(String.valueOf(syncNumber));
+            }
+        };
+        mCoordinator = new SunshineSyncCoordinator(sync, mExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        mFinishSync.release(100);
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testRequestWhileIdleStartsSync() throws Exception {
+        Future<List<String>> sync = mCoordinator.requestSync();
+        assertTrue(mSyncStarted.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        mFinishSync.release();
+        assertEquals(Collections.singletonList("1"), sync.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        /* Once the sync is done, the next request starts a new one */
+        Future<List<String>> nextSync = mCoordinator.requestSync();
+        assertNotSame(sync, nextSync);
+        mFinishSync.release();
+        assertEquals(Collections.singletonList("2"),
+                nextSync.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertEquals(2, mCoordinator.getRequestCount());
+        assertEquals(0, mCoordinator.getMergedRequestCount());
+        assertEquals(2, mCoordinator.getExecutedSyncCount());
+    }
+
+    @Test
+    public void testRequestsDuringSyncShareOneFollowUpSync() throws Exception {
+        Future<List<String>> runningSync = mCoordinator.requestSync();
+        assertTrue(mSyncStarted.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        /* Everything that asks while the first sync runs gets the same queued sync */
+        final int concurrentRequests = 8;
+        final List<Future<List<String>>> queuedSyncs =
+                Collections.synchronizedList(new ArrayList<Future<List<String>>>());
+        final CountDownLatch requested = new CountDownLatch(concurrentRequests);
+        for (int i = 0; i < concurrentRequests; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    queuedSyncs.add(mCoordinator.requestSync());
+                    requested.countDown();
+                }
+            }).start();
+        }
+        assertTrue(requested.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        Future<List<String>> queuedSync = queuedSyncs.get(0);
+        assertNotSame(runningSync, queuedSync);
+        for (Future<List<String>> sync : queuedSyncs) {
+            assertSame(queuedSync, sync);
+        }
+
+        mFinishSync.release();
+        assertEquals(Collections.singletonList("1"),
+                runningSync.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertTrue(mSyncStarted.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        mFinishSync.release();
+        assertEquals(Collections.singletonList("2"),
+                queuedSync.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertEquals(2, mSyncCount.get());
+        assertEquals(concurrentRequests + 1, mCoordinator.getRequestCount());
+        assertEquals(concurrentRequests - 1, mCoordinator.getMergedRequestCount());
+        assertEquals(2, mCoordinator.getExecutedSyncCount());
+    }
+
+    @Test
+    public void testSharedSyncCannotBeCancelled() throws Exception {
+        Future<List<String>> sync = mCoordinator.requestSync();
+        assertTrue(mSyncStarted.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertFalse(sync.cancel(true));
+        assertFalse(sync.isCancelled());
+
+        mFinishSync.release();
+        assertEquals(Collections.singletonList("1"), sync.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.example.android.sunshine.sync.SyncIntervalPolicy.DEFAULT_INTERVAL_SECONDS;
+import static com.example.android.sunshine.sync.SyncIntervalPolicy.MAX_INTERVAL_SECONDS;
+import static com.example.android.sunshine.sync.SyncIntervalPolicy.MIN_INTERVAL_SECONDS;
+import static com.example.android.sunshine.sync.SyncIntervalPolicy.OUTCOME_CHANGED;
+import static com.example.android.sunshine.sync.SyncIntervalPolicy.OUTCOME_FAILED;
+import static com.example.android.sunshine.sync.SyncIntervalPolicy.OUTCOME_STALE;
+import static com.example.android.sunshine.sync.SyncIntervalPolicy.OUTCOME_UNCHANGED;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks the rules of the adaptive sync interval, and replays a recorded week of forecast changes
+ * against both the adaptive interval and the fixed 3 hour interval it replaced. The simulation
+ * results are written to logcat under the tag of this class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestSyncIntervalPolicy {
+
+    private static final String TAG = TestSyncIntervalPolicy.class.getSimpleName();
+
+    private static final long HOUR_IN_SECONDS = TimeUnit.HOURS.toSeconds(1);
+
+    /*
+     * Hours, from the start of the recording, at which the server's forecast for Mountain View
+     * changed. The first two days and the sixth were stormy; the days in between were calm.
+     */
+    private static final double[] RECORDED_FORECAST_CHANGES = {
+            1.5, 4, 6.5, 9, 12, 15, 18, 21,
+            27, 33, 40, 45,
+            60, 84, 108,
+            122, 124, 127, 130, 134, 139,
+            150, 162
+    };
+
+    private static final long RECORDING_SECONDS = TimeUnit.DAYS.toSeconds(7);
+
+    @Test
+    public void testUnchangedForecastStretchesIntervalUpToMax() {
+        long interval = DEFAULT_INTERVAL_SECONDS;
+        long previous;
+        do {
+            previous = interval;
+            interval = SyncIntervalPolicy.getNextIntervalSeconds(interval, OUTCOME_UNCHANGED);
+            assertTrue("Interval shrank on an unchanged forecast", interval >= previous);
+        } while (interval != previous);
+
+        assertEquals(MAX_INTERVAL_SECONDS, interval);
+    }
+
+    @Test
+    public void testChangedForecastShortensInterval() {
+        assertEquals(DEFAULT_INTERVAL_SECONDS,
+                SyncIntervalPolicy.getNextIntervalSeconds(MAX_INTERVAL_SECONDS, OUTCOME_CHANGED));
+        assertEquals(DEFAULT_INTERVAL_SECONDS,
+                SyncIntervalPolicy.getNextIntervalSeconds(DEFAULT_INTERVAL_SECONDS,
+                        OUTCOME_CHANGED));
+        assertEquals(MIN_INTERVAL_SECONDS,
+                SyncIntervalPolicy.getNextIntervalSeconds(MIN_INTERVAL_SECONDS, OUTCOME_CHANGED));
+    }
+
+    @Test
+    public void testStaleDataSyncsSoonest() {
+        assertEquals(MIN_INTERVAL_SECONDS,
+                SyncIntervalPolicy.getNextIntervalSeconds(MAX_INTERVAL_SECONDS, OUTCOME_STALE));
+    }
+
+    @Test
+    public void testFailedSyncKeepsInterval() {
+        assertEquals(MAX_INTERVAL_SECONDS,
+                SyncIntervalPolicy.getNextIntervalSeconds(MAX_INTERVAL_SECONDS, OUTCOME_FAILED));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownOutcomeIsRejected() {
+        SyncIntervalPolicy.getNextIntervalSeconds(DEFAULT_INTERVAL_SECONDS, -1);
+    }
+
+    /**
+     * Replays the recorded forecast changes, syncing at the start of every execution window. For
+     * every change we measure its lag: how long the stored forecast was out of date before a sync
+     * picked the change up. Changes that no sync picked up before the end of the recording lag
+     * until the end.
+     */
+    @Test
+    public void simulateRecordedTimeline() {
+        SimulationResult fixed = simulate(false);
+        SimulationResult adaptive = simulate(true);
+
+        Log.i(TAG, String.format("Fixed 3h: %d network calls, mean lag %d min, max lag %d min",
+                fixed.networkCalls, fixed.getMeanLagMinutes(), fixed.getMaxLagMinutes()));
+        Log.i(TAG, String.format("Adaptive: %d network calls, mean lag %d min, max lag %d min",
+                adaptive.networkCalls, adaptive.getMeanLagMinutes(), adaptive.getMaxLagMinutes()));
+        Log.i(TAG, String.format("Adaptive saved %d network calls (%d%%) for %+d min of mean lag",
+                fixed.networkCalls - adaptive.networkCalls,
+                100 * (fixed.networkCalls - adaptive.networkCalls) / fixed.networkCalls,
+                adaptive.getMeanLagMinutes() - fixed.getMeanLagMinutes()));
+
+        assertTrue("The adaptive interval should make fewer network calls",
+                adaptive.networkCalls < fixed.networkCalls);
+        assertTrue("No change should wait longer than the longest interval",
+                adaptive.maxLagSeconds <= MAX_INTERVAL_SECONDS);
+    }
+
+    private static SimulationResult simulate(boolean adaptive) {
+        SimulationResult result = new SimulationResult();
+        long interval = DEFAULT_INTERVAL_SECONDS;
+        int nextChange = 0;
+
+        for (long now = 0; now <= RECORDING_SECONDS; now += interval) {
+            result.networkCalls++;
+
+            boolean changed = false;
+            while (nextChange < RECORDED_FORECAST_CHANGES.length
+                    && getChangeSeconds(nextChange) <= now) {
+                result.recordLag(now - getChangeSeconds(nextChange));
+                changed = true;
+                nextChange++;
+            }
+
+            if (adaptive) {
+                interval = SyncIntervalPolicy.getNextIntervalSeconds(interval,
+                        changed ? OUTCOME_CHANGED : OUTCOME_UNCHANGED);
+            }
+        }
+
+        for (; nextChange < RECORDED_FORECAST_CHANGES.length; nextChange++) {
+            result.recordLag(RECORDING_SECONDS - getChangeSeconds(nextChange));
+        }
+        return result;
+    }
+
+    private static long getChangeSeconds(int index) {
+        return (long) (RECORDED_FORECAST_CHANGES[index] * HOUR_IN_SECONDS);
+    }
+
+    private static final class SimulationResult {
+        int networkCalls;
+        int changes;
+        long totalLagSeconds;
+        long maxLagSeconds;
+
+        void recordLag(long lagSeconds) {
+            changes++;
+            totalLagSeconds += lagSeconds;
+            maxLagSeconds = Math.max(maxLagSeconds, lagSeconds);
+        }
+
+        long getMeanLagMinutes() {
+            return changes == 0 ? 0 : totalLagSeconds / changes / 60;
+        }
+
+        long getMaxLagMinutes() {
+            return maxLagSeconds / 60;
+        }
+    }
+}
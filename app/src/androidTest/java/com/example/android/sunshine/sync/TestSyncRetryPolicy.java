@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utilities.NetworkUtils;
+import com.example.android.sunshine.utils.StubHttpServer;
+
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Runs requests through the retry policy and the circuit breaker against a stub HTTP server on
+ * the device, which answers each request with a scripted status code after a scripted delay.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestSyncRetryPolicy {
+
+    private static final String TEST_PREFS_NAME = "test_sync_circuit_breaker";
+
+    private static final String BODY = "{\"cod\":\"200\"}";
+
+    private static final long NOW = 1474574400000L;
+
+    /* Short delays, so that the retries don't slow the tests down */
+    private final SyncRetryPolicy mRetryPolicy =
+            new SyncRetryPolicy(3, 10, 40, new Random(42));
+
+    private SharedPreferences mBreakerPreferences;
+    private SyncCircuitBreaker mBreaker;
+    private StubHttpServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        Context context = InstrumentationRegistry.getTargetContext();
+        mBreakerPreferences = context.getSharedPreferences(TEST_PREFS_NAME, Context.MODE_PRIVATE);
+        mBreakerPreferences.edit().clear().commit();
+        mBreaker = new SyncCircuitBreaker(mBreakerPreferences);
+
+        mServer = new StubHttpServer();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.close();
+        mBreakerPreferences.edit().clear().commit();
+    }
+
+    @Test
+    public void testRetriesUntilServerRecovers() throws Exception {
+        mServer.enqueue(unavailable(0));
+        mServer.enqueue(unavailable(0));
+        mServer.enqueue(ok(0));
+
+        assertEquals(BODY, mRetryPolicy.execute(mBreaker, fetch()));
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals(0, mBreaker.getConsecutiveFailures());
+    }
+
+    @Test
+    public void testSlowResponseIsNotAFailure() throws Exception {
+        mServer.enqueue(ok(500));
+
+        assertEquals(BODY, mRetryPolicy.execute(mBreaker, fetch()));
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(0, mBreaker.getConsecutiveFailures());
+    }
+
+    @Test
+    public void testBreakerOpensAfterRepeatedFailuresAndPersists() throws Exception {
+        for (int sync = 0; sync < SyncCircuitBreaker.FAILURE_THRESHOLD; sync++) {
+            for (int attempt = 0; attempt < 3; attempt++) {
+                mServer.enqueue(unavailable(50));
+            }
+            try {
+                mRetryPolicy.execute(mBreaker, fetch());
+                fail("Expected the request to fail");
+            } catch (SyncCircuitBreaker.OpenException e) {
+                fail("The breaker opened too early");
+            } catch (IOException expected) {
+            }
+        }
+        assertEquals(3 * SyncCircuitBreaker.FAILURE_THRESHOLD, mServer.getRequestCount());
+
+        /* The breaker is now open, so the server isn't asked again */
+        try {
+            mRetryPolicy.execute(mBreaker, fetch());
+            fail("Expected the breaker to be open");
+        } catch (SyncCircuitBreaker.OpenException expected) {
+        }
+        assertEquals(3 * SyncCircuitBreaker.FAILURE_THRESHOLD, mServer.getRequestCount());
+
+        /* A new process reads the same state back */
+        SyncCircuitBreaker restarted = new SyncCircuitBreaker(mBreakerPreferences);
+        assertFalse(restarted.allowRequest(System.currentTimeMillis()));
+        assertEquals(mBreaker.getOpenUntil(), restarted.getOpenUntil());
+    }
+
+    @Test
+    public void testFailedTrialDoublesOpenPeriod() {
+        for (int i = 0; i < SyncCircuitBreaker.FAILURE_THRESHOLD; i++) {
+            assertTrue(mBreaker.allowRequest(NOW));
+            mBreaker.recordFailure(NOW);
+        }
+        long reopen = NOW + SyncCircuitBreaker.INITIAL_OPEN_MILLIS;
+        assertFalse(mBreaker.allowRequest(reopen - 1));
+        assertTrue(mBreaker.allowRequest(reopen));
+
+        /* The trial fails, so the breaker opens for twice as long */
+        mBreaker.recordFailure(reopen);
+        assertEquals(reopen + 2 * SyncCircuitBreaker.INITIAL_OPEN_MILLIS, mBreaker.getOpenUntil());
+
+        /* However often it fails, it never stays open for longer than the maximum */
+        long now = mBreaker.getOpenUntil();
+        for (int i = 0; i < 20; i++) {
+            mBreaker.recordFailure(now);
+            assertTrue(mBreaker.getOpenUntil() - now <= SyncCircuitBreaker.MAX_OPEN_MILLIS);
+            now = mBreaker.getOpenUntil();
+        }
+
+        /* A successful trial closes it */
+        mBreaker.recordSuccess();
+        assertTrue(mBreaker.allowRequest(NOW));
+        assertEquals(0, mBreaker.getConsecutiveFailures());
+    }
+
+    @Test
+    public void testClockSetBackDoesNotKeepBreakerOpen() {
+        for (int i = 0; i < SyncCircuitBreaker.FAILURE_THRESHOLD; i++) {
+            mBreaker.recordFailure(NOW);
+        }
+        assertTrue(mBreaker.allowRequest(NOW - SyncCircuitBreaker.MAX_OPEN_MILLIS));
+    }
+
+    @Test
+    public void testDelaysGrowExponentiallyWithJitter() {
+        long previousCap = 0;
+        for (int failedAttempts = 1; failedAttempts <= 40; failedAttempts++) {
+            long cap = Math.min(40, 10L << Math.min(failedAttempts - 1, 30));
+            long delay = mRetryPolicy.getDelayMillis(failedAttempts);
+
+            assertTrue("Delay " + delay + " below half of " + cap, delay >= cap / 2);
+            assertTrue("Delay " + delay + " above " + cap, delay <= cap);
+            assertTrue(cap >= previousCap);
+            previousCap = cap;
+        }
+    }
+
+    private SyncRetryPolicy.Attempt<String> fetch() throws IOException {
+        final URL url = mServer.getUrl("/weather");
+        return new SyncRetryPolicy.Attempt<String>() {
+            @Override
+            public String run() throws IOException, JSONException {
+                return NetworkUtils.getResponseFromHttpUrl(url);
+            }
+        };
+    }
+
+    private static StubHttpServer.Response ok(long delayMillis) throws IOException {
+        return new StubHttpServer.Response(200, BODY.getBytes("UTF-8")).delay(delayMillis);
+    }
+
+    private static StubHttpServer.Response unavailable(long delayMillis) {
+        return new StubHttpServer.Response(503, new byte[0]).delay(delayMillis);
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.utils.StubHttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Scanner;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Checks that NetworkUtils asks for compressed responses, decodes them while reading, counts
+ * their bytes and refuses oversized ones, using a stub HTTP server on the device. Also compares
+ * the download path against the Scanner based one it replaced. The benchmark results are written
+ * to logcat under the tag of this class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestNetworkUtils {
+
+    private static final String TAG = TestNetworkUtils.class.getSimpleName();
+
+    /* The saved locations a heavy user might have, all fetched in one large payload */
+    private static final int MULTI_LOCATION_COUNT = 100;
+
+    private static final int BENCHMARK_WARM_UP_RUNS = 5;
+    private static final int BENCHMARK_RUNS = 20;
+
+    private StubHttpServer mServer;
+    private URL mUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new StubHttpServer();
+        mUrl = mServer.getUrl("/weather");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.close();
+    }
+
+    @Test
+    public void testGzipResponseIsDecodedAndCounted() throws Exception {
+        String forecastJson = TestOpenWeatherJsonUtils.createForecastJson(14);
+        byte[] compressed = gzip(forecastJson.getBytes("UTF-8"));
+        mServer.enqueue(new StubHttpServer.Response(200, compressed)
+                .header("Content-Encoding", "gzip"));
+
+        long onWireBefore = NetworkUtils.getBytesOnWire();
+        long decodedBefore = NetworkUtils.getBytesDecoded();
+
+        assertEquals(forecastJson, NetworkUtils.getResponseFromHttpUrl(mUrl));
+        assertTrue("gzip wasn't requested",
+                mServer.getLastRequestHeaders().get("accept-encoding").contains("gzip"));
+
+        assertEquals(compressed.length, NetworkUtils.getBytesOnWire() - onWireBefore);
+        assertEquals(forecastJson.getBytes("UTF-8").length,
+                NetworkUtils.getBytesDecoded() - decodedBefore);
+    }
+
+    @Test
+    public void testDeflateResponseIsDecoded() throws Exception {
+        String forecastJson = TestOpenWeatherJsonUtils.createForecastJson(14);
+        mServer.enqueue(new StubHttpServer.Response(200, deflate(forecastJson.getBytes("UTF-8")))
+                .header("Content-Encoding", "deflate"));
+
+        assertEquals(forecastJson, NetworkUtils.getResponseFromHttpUrl(mUrl));
+    }
+
+    @Test
+    public void testUncompressedResponseIsRead() throws Exception {
+        String forecastJson = TestOpenWeatherJsonUtils.createForecastJson(14);
+        mServer.enqueue(new StubHttpServer.Response(200, forecastJson.getBytes("UTF-8")));
+
+        assertEquals(forecastJson, NetworkUtils.getResponseFromHttpUrl(mUrl));
+    }
+
+    @Test
+    public void testEmptyResponseIsNull() throws Exception {
+        mServer.enqueue(new StubHttpServer.Response(200, new byte[0]));
+
+        assertEquals(null, NetworkUtils.getResponseFromHttpUrl(mUrl));
+    }
+
+    @Test
+    public void testOversizedResponseIsRejected() throws Exception {
+        byte[] oversized = new byte[(int) NetworkUtils.MAX_BODY_BYTES + 1];
+        Arrays.fill(oversized, (byte) ' ');
+        mServer.enqueue(new StubHttpServer.Response(200, oversized));
+
+        try {
+            NetworkUtils.getResponseFromHttpUrl(mUrl);
+            fail("Expected the response to be rejected");
+        } catch (IOException expected) {
+        }
+    }
+
+    /**
+     * A few KB of gzip can inflate into megabytes, so the limit has to hold after decoding too.
+     */
+    @Test
+    public void testOversizedDecodedResponseIsRejected() throws Exception {
+        byte[] oversized = new byte[(int) NetworkUtils.MAX_BODY_BYTES + 1];
+        Arrays.fill(oversized, (byte) ' ');
+        byte[] compressed = gzip(oversized);
+        assertTrue(compressed.length < NetworkUtils.MAX_BODY_BYTES);
+        mServer.enqueue(new StubHttpServer.Response(200, compressed)
+                .header("Content-Encoding", "gzip"));
+
+        try {
+            NetworkUtils.getResponseFromHttpUrl(mUrl);
+            fail("Expected the response to be rejected");
+        } catch (IOException expected) {
+        }
+    }
+
+    /**
+     * Downloads a single forecast and a large payload of many forecasts, both through the old
+     * Scanner path from an uncompressed response and through NetworkUtils from a gzip one.
+     */
+    @Test
+    public void benchmarkDownloads() throws Exception {
+        String forecastJson = TestOpenWeatherJsonUtils.createForecastJson(14);
+
+        StringBuilder multiLocationJson = new StringBuilder("[");
+        for (int i = 0; i < MULTI_LOCATION_COUNT; i++) {
+            if (i > 0) multiLocationJson.append(',');
+            multiLocationJson.append(forecastJson);
+        }
+        multiLocationJson.append(']');
+
+        benchmarkDownload("14 days", forecastJson.getBytes("UTF-8"));
+        benchmarkDownload(MULTI_LOCATION_COUNT + " locations",
+                multiLocationJson.toString().getBytes("UTF-8"));
+    }
+
+    private void benchmarkDownload(String name, byte[] body) throws Exception {
+        byte[] compressed = gzip(body);
+
+        for (int i = 0; i < BENCHMARK_WARM_UP_RUNS; i++) {
+            mServer.enqueue(new StubHttpServer.Response(200, body));
+            readWithScanner(mUrl);
+            mServer.enqueue(new StubHttpServer.Response(200, compressed)
+                    .header("Content-Encoding", "gzip"));
+            NetworkUtils.getResponseFromHttpUrl(mUrl);
+        }
+
+        long scannerNanos = 0;
+        long streamingNanos = 0;
+        long onWireBefore = NetworkUtils.getBytesOnWire();
+        long decodedBefore = NetworkUtils.getBytesDecoded();
+
+        for (int i = 0; i < BENCHMARK_RUNS; i++) {
+            mServer.enqueue(new StubHttpServer.Response(200, body));
+            long start = System.nanoTime();
+            readWithScanner(mUrl);
+            scannerNanos += System.nanoTime() - start;
+
+            mServer.enqueue(new StubHttpServer.Response(200, compressed)
+                    .header("Content-Encoding", "gzip"));
+            start = System.nanoTime();
+            NetworkUtils.getResponseFromHttpUrl(mUrl);
+            streamingNanos += System.nanoTime() - start;
+        }
+
+        Log.i(TAG, String.format("%s: Scanner %d us / %d bytes on the wire,"
+                        + " gzip streaming %d us / %d bytes on the wire for %d decoded bytes",
+                name,
+                scannerNanos / BENCHMARK_RUNS / 1000,
+                body.length,
+                streamingNanos / BENCHMARK_RUNS / 1000,
+                (NetworkUtils.getBytesOnWire() - onWireBefore) / BENCHMARK_RUNS,
+                (NetworkUtils.getBytesDecoded() - decodedBefore) / BENCHMARK_RUNS));
+    }
+
+    /**
+     * The download path NetworkUtils used before: no compression, no size limit, and a regex
+     * scan of the whole body.
+     */
+    private static String readWithScanner(URL url) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        try {
+            InputStream in = urlConnection.getInputStream();
+            Scanner scanner = new Scanner(in);
+            scanner.useDelimiter("\\A");
+            String response = scanner.hasNext() ? scanner.next() : null;
+            scanner.close();
+            return response;
+        } finally {
+            urlConnection.disconnect();
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream out = new GZIPOutputStream(compressed);
+        out.write(data);
+        out.close();
+        return compressed.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream out = new DeflaterOutputStream(compressed);
+        out.write(data);
+        out.close();
+        return compressed.toByteArray();
+    }
+}
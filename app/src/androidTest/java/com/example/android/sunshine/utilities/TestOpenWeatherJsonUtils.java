@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.util.Pair;
+import android.util.Log;
+
+import com.example.android.sunshine.data.SunshinePreferences;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Scanner;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+
+/**
+ * Checks that the streaming forecast parser produces exactly what the JSONObject parser produces
+ * and compares the two on forecasts of different sizes.
+ * <p>
+ * The parsers rely on android.util.JsonReader and the framework's org.json, so this runs as an
+ * instrumentation test rather than on the JVM. The benchmark results are written to logcat under
+ * the tag of this class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestOpenWeatherJsonUtils {
+
+    private static final String TAG = TestOpenWeatherJsonUtils.class.getSimpleName();
+
+    /* Forecast sizes to benchmark: the default request, a full OWM daily request and a stress test */
+    private static final int[] BENCHMARK_ENTRY_COUNTS = {14, 16, 500};
+
+    private static final int BENCHMARK_WARM_UP_RUNS = 5;
+    private static final int BENCHMARK_RUNS = 20;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    /**
+     * Both parsers store the coordinates of the forecast's city, so we clear them once we're done.
+     */
+    @After
+    public void tearDown() {
+        SunshinePreferences.resetLocationCoordinates(mContext);
+    }
+
+    @Test
+    public void testStreamingParserMatchesJsonObjectParser() throws Exception {
+        for (int entryCount : BENCHMARK_ENTRY_COUNTS) {
+            String forecastJson = createForecastJson(entryCount);
+
+            Pair<List<String>, ContentValues[]> expected = OpenWeatherJsonUtils
+                    .getWeatherContentValuesFromJson(mContext, forecastJson);
+            Pair<List<String>, ContentValues[]> actual = OpenWeatherJsonUtils
+                    .getWeatherContentValuesFromStream(mContext, toStream(forecastJson));
+
+            assertNotNull("Streaming parser returned null for " + entryCount + " entries", actual);
+            assertEquals("Wearable data differs", expected.first, actual.first);
+            assertEquals("Number of days differs", expected.second.length, actual.second.length);
+
+            for (int i = 0; i < expected.second.length; i++) {
+                assertEquals("Weather values for day " + i + " differ",
+                        expected.second[i], actual.second[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testStreamingParserReturnsNullForErrorCode() throws Exception {
+        /* The error code can follow the forecast, so the streaming parser only sees it last */
+        String forecastJson = createForecastJson(14).replace("\"cod\":\"200\",", "");
+        String notFoundJson = forecastJson.substring(0, forecastJson.length() - 1)
+                + ",\"cod\":\"404\"}";
+
+        assertNull(OpenWeatherJsonUtils.getWeatherContentValuesFromJson(mContext, notFoundJson));
+        assertNull(OpenWeatherJsonUtils
+                .getWeatherContentValuesFromStream(mContext, toStream(notFoundJson)));
+    }
+
+    /**
+     * Compares the time taken and the number of bytes allocated by both parsers. The JSONObject
+     * path includes reading the body into a String with a Scanner, as NetworkUtils does, because
+     * that copy is part of what the streaming parser avoids.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void benchmarkParsers() throws Exception {
+        for (int entryCount : BENCHMARK_ENTRY_COUNTS) {
+            byte[] forecastBytes = createForecastJson(entryCount).getBytes("UTF-8");
+
+            for (int i = 0; i < BENCHMARK_WARM_UP_RUNS; i++) {
+                parseWithJsonObject(forecastBytes);
+                parseWithStream(forecastBytes);
+            }
+
+            long jsonObjectNanos = 0;
+            long jsonObjectBytes = 0;
+            long streamNanos = 0;
+            long streamBytes = 0;
+
+            for (int i = 0; i < BENCHMARK_RUNS; i++) {
+                Runtime.getRuntime().gc();
+                Debug.resetThreadAllocSize();
+                Debug.startAllocCounting();
+                long start = System.nanoTime();
+                parseWithJsonObject(forecastBytes);
+                jsonObjectNanos += System.nanoTime() - start;
+                Debug.stopAllocCounting();
+                jsonObjectBytes += Debug.getThreadAllocSize();
+
+                Runtime.getRuntime().gc();
+                Debug.resetThreadAllocSize();
+                Debug.startAllocCounting();
+                start = System.nanoTime();
+                parseWithStream(forecastBytes);
+                streamNanos += System.nanoTime() - start;
+                Debug.stopAllocCounting();
+                streamBytes += Debug.getThreadAllocSize();
+            }
+
+            Log.i(TAG, String.format("%d entries (%d bytes): JSONObject %d us / %d KB allocated,"
+                            + " streaming %d us / %d KB allocated",
+                    entryCount,
+                    forecastBytes.length,
+                    jsonObjectNanos / BENCHMARK_RUNS / 1000,
+                    jsonObjectBytes / BENCHMARK_RUNS / 1024,
+                    streamNanos / BENCHMARK_RUNS / 1000,
+                    streamBytes / BENCHMARK_RUNS / 1024));
+        }
+    }
+
+    private Pair<List<String>, ContentValues[]> parseWithJsonObject(byte[] forecastBytes)
+            throws Exception {
+        Scanner scanner = new Scanner(new ByteArrayInputStream(forecastBytes));
+        scanner.useDelimiter("\\A");
+        String forecastJson = scanner.next();
+        scanner.close();
+        return OpenWeatherJsonUtils.getWeatherContentValuesFromJson(mContext, forecastJson);
+    }
+
+    private Pair<List<String>, ContentValues[]> parseWithStream(byte[] forecastBytes)
+            throws Exception {
+        return OpenWeatherJsonUtils
+                .getWeatherContentValuesFromStream(mContext, new ByteArrayInputStream(forecastBytes));
+    }
+
+    private static InputStream toStream(String json) throws Exception {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+
+    /**
+     * Builds a forecast in the same shape as the responses from the Sunshine weather server,
+     * including the fields that the parsers skip over.
+     *
+     * @param entryCount Number of days in the "list" array
+     * @return The forecast JSON
+     */
+    static String createForecastJson(int entryCount) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lon\":-122.0838,\"lat\":37.3861},")
+                .append("\"country\":\"US\",\"population\":0},")
+                .append("\"cod\":\"200\",\"message\":0.0107,\"cnt\":").append(entryCount)
+                .append(",\"list\":[");
+
+        for (int i = 0; i < entryCount; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"dt\":").append(1474574400 + 86400L * i)
+                    .append(",\"temp\":{\"day\":20.5,\"min\":").append(10 + i % 7).append(".25")
+                    .append(",\"max\":").append(20 + i % 9).append(".75")
+                    .append(",\"night\":12.1,\"eve\":18.3,\"morn\":11.2}")
+                    .append(",\"pressure\":").append(1000 + i % 30).append(".5")
+                    .append(",\"humidity\":").append(40 + i % 50)
+                    .append(",\"weather\":[{\"id\":").append(800 + i % 5)
+                    .append(",\"main\":\"Clear\",\"description\":\"sky is clear\",\"icon\":\"01d\"}]")
+                    .append(",\"speed\":").append(i % 12).append(".3")
+                    .append(",\"deg\":").append(i * 37 % 360)
+                    .append(",\"clouds\":0}");
+        }
+
+        json.append("]}");
+        return json.toString();
+    }
+}
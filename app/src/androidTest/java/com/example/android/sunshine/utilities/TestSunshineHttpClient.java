@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utils.StubHttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Checks the timeouts, connection reuse and latency histograms of SunshineHttpClient against a
+ * stub HTTP server on the device, including one that trickles its response a byte at a time.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestSunshineHttpClient {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final int READ_TIMEOUT_MILLIS = 500;
+    private static final int CALL_TIMEOUT_MILLIS = 1500;
+
+    /* How much longer than its timeouts a request may take to fail, to allow for a busy device */
+    private static final long TIMEOUT_SLACK_MILLIS = 1000;
+
+    private static final byte[] BODY = new byte[200];
+
+    static {
+        Arrays.fill(BODY, (byte) 'x');
+    }
+
+    private final SunshineHttpClient mClient = new SunshineHttpClient(CONNECT_TIMEOUT_MILLIS,
+            READ_TIMEOUT_MILLIS, CALL_TIMEOUT_MILLIS);
+
+    private StubHttpServer mServer;
+    private URL mUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new StubHttpServer();
+        mUrl = mServer.getUrl("/weather");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.close();
+    }
+
+    @Test
+    public void testConnectionIsReusedAcrossRequests() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            mServer.enqueue(new StubHttpServer.Response(200, BODY));
+        }
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(BODY.length, fetch());
+        }
+
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals("Each request opened its own connection", 1, mServer.getConnectionCount());
+    }
+
+    @Test
+    public void testSlowFirstByteTimesOut() throws Exception {
+        mServer.enqueue(new StubHttpServer.Response(200, BODY).delay(10 * READ_TIMEOUT_MILLIS));
+
+        assertTimesOutWithin(READ_TIMEOUT_MILLIS + TIMEOUT_SLACK_MILLIS);
+    }
+
+    /**
+     * A slow-loris server sends a byte just often enough to keep the read timeout from firing.
+     * The call timeout has to cut it off.
+     */
+    @Test
+    public void testTrickledBodyTimesOut() throws Exception {
+        mServer.enqueue(new StubHttpServer.Response(200, BODY)
+                .trickle(1, READ_TIMEOUT_MILLIS / 2));
+
+        assertTimesOutWithin(CALL_TIMEOUT_MILLIS + READ_TIMEOUT_MILLIS + TIMEOUT_SLACK_MILLIS);
+    }
+
+    /**
+     * The same, but with the headers trickled. The call timeout has to cut it off while the
+     * client is still waiting for the response code.
+     */
+    @Test
+    public void testTrickledHeadersTimeOut() throws Exception {
+        mServer.enqueue(new StubHttpServer.Response(200, BODY)
+                .trickle(1, READ_TIMEOUT_MILLIS / 2)
+                .trickleHeaders());
+
+        assertTimesOutWithin(CALL_TIMEOUT_MILLIS + TIMEOUT_SLACK_MILLIS);
+    }
+
+    @Test
+    public void testEveryPhaseIsTimed() throws Exception {
+        mServer.enqueue(new StubHttpServer.Response(200, BODY));
+        mServer.enqueue(new StubHttpServer.Response(200, BODY).delay(300));
+
+        fetch();
+        fetch();
+
+        assertEquals(2, mClient.getDnsLatency().getCount());
+        assertEquals(2, mClient.getConnectLatency().getCount());
+        assertEquals(2, mClient.getFirstByteLatency().getCount());
+        assertEquals(2, mClient.getBodyLatency().getCount());
+
+        /* The delayed response is the slower half of the first byte times */
+        assertTrue(mClient.getFirstByteLatency().getPercentileMillis(100) >= 300);
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        assertEquals(0, histogram.getPercentileMillis(50));
+
+        for (int i = 0; i < 90; i++) {
+            histogram.record(3);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(150);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(5, histogram.getPercentileMillis(50));
+        assertEquals(5, histogram.getPercentileMillis(90));
+        assertEquals(200, histogram.getPercentileMillis(99));
+
+        histogram.record(60 * 1000);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentileMillis(100));
+    }
+
+    private void assertTimesOutWithin(long maxMillis) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        try {
+            fetch();
+            fail("Expected the request to time out");
+        } catch (SocketTimeoutException expected) {
+        }
+
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        assertTrue("Timing out took " + elapsed + " ms", elapsed <= maxMillis);
+    }
+
+    /**
+     * Makes a request through the client and reads the whole body.
+     *
+     * @return The number of body bytes read
+     */
+    private int fetch() throws IOException {
+        SunshineHttpClient.Exchange exchange = mClient.execute(mClient.newConnection(mUrl));
+        try {
+            InputStream in = exchange.openBody(NetworkUtils.MAX_BODY_BYTES);
+            byte[] buffer = new byte[64];
+            int total = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+            }
+            return total;
+        } finally {
+            exchange.close();
+        }
+    }
+}
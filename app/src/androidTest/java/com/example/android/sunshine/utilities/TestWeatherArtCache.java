@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.support.test.InstrumentationRegistry;
+import android.support.v4.content.ContextCompat;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks the sizing, keying and trimming of {@link WeatherArtCache}, and compares showing the art
+ * of a two week forecast with and without it. The results are written to logcat under the tag of
+ * this class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWeatherArtCache {
+
+    private static final String TAG = TestWeatherArtCache.class.getSimpleName();
+
+    /* Plenty for the art of every condition at a couple of sizes */
+    private static final int MAX_BYTES = 4 * 1024 * 1024;
+
+    /* Weather ids of a two week forecast, as the list would show them */
+    private static final int[] FORECAST_WEATHER_IDS = {
+            800, 801, 802, 500, 500, 501, 800, 800, 803, 804, 600, 200, 800, 801
+    };
+
+    private static final int BENCHMARK_RUNS = 20;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void testArtIsScaledToTheExactSize() {
+        WeatherArtCache cache = new WeatherArtCache(mContext, MAX_BYTES);
+        int resourceId = SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(800);
+
+        Bitmap art = cache.get(resourceId, 37, 53);
+
+        assertEquals(37, art.getWidth());
+        assertEquals(53, art.getHeight());
+    }
+
+    @Test
+    public void testArtThatCannotBeLoadedIsNull() {
+        WeatherArtCache cache = new WeatherArtCache(mContext, MAX_BYTES);
+
+        assertNull(cache.get(0, 96, 96));
+        assertEquals("Missing art was cached", 0, cache.getSizeBytes());
+    }
+
+    @Test
+    public void testArtIsKeyedByResourceAndSize() {
+        WeatherArtCache cache = new WeatherArtCache(mContext, MAX_BYTES);
+        int clear = SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(800);
+        int rain = SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(500);
+
+        Bitmap first = cache.get(clear, 96, 96);
+        assertSame("The same art at the same size was decoded again",
+                first, cache.get(clear, 96, 96));
+        assertNotSame(first, cache.get(clear, 40, 40));
+        assertNotSame(first, cache.get(rain, 96, 96));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void testTrimMemoryEvicts() {
+        WeatherArtCache cache = new WeatherArtCache(mContext, MAX_BYTES);
+        for (int weatherId : FORECAST_WEATHER_IDS) {
+            cache.get(SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId),
+                    96, 96);
+        }
+        int fullSize = cache.getSizeBytes();
+        assertTrue(fullSize > 0);
+
+        cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertTrue("Running low didn't trim the cache", cache.getSizeBytes() <= MAX_BYTES / 2);
+
+        cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertEquals("Going to the background didn't empty the cache", 0, cache.getSizeBytes());
+    }
+
+    /**
+     * Shows the list art of a two week forecast over and over: once by loading and drawing
+     * every icon, which is what showing a resource at a given size costs without a cache, and
+     * once through the cache.
+     */
+    @Test
+    public void benchmarkCache() {
+        int size = 96;
+
+        long uncachedStart = System.nanoTime();
+        for (int run = 0; run < BENCHMARK_RUNS; run++) {
+            for (int weatherId : FORECAST_WEATHER_IDS) {
+                Drawable art = ContextCompat.getDrawable(mContext,
+                        SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId));
+                Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+                art.setBounds(0, 0, size, size);
+                art.draw(new Canvas(bitmap));
+            }
+        }
+        long uncachedNanos = System.nanoTime() - uncachedStart;
+
+        WeatherArtCache cache = new WeatherArtCache(mContext, MAX_BYTES);
+        long cachedStart = System.nanoTime();
+        for (int run = 0; run < BENCHMARK_RUNS; run++) {
+            for (int weatherId : FORECAST_WEATHER_IDS) {
+                cache.get(SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId),
+                        size, size);
+            }
+        }
+        long cachedNanos = System.nanoTime() - cachedStart;
+
+        int lookups = BENCHMARK_RUNS * FORECAST_WEATHER_IDS.length;
+        assertEquals(lookups, cache.getHitCount() + cache.getMissCount());
+
+        Log.i(TAG, String.format("%d lookups: drawing %.1f us each, cached %.1f us each, %s",
+                lookups,
+                uncachedNanos / 1000.0 / lookups,
+                cachedNanos / 1000.0 / lookups,
+                cache));
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.R;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Checks that the weather condition table gives the same art and descriptions as the if/else
+ * chains it replaced, for every condition ID and for IDs just outside of the table, and compares
+ * the speed of the two.
+ * <p>
+ * The chains are kept below, unchanged apart from returning 0 for unknown conditions, as the
+ * reference. The benchmark results are written to logcat under the tag of this class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWeatherConditionTable {
+
+    private static final String TAG = TestWeatherConditionTable.class.getSimpleName();
+
+    private static final int FIRST_ID_CHECKED = -10;
+    private static final int LAST_ID_CHECKED = WeatherConditionTable.MAX_WEATHER_ID + 10;
+
+    private static final int BENCHMARK_RUNS = 200;
+
+    /* A week of typical conditions, the way the list binds them */
+    private static final int[] BENCHMARK_IDS = {800, 801, 500, 803, 211, 600, 741};
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void testTableMatchesChainsForEveryId() {
+        for (int id = FIRST_ID_CHECKED; id <= LAST_ID_CHECKED; id++) {
+            assertEquals("Small art differs for " + id,
+                    getLegacySmallArt(id), WeatherConditionTable.getSmallArt(id));
+            assertEquals("Large art differs for " + id,
+                    getLegacyLargeArt(id), WeatherConditionTable.getLargeArt(id));
+            assertEquals("Description differs for " + id,
+                    getLegacyDescription(id), WeatherConditionTable.getDescription(id));
+        }
+    }
+
+    @Test
+    public void testUnknownConditionsUseDefaults() {
+        for (int id = FIRST_ID_CHECKED; id <= LAST_ID_CHECKED; id++) {
+            if (getLegacySmallArt(id) == 0) {
+                assertEquals(R.drawable.ic_storm,
+                        SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(id));
+                assertEquals(R.drawable.art_storm,
+                        SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(id));
+            }
+            if (getLegacyDescription(id) == 0) {
+                assertEquals(mContext.getString(R.string.condition_unknown, id),
+                        SunshineWeatherUtils.getStringForWeatherCondition(mContext, id));
+            }
+        }
+    }
+
+    /**
+     * Looks up the small art, large art and description of a week of conditions, as binding the
+     * list does, with the chains and with the table.
+     */
+    @Test
+    public void benchmarkLookups() {
+        int sink = 0;
+        for (int run = 0; run < BENCHMARK_RUNS; run++) {
+            sink += lookUpWithChains() + lookUpWithTable();
+        }
+
+        long start = System.nanoTime();
+        for (int run = 0; run < BENCHMARK_RUNS; run++) {
+            sink += lookUpWithChains();
+        }
+        long chainNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int run = 0; run < BENCHMARK_RUNS; run++) {
+            sink += lookUpWithTable();
+        }
+        long tableNanos = System.nanoTime() - start;
+
+        int lookups = BENCHMARK_RUNS * BENCHMARK_IDS.length;
+        Log.i(TAG, String.format("Per condition: chains %d ns, table %d ns (%d)",
+                chainNanos / lookups, tableNanos / lookups, sink));
+    }
+
+    private static int lookUpWithChains() {
+        int sink = 0;
+        for (int id : BENCHMARK_IDS) {
+            sink += getLegacySmallArt(id) + getLegacyLargeArt(id) + getLegacyDescription(id);
+        }
+        return sink;
+    }
+
+    private static int lookUpWithTable() {
+        int sink = 0;
+        for (int id : BENCHMARK_IDS) {
+            sink += WeatherConditionTable.getSmallArt(id)
+                    + WeatherConditionTable.getLargeArt(id)
+                    + WeatherConditionTable.getDescription(id);
+        }
+        return sink;
+    }
+
+    private static int getLegacyDescription(int weatherId) {
+        int stringId;
+        if (weatherId >= 200 && weatherId <= 232) {
+            stringId = R.string.condition_2xx;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            stringId = R.string.condition_3xx;
+        } else switch (weatherId) {
+            case 500:
+                stringId = R.string.condition_500;
+                break;
+            case 501:
+                stringId = R.string.condition_501;
+                break;
+            case 502:
+                stringId = R.string.condition_502;
+                break;
+            case 503:
+                stringId = R.string.condition_503;
+                break;
+            case 504:
+                stringId = R.string.condition_504;
+                break;
+            case 511:
+                stringId = R.string.condition_511;
+                break;
+            case 520:
+                stringId = R.string.condition_520;
+                break;
+            case 531:
+                stringId = R.string.condition_531;
+                break;
+            case 600:
+                stringId = R.string.condition_600;
+                break;
+            case 601:
+                stringId = R.string.condition_601;
+                break;
+            case 602:
+                stringId = R.string.condition_602;
+                break;
+            case 611:
+                stringId = R.string.condition_611;
+                break;
+            case 612:
+                stringId = R.string.condition_612;
+                break;
+            case 615:
+                stringId = R.string.condition_615;
+                break;
+            case 616:
+                stringId = R.string.condition_616;
+                break;
+            case 620:
+                stringId = R.string.condition_620;
+                break;
+            case 621:
+                stringId = R.string.condition_621;
+                break;
+            case 622:
+                stringId = R.string.condition_622;
+                break;
+            case 701:
+                stringId = R.string.condition_701;
+                break;
+            case 711:
+                stringId = R.string.condition_711;
+                break;
+            case 721:
+                stringId = R.string.condition_721;
+                break;
+            case 731:
+                stringId = R.string.condition_731;
+                break;
+            case 741:
+                stringId = R.string.condition_741;
+                break;
+            case 751:
+                stringId = R.string.condition_751;
+                break;
+            case 761:
+                stringId = R.string.condition_761;
+                break;
+            case 762:
+                stringId = R.string.condition_762;
+                break;
+            case 771:
+                stringId = R.string.condition_771;
+                break;
+            case 781:
+                stringId = R.string.condition_781;
+                break;
+            case 800:
+                stringId = R.string.condition_800;
+                break;
+            case 801:
+                stringId = R.string.condition_801;
+                break;
+            case 802:
+                stringId = R.string.condition_802;
+                break;
+            case 803:
+                stringId = R.string.condition_803;
+                break;
+            case 804:
+                stringId = R.string.condition_804;
+                break;
+            case 900:
+                stringId = R.string.condition_900;
+                break;
+            case 901:
+                stringId = R.string.condition_901;
+                break;
+            case 902:
+                stringId = R.string.condition_902;
+                break;
+            case 903:
+                stringId = R.string.condition_903;
+                break;
+            case 904:
+                stringId = R.string.condition_904;
+                break;
+            case 905:
+                stringId = R.string.condition_905;
+                break;
+            case 906:
+                stringId = R.string.condition_906;
+                break;
+            case 951:
+                stringId = R.string.condition_951;
+                break;
+            case 952:
+                stringId = R.string.condition_952;
+                break;
+            case 953:
+                stringId = R.string.condition_953;
+                break;
+            case 954:
+                stringId = R.string.condition_954;
+                break;
+            case 955:
+                stringId = R.string.condition_955;
+                break;
+            case 956:
+                stringId = R.string.condition_956;
+                break;
+            case 957:
+                stringId = R.string.condition_957;
+                break;
+            case 958:
+                stringId = R.string.condition_958;
+                break;
+            case 959:
+                stringId = R.string.condition_959;
+                break;
+            case 960:
+                stringId = R.string.condition_960;
+                break;
+            case 961:
+                stringId = R.string.condition_961;
+                break;
+            case 962:
+                stringId = R.string.condition_962;
+                break;
+            default:
+                return 0;
+        }
+
+        return stringId;
+    }
+
+    private static int getLegacySmallArt(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        } else if (weatherId >= 900 && weatherId <= 906) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 958 && weatherId <= 962) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 951 && weatherId <= 957) {
+            return R.drawable.ic_clear;
+        }
+
+        return 0;
+    }
+
+    private static int getLegacyLargeArt(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        } else if (weatherId >= 900 && weatherId <= 906) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 958 && weatherId <= 962) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 951 && weatherId <= 957) {
+            return R.drawable.art_clear;
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal HTTP/1.1 server on the loopback interface, for testing the network code against
+ * responses we control. Each request gets the next scripted {@link Response}; once the script
+ * runs out, every request gets the default response, a 503.
+ * <p>
+ * Connections are kept alive unless a response says otherwise, so tests can check whether the
+ * client reuses them.
+ */
+public final class StubHttpServer implements Closeable {
+
+    private final ServerSocket mServerSocket;
+    private final Queue<Response> mResponses = new LinkedList<>();
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final AtomicInteger mConnectionCount = new AtomicInteger();
+
+    private Response mDefaultResponse = new Response(503, new byte[0]);
+    private Map<String, String> mLastRequestHeaders = Collections.emptyMap();
+
+    /**
+     * A scripted response.
+     */
+    public static final class Response {
+
+        private final int mStatusCode;
+        private final byte[] mBody;
+        private final Map<String, String> mHeaders = new LinkedHashMap<>();
+        private long mDelayMillis;
+        private int mTrickleChunkBytes;
+        private long mTrickleIntervalMillis;
+        private boolean mTrickleHeaders;
+
+        public Response(int statusCode, byte[] body) {
+            mStatusCode = statusCode;
+            mBody = body;
+        }
+
+        public Response header(String name, String value) {
+            mHeaders.put(name, value);
+            return this;
+        }
+
+        /* Waits this long before sending anything, like a server that is slow to respond */
+        public Response delay(long millis) {
+            mDelayMillis = millis;
+            return this;
+        }
+
+        /* Sends the body a few bytes at a time, like a slow or stalled network */
+        public Response trickle(int chunkBytes, long intervalMillis) {
+            mTrickleChunkBytes = chunkBytes;
+            mTrickleIntervalMillis = intervalMillis;
+            return this;
+        }
+
+        /* Trickles the status line and headers too, not just the body */
+        public Response trickleHeaders() {
+            mTrickleHeaders = true;
+            return this;
+        }
+    }
+
+    public StubHttpServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, "StubHttpServer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public URL getUrl(String path) throws IOException {
+        return new URL("http://127.0.0.1:" + mServerSocket.getLocalPort() + path);
+    }
+
+    public synchronized void enqueue(Response response) {
+        mResponses.add(response);
+    }
+
+    public synchronized void setDefaultResponse(Response response) {
+        mDefaultResponse = response;
+    }
+
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    public int getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    /**
+     * @return The headers of the last request, with lower case names
+     */
+    public synchronized Map<String, String> getLastRequestHeaders() {
+        return mLastRequestHeaders;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mServerSocket.close();
+    }
+
+    private synchronized Response nextResponse(Map<String, String> requestHeaders) {
+        mLastRequestHeaders = requestHeaders;
+        Response response = mResponses.poll();
+        return response != null ? response : mDefaultResponse;
+    }
+
+    private void acceptConnections() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                final Socket socket = mServerSocket.accept();
+                mConnectionCount.incrementAndGet();
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serveConnection(socket);
+                    }
+                }, "StubHttpServer connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                /* The server was closed */
+            }
+        }
+    }
+
+    private void serveConnection(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            boolean keepAlive = true;
+
+            while (keepAlive) {
+                Map<String, String> requestHeaders = readRequestHeaders(in);
+                if (requestHeaders == null) {
+                    break;
+                }
+
+                mRequestCount.incrementAndGet();
+                Response response = nextResponse(requestHeaders);
+                keepAlive = !"close".equalsIgnoreCase(response.mHeaders.get("Connection"));
+                writeResponse(out, response);
+            }
+        } catch (IOException | InterruptedException e) {
+            /* The client went away */
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Reads the request line and the headers of the next request on a connection.
+     *
+     * @return The headers, or null if the client closed the connection
+     */
+    private static Map<String, String> readRequestHeaders(InputStream in) throws IOException {
+        String requestLine = readLine(in);
+        if (requestLine == null || requestLine.isEmpty()) {
+            return null;
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                        line.substring(colon + 1).trim());
+            }
+        }
+        return headers;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (b != '\r') line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return line.toString("US-ASCII");
+    }
+
+    private static void writeResponse(OutputStream out, Response response)
+            throws IOException, InterruptedException {
+        Thread.sleep(response.mDelayMillis);
+
+        StringBuilder head = new StringBuilder();
+        head.append("HTTP/1.1 ").append(response.mStatusCode).append(" Stub\r\n");
+        for (Map.Entry<String, String> header : response.mHeaders.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        head.append("Content-Length: ").append(response.mBody.length).append("\r\n\r\n");
+        byte[] headBytes = head.toString().getBytes("US-ASCII");
+
+        if (response.mTrickleChunkBytes <= 0) {
+            out.write(headBytes);
+            out.write(response.mBody);
+            out.flush();
+            return;
+        }
+
+        if (response.mTrickleHeaders) {
+            writeTrickled(out, headBytes, response);
+        } else {
+            out.write(headBytes);
+            out.flush();
+        }
+        writeTrickled(out, response.mBody, response);
+    }
+
+    private static void writeTrickled(OutputStream out, byte[] bytes, Response response)
+            throws IOException, InterruptedException {
+        for (int offset = 0; offset < bytes.length; offset += response.mTrickleChunkBytes) {
+            Thread.sleep(response.mTrickleIntervalMillis);
+            out.write(bytes, offset, Math.min(response.mTrickleChunkBytes, bytes.length - offset));
+            out.flush();
+        }
+    }
+}
@@ -33,6 +33,7 @@ import com.example.android.sunshine.data.WeatherContract;
 import com.example.android.sunshine.databinding.ActivityDetailBinding;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+import com.example.android.sunshine.utilities.WeatherArtCache;
 
 public class DetailActivity extends AppCompatActivity implements
         LoaderManager.LoaderCallbacks<Cursor> {
@@ -247,8 +248,10 @@ public class DetailActivity extends AppCompatActivity implements
         /* Use our utility method to determine the resource ID for the proper art */
         int weatherImageId = SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId);
 
-        /* Set the resource ID on the icon to display the art */
-        mDetailBinding.primaryInfo.weatherIcon.setImageResource(weatherImageId);
+        /* Show the art, scaled to the size of the icon, from the art cache */
+        int iconSize = getResources().getDimensionPixelSize(R.dimen.today_icon);
+        mDetailBinding.primaryInfo.weatherIcon.setImageBitmap(WeatherArtCache.getInstance(this)
+                .get(weatherImageId, iconSize, iconSize));
 
         /****************
          * Weather Date *
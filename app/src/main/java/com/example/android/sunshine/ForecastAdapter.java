@@ -16,7 +16,6 @@
 package com.example.android.sunshine;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.support.annotation.NonNull;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
@@ -25,14 +24,15 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.example.android.sunshine.utilities.SunshineDateUtils;
-import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+import java.util.List;
 
 /**
- * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * {@link ForecastAdapter} exposes a list of weather forecasts, as {@link ForecastRow}s built by
+ * {@link ForecastLoader}, to a {@link android.support.v7.widget.RecyclerView}. The loader only
+ * builds the first page; the rest is paged in by a {@link ForecastPager} as rows are bound.
  */
-class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
+class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder>
+        implements ForecastPager.Callback {
 
     private static final int VIEW_TYPE_TODAY = 0;
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
@@ -63,7 +63,7 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     private boolean mUseTodayLayout;
 
-    private Cursor mCursor;
+    private ForecastPager mForecast;
 
     /**
      * Creates a ForecastAdapter.
@@ -129,102 +129,82 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
+        /*
+         * Everything was formatted, and the icons rendered, by ForecastLoader and ForecastPager in
+         * the background, so all that is left to do here is to hand the values to the views.
+         */
+        ForecastRow row = mForecast.get(position);
+
+        /* The row's page was dropped and is being loaded again, which rebinds this position */
+        if (row == null) {
+            clear(forecastAdapterViewHolder);
+            return;
+        }
 
         /****************
          * Weather Icon *
          ****************/
-        int weatherId = mCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
-        int weatherImageId;
-
         int viewType = getItemViewType(position);
 
         switch (viewType) {
 
             case VIEW_TYPE_TODAY:
-                weatherImageId = SunshineWeatherUtils
-                        .getLargeArtResourceIdForWeatherCondition(weatherId);
+                forecastAdapterViewHolder.iconView.setImageBitmap(row.largeIcon);
                 break;
 
             case VIEW_TYPE_FUTURE_DAY:
-                weatherImageId = SunshineWeatherUtils
-                        .getSmallArtResourceIdForWeatherCondition(weatherId);
+                forecastAdapterViewHolder.iconView.setImageBitmap(row.smallIcon);
                 break;
 
             default:
                 throw new IllegalArgumentException("Invalid view type, value of " + viewType);
         }
 
-        forecastAdapterViewHolder.iconView.setImageResource(weatherImageId);
-
         /****************
          * Weather Date *
          ****************/
-         /* Read date from the cursor */
-        long dateInMillis = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
-         /* Get human readable string using our utility method */
-        String dateString = SunshineDateUtils.getFriendlyDateString(mContext, dateInMillis, false);
-
-         /* Display friendly date string */
-        forecastAdapterViewHolder.dateView.setText(dateString);
+        forecastAdapterViewHolder.dateView.setText(row.dateText);
 
         /***********************
          * Weather Description *
          ***********************/
-        String description = SunshineWeatherUtils.getStringForWeatherCondition(mContext, weatherId);
-         /* Create the accessibility (a11y) String from the weather description */
-        String descriptionA11y = mContext.getString(R.string.a11y_forecast, description);
-
-         /* Set the text and content description (for accessibility purposes) */
-        forecastAdapterViewHolder.descriptionView.setText(description);
-        forecastAdapterViewHolder.descriptionView.setContentDescription(descriptionA11y);
+        forecastAdapterViewHolder.descriptionView.setText(row.description);
+        forecastAdapterViewHolder.descriptionView.setContentDescription(row.descriptionA11y);
 
         /**************************
          * High (max) temperature *
          **************************/
-         /* Read high temperature from the cursor (in degrees celsius) */
-        double highInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP);
-         /*
-          * If the user's preference for weather is fahrenheit, formatTemperature will convert
-          * the temperature. This method will also append either °C or °F to the temperature
-          * String.
-          */
-        String highString = SunshineWeatherUtils.formatTemperature(mContext, highInCelsius);
-         /* Create the accessibility (a11y) String from the weather description */
-        String highA11y = mContext.getString(R.string.a11y_high_temp, highString);
-
-         /* Set the text and content description (for accessibility purposes) */
-        forecastAdapterViewHolder.highTempView.setText(highString);
-        forecastAdapterViewHolder.highTempView.setContentDescription(highA11y);
+        forecastAdapterViewHolder.highTempView.setText(row.highText);
+        forecastAdapterViewHolder.highTempView.setContentDescription(row.highA11y);
 
         /*************************
          * Low (min) temperature *
          *************************/
-         /* Read low temperature from the cursor (in degrees celsius) */
-        double lowInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP);
-         /*
-          * If the user's preference for weather is fahrenheit, formatTemperature will convert
-          * the temperature. This method will also append either °C or °F to the temperature
-          * String.
-          */
-        String lowString = SunshineWeatherUtils.formatTemperature(mContext, lowInCelsius);
-        String lowA11y = mContext.getString(R.string.a11y_low_temp, lowString);
-
-         /* Set the text and content description (for accessibility purposes) */
-        forecastAdapterViewHolder.lowTempView.setText(lowString);
-        forecastAdapterViewHolder.lowTempView.setContentDescription(lowA11y);
+        forecastAdapterViewHolder.lowTempView.setText(row.lowText);
+        forecastAdapterViewHolder.lowTempView.setContentDescription(row.lowA11y);
+    }
+
+    private static void clear(ForecastAdapterViewHolder forecastAdapterViewHolder) {
+        forecastAdapterViewHolder.iconView.setImageDrawable(null);
+        forecastAdapterViewHolder.dateView.setText(null);
+        forecastAdapterViewHolder.descriptionView.setText(null);
+        forecastAdapterViewHolder.descriptionView.setContentDescription(null);
+        forecastAdapterViewHolder.highTempView.setText(null);
+        forecastAdapterViewHolder.highTempView.setContentDescription(null);
+        forecastAdapterViewHolder.lowTempView.setText(null);
+        forecastAdapterViewHolder.lowTempView.setContentDescription(null);
     }
 
     /**
      * This method simply returns the number of items to display. It is used behind the scenes
      * to help layout our Views and for animations.
      *
-     * @return The number of items available in our forecast
+     * @return The number of items available in our forecast, which grows as pages are loaded
      */
     @Override
     public int getItemCount() {
-        if (null == mCursor) return 0;
-        return mCursor.getCount();
+        if (null == mForecast) return 0;
+        return mForecast.getRowCount();
     }
 
     /**
@@ -234,7 +214,7 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      * different layout for the "today" layout. The "today" layout is only shown in portrait mode
      * with the first item in the list.
      *
-     * @param position index within our RecyclerView and Cursor
+     * @param position index within our RecyclerView and forecast
      * @return the view type (today or future day)
      */
     @Override
@@ -247,18 +227,32 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
     }
 
     /**
-     * Swaps the cursor used by the ForecastAdapter for its weather data. This method is called by
-     * MainActivity after a load has finished, as well as when the Loader responsible for loading
-     * the weather data is reset. When this method is called, we assume we have a completely new
-     * set of data, so we call notifyDataSetChanged to tell the RecyclerView to update.
+     * Swaps the forecast used by the ForecastAdapter for its weather data. This method is called
+     * by MainActivity after a load has finished, as well as when the Loader responsible for
+     * loading the weather data is reset. When this method is called, we assume we have a
+     * completely new set of data, so we call notifyDataSetChanged to tell the RecyclerView to
+     * update.
      *
-     * @param newCursor the new cursor to use as ForecastAdapter's data source
+     * @param firstPage the first page of the new forecast, from which the rest is paged in
      */
-    void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
+    void swapForecast(List<ForecastRow> firstPage) {
+        if (mForecast != null) {
+            mForecast.close();
+        }
+        mForecast = firstPage == null ? null : new ForecastPager(mContext, firstPage, this);
         notifyDataSetChanged();
     }
 
+    @Override
+    public void onRowsInserted(int positionStart, int rowCount) {
+        notifyItemRangeInserted(positionStart, rowCount);
+    }
+
+    @Override
+    public void onRowsChanged(int positionStart, int rowCount) {
+        notifyItemRangeChanged(positionStart, rowCount);
+    }
+
     /**
      * A ViewHolder is a required part of the pattern for RecyclerViews. It mostly behaves as
      * a cache of the child views for a forecast item. It's also a convenient place to set an
@@ -294,9 +288,13 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            long dateInMillis = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
-            mClickHandler.onClick(dateInMillis);
+            if (adapterPosition == RecyclerView.NO_POSITION) {
+                return;
+            }
+            ForecastRow row = mForecast.get(adapterPosition);
+            if (row != null) {
+                mClickHandler.onClick(row.date);
+            }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import java.util.List;
+
+/**
+ * Loads the first page of the forecast from today onwards and turns it into {@link ForecastRow}s,
+ * so all of the formatting happens on the loader's background thread rather than while binding
+ * rows. The rest of the forecast is paged in by {@link ForecastPager} as the list is scrolled.
+ * <p>
+ * Like a CursorLoader, it loads again whenever the weather URI is notified of a change, which
+ * includes the user switching units.
+ */
+class ForecastLoader extends AsyncTaskLoader<List<ForecastRow>> {
+
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+
+    private List<ForecastRow> mForecast;
+
+    ForecastLoader(Context context) {
+        super(context);
+
+        /* Until the loader is reset, any change to the weather triggers a new load */
+        getContext().getContentResolver().registerContentObserver(
+                WeatherContract.WeatherEntry.CONTENT_URI, true, mObserver);
+    }
+
+    @Override
+    public List<ForecastRow> loadInBackground() {
+        /* The first page starts today; the pager finds where every following page starts */
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        return ForecastPager.loadPage(getContext(), today);
+    }
+
+    @Override
+    public void deliverResult(List<ForecastRow> forecast) {
+        if (isReset()) {
+            return;
+        }
+
+        mForecast = forecast;
+        if (isStarted()) {
+            super.deliverResult(forecast);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mForecast != null) {
+            deliverResult(mForecast);
+        }
+        if (takeContentChanged() || mForecast == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        getContext().getContentResolver().unregisterContentObserver(mObserver);
+        mForecast = null;
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import com.example.android.sunshine.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the forecast a page at a time for {@link ForecastAdapter}, so the list never has to hold
+ * every stored day at once.
+ * <p>
+ * Pages are found by keyset rather than by offset: each page is the first {@link #PAGE_SIZE}
+ * days on or after the day that follows the previous page. That query is answered straight from
+ * the (location, date) index however far down the list it is, and its selection is the same
+ * parameterized statement for every page. The next page is loaded in the background once a row
+ * close to the end of what has been loaded is bound.
+ * <p>
+ * Only {@link #MAX_RESIDENT_PAGES} pages are kept in memory; pages far away from the rows being
+ * bound are dropped and loaded again if they are scrolled back to. All that is kept of a dropped
+ * page is its first date, so memory stays flat however many days are stored.
+ * <p>
+ * Apart from loading pages, everything happens on the main thread.
+ */
+class ForecastPager {
+
+    /* Number of days read by each query */
+    static final int PAGE_SIZE = 30;
+
+    /* How close to the end of the loaded rows a bound row has to be to load the next page */
+    static final int PREFETCH_DISTANCE = 10;
+
+    /* Pages kept in memory. Enough for a screenful around the rows being bound, either way. */
+    static final int MAX_RESIDENT_PAGES = 4;
+
+    /* How long the loading thread is kept around once there are no more pages to load */
+    private static final long LOAD_THREAD_KEEP_ALIVE_SECONDS = 5;
+
+    /**
+     * Told about rows that were loaded, on the main thread.
+     */
+    interface Callback {
+
+        /* A page was loaded for the first time, adding its rows to the end of the list */
+        void onRowsInserted(int positionStart, int rowCount);
+
+        /* A page that had been dropped was loaded again */
+        void onRowsChanged(int positionStart, int rowCount);
+    }
+
+    private static Executor sLoadExecutor;
+
+    private final Context mContext;
+    private final Callback mCallback;
+    private final Executor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /* First date of every page found so far, which is all it takes to load a page again */
+    private long[] mPageStartDates = new long[8];
+    private int mPageCount;
+
+    /* Rows in the pages found so far. Every page but the last holds PAGE_SIZE rows. */
+    private int mRowCount;
+    private boolean mEndReached;
+
+    private final SparseArray<List<ForecastRow>> mResidentPages = new SparseArray<>();
+    private final SparseBooleanArray mLoadingPages = new SparseBooleanArray();
+
+    /* The page of the last row asked for, which decides which pages are dropped */
+    private int mCurrentPage;
+
+    private boolean mClosed;
+
+    /**
+     * Creates a pager that starts out with the first page of the forecast.
+     *
+     * @param context   Used to query the ContentProvider and format the rows
+     * @param firstPage The first page, as loaded by {@link #loadPage} from today onwards
+     * @param callback  Told about every page loaded after the first
+     */
+    ForecastPager(Context context, List<ForecastRow> firstPage, Callback callback) {
+        this(context, firstPage, callback, getLoadExecutor());
+    }
+
+    ForecastPager(Context context, List<ForecastRow> firstPage, Callback callback,
+            Executor executor) {
+        mContext = context.getApplicationContext();
+        mCallback = callback;
+        mExecutor = executor;
+
+        /* Loading the first page again from its first day gives the same rows as from today */
+        if (!firstPage.isEmpty()) {
+            mPageStartDates[0] = firstPage.get(0).date;
+        }
+        onPageLoaded(0, firstPage);
+    }
+
+    private static synchronized Executor getLoadExecutor() {
+        if (sLoadExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                    LOAD_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+            executor.allowCoreThreadTimeOut(true);
+            sLoadExecutor = executor;
+        }
+        return sLoadExecutor;
+    }
+
+    /**
+     * Reads a page of the forecast. Runs on a background thread.
+     *
+     * @param context   Used to query the ContentProvider and format the rows
+     * @param startDate Normalized date of the first day of the page
+     * @return Up to PAGE_SIZE rows, from startDate onwards
+     */
+    static List<ForecastRow> loadPage(Context context, long startDate) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherUriWithLimit(PAGE_SIZE),
+                MainActivity.MAIN_FORECAST_PROJECTION,
+                WeatherContract.WeatherEntry.SQL_SELECT_FROM_DATE,
+                new String[]{Long.toString(startDate)},
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+
+        if (cursor == null) {
+            return Collections.emptyList();
+        }
+
+        try {
+            List<ForecastRow> page = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                page.add(ForecastRow.fromCursor(context, cursor));
+            }
+            return Collections.unmodifiableList(page);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return The number of rows in the pages found so far. Grows as the list is scrolled.
+     */
+    int getRowCount() {
+        return mRowCount;
+    }
+
+    /**
+     * Returns the row at a position, and loads whatever pages are needed to have the rows around
+     * it ready when they are bound.
+     *
+     * @param position Position of the row, less than {@link #getRowCount()}
+     * @return The row, or null if its page was dropped and is being loaded again
+     */
+    ForecastRow get(int position) {
+        int page = position / PAGE_SIZE;
+        mCurrentPage = page;
+
+        if (!mEndReached && position >= mRowCount - PREFETCH_DISTANCE) {
+            requestPage(mPageCount);
+        }
+
+        List<ForecastRow> rows = mResidentPages.get(page);
+        if (rows == null) {
+            requestPage(page);
+            return null;
+        }
+
+        int index = position % PAGE_SIZE;
+        return index < rows.size() ? rows.get(index) : null;
+    }
+
+    /**
+     * @return The number of rows held in memory, which never exceeds
+     * MAX_RESIDENT_PAGES * PAGE_SIZE
+     */
+    int getResidentRowCount() {
+        int rowCount = 0;
+        for (int i = 0; i < mResidentPages.size(); i++) {
+            rowCount += mResidentPages.valueAt(i).size();
+        }
+        return rowCount;
+    }
+
+    /**
+     * Stops delivering pages. Called once the adapter moves on to a newer forecast; pages that
+     * are still loading are thrown away when they arrive.
+     */
+    void close() {
+        mClosed = true;
+    }
+
+    private void requestPage(final int page) {
+        if (mClosed || mLoadingPages.get(page)) {
+            return;
+        }
+        mLoadingPages.put(page, true);
+
+        final long startDate = mPageStartDates[page];
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<ForecastRow> rows = loadPage(mContext, startDate);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mLoadingPages.delete(page);
+                        if (!mClosed) {
+                            onPageLoaded(page, rows);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageLoaded(int page, List<ForecastRow> rows) {
+        mResidentPages.put(page, rows);
+
+        if (page < mPageCount) {
+            /*
+             * A dropped page came back. If the forecast changed in the meantime, the loader
+             * is already on its way with a new first page, which replaces this pager.
+             */
+            dropDistantPages();
+            mCallback.onRowsChanged(page * PAGE_SIZE, rows.size());
+            return;
+        }
+
+        mPageCount++;
+        int positionStart = mRowCount;
+        mRowCount += rows.size();
+
+        if (rows.size() < PAGE_SIZE) {
+            mEndReached = true;
+        } else {
+            /* The next page starts the day after the last day of this one */
+            if (mPageCount == mPageStartDates.length) {
+                long[] pageStartDates = new long[mPageStartDates.length * 2];
+                System.arraycopy(mPageStartDates, 0, pageStartDates, 0, mPageCount);
+                mPageStartDates = pageStartDates;
+            }
+            mPageStartDates[mPageCount] = rows.get(rows.size() - 1).date + 1;
+        }
+
+        dropDistantPages();
+        if (page > 0 && rows.size() > 0) {
+            mCallback.onRowsInserted(positionStart, rows.size());
+        }
+    }
+
+    /**
+     * Drops the pages furthest away from the current one until no more than MAX_RESIDENT_PAGES
+     * are left.
+     */
+    private void dropDistantPages() {
+        while (mResidentPages.size() > MAX_RESIDENT_PAGES) {
+            int furthestIndex = 0;
+            for (int i = 1; i < mResidentPages.size(); i++) {
+                if (Math.abs(mResidentPages.keyAt(i) - mCurrentPage)
+                        > Math.abs(mResidentPages.keyAt(furthestIndex) - mCurrentPage)) {
+                    furthestIndex = i;
+                }
+            }
+            mResidentPages.removeAt(furthestIndex);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+import com.example.android.sunshine.utilities.WeatherArtCache;
+
+/**
+ * Everything {@link ForecastAdapter} shows for one day of the forecast, already formatted.
+ * Rows are built by {@link ForecastLoader} on a background thread, icons included, so binding a
+ * row to its views only has to assign these fields.
+ */
+final class ForecastRow {
+
+    /* Normalized UTC date of this day, passed on when the row is clicked */
+    final long date;
+
+    /*
+     * Icon used by the "today" layout and by the layout of every other day, rendered at the size
+     * it is shown at. Shared through the WeatherArtCache, and null if the art couldn't be loaded.
+     */
+    final Bitmap largeIcon;
+    final Bitmap smallIcon;
+
+    final String dateText;
+
+    final String description;
+    final String descriptionA11y;
+
+    final String highText;
+    final String highA11y;
+
+    final String lowText;
+    final String lowA11y;
+
+    private ForecastRow(long date, Bitmap largeIcon, Bitmap smallIcon, String dateText,
+            String description, String descriptionA11y, String highText, String highA11y,
+            String lowText, String lowA11y) {
+        this.date = date;
+        this.largeIcon = largeIcon;
+        this.smallIcon = smallIcon;
+        this.dateText = dateText;
+        this.description = description;
+        this.descriptionA11y = descriptionA11y;
+        this.highText = highText;
+        this.highA11y = highA11y;
+        this.lowText = lowText;
+        this.lowA11y = lowA11y;
+    }
+
+    /**
+     * Builds the row for the day the cursor is positioned on. The cursor must contain the columns
+     * of {@link MainActivity#MAIN_FORECAST_PROJECTION}.
+     *
+     * @param context Used to format the date and temperatures, to read strings and to load the
+     *                icons
+     * @param cursor  Cursor positioned on the day to build the row for
+     * @return The row, ready to be bound
+     */
+    static ForecastRow fromCursor(Context context, Cursor cursor) {
+        long date = cursor.getLong(MainActivity.INDEX_WEATHER_DATE);
+        int weatherId = cursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
+
+        String description = SunshineWeatherUtils.getStringForWeatherCondition(context, weatherId);
+
+        /*
+         * If the user's preference for weather is fahrenheit, formatTemperature will convert
+         * the temperature. This method will also append either °C or °F to the temperature
+         * String.
+         */
+        String highText = SunshineWeatherUtils.formatTemperature(context,
+                cursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP));
+        String lowText = SunshineWeatherUtils.formatTemperature(context,
+                cursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP));
+
+        /* Most days share their art, so after the first few rows these are cache hits */
+        Resources resources = context.getResources();
+        int largeIconSize = resources.getDimensionPixelSize(R.dimen.today_icon);
+        int smallIconSize = resources.getDimensionPixelSize(R.dimen.list_icon);
+        WeatherArtCache artCache = WeatherArtCache.getInstance(context);
+
+        return new ForecastRow(date,
+                artCache.get(SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(
+                        weatherId), largeIconSize, largeIconSize),
+                artCache.get(SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(
+                        weatherId), smallIconSize, smallIconSize),
+                SunshineDateUtils.getFriendlyDateString(context, date, false),
+                description,
+                context.getString(R.string.a11y_forecast, description),
+                highText,
+                context.getString(R.string.a11y_high_temp, highText),
+                lowText,
+                context.getString(R.string.a11y_low_temp, lowText));
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.os.Bundle;
+
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+/**
+ * The days of a forecast, stored column by column in arrays of primitives. Each day in a
+ * ContentValues costs a HashMap and a boxed Long, Integer or Double for every column; a batch
+ * costs one array per column, however many days it holds.
+ * <p>
+ * A batch goes from the parser to the provider without being copied: {@link #toBundle()} puts
+ * the arrays themselves in the Bundle handed to {@link WeatherProvider#call}, and the provider
+ * binds them straight into its compiled statements.
+ */
+public final class ForecastBatch {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /* Keys of the arrays in the Bundle made by toBundle */
+    private static final String KEY_SIZE = "size";
+    private static final String KEY_DATES = WeatherEntry.COLUMN_DATE;
+    private static final String KEY_WEATHER_IDS = WeatherEntry.COLUMN_WEATHER_ID;
+    private static final String KEY_MIN_TEMPS = WeatherEntry.COLUMN_MIN_TEMP;
+    private static final String KEY_MAX_TEMPS = WeatherEntry.COLUMN_MAX_TEMP;
+    private static final String KEY_HUMIDITIES = WeatherEntry.COLUMN_HUMIDITY;
+    private static final String KEY_PRESSURES = WeatherEntry.COLUMN_PRESSURE;
+    private static final String KEY_WIND_SPEEDS = WeatherEntry.COLUMN_WIND_SPEED;
+    private static final String KEY_DEGREES = WeatherEntry.COLUMN_DEGREES;
+
+    private int mSize;
+    private long[] mDates;
+    private int[] mWeatherIds;
+    private double[] mMinTemps;
+    private double[] mMaxTemps;
+    private int[] mHumidities;
+    private double[] mPressures;
+    private double[] mWindSpeeds;
+    private double[] mDegrees;
+
+    public ForecastBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity The number of days the batch can hold before it has to grow
+     */
+    public ForecastBatch(int capacity) {
+        mDates = new long[capacity];
+        mWeatherIds = new int[capacity];
+        mMinTemps = new double[capacity];
+        mMaxTemps = new double[capacity];
+        mHumidities = new int[capacity];
+        mPressures = new double[capacity];
+        mWindSpeeds = new double[capacity];
+        mDegrees = new double[capacity];
+    }
+
+    /**
+     * Adds a day to the end of the batch. The humidity is a whole number, as the parsers have
+     * always stored it.
+     */
+    public void add(long date, int weatherId, double minTemp, double maxTemp, int humidity,
+            double pressure, double windSpeed, double degrees) {
+        if (mSize == mDates.length) {
+            grow();
+        }
+
+        mDates[mSize] = date;
+        mWeatherIds[mSize] = weatherId;
+        mMinTemps[mSize] = minTemp;
+        mMaxTemps[mSize] = maxTemp;
+        mHumidities[mSize] = humidity;
+        mPressures[mSize] = pressure;
+        mWindSpeeds[mSize] = windSpeed;
+        mDegrees[mSize] = degrees;
+        mSize++;
+    }
+
+    private void grow() {
+        int capacity = Math.max(DEFAULT_CAPACITY, mDates.length * 2);
+        mDates = Arrays.copyOf(mDates, capacity);
+        mWeatherIds = Arrays.copyOf(mWeatherIds, capacity);
+        mMinTemps = Arrays.copyOf(mMinTemps, capacity);
+        mMaxTemps = Arrays.copyOf(mMaxTemps, capacity);
+        mHumidities = Arrays.copyOf(mHumidities, capacity);
+        mPressures = Arrays.copyOf(mPressures, capacity);
+        mWindSpeeds = Arrays.copyOf(mWindSpeeds, capacity);
+        mDegrees = Arrays.copyOf(mDegrees, capacity);
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long getDate(int day) {
+        return mDates[day];
+    }
+
+    public int getWeatherId(int day) {
+        return mWeatherIds[day];
+    }
+
+    public double getMinTemp(int day) {
+        return mMinTemps[day];
+    }
+
+    public double getMaxTemp(int day) {
+        return mMaxTemps[day];
+    }
+
+    public int getHumidity(int day) {
+        return mHumidities[day];
+    }
+
+    public double getPressure(int day) {
+        return mPressures[day];
+    }
+
+    public double getWindSpeed(int day) {
+        return mWindSpeeds[day];
+    }
+
+    public double getDegrees(int day) {
+        return mDegrees[day];
+    }
+
+    /**
+     * Wraps the batch in a Bundle for {@link WeatherProvider#call}. The arrays are shared, not
+     * copied, so the batch must not be changed until the call returns.
+     *
+     * @return The Bundle holding the batch
+     */
+    public Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putInt(KEY_SIZE, mSize);
+        bundle.putLongArray(KEY_DATES, mDates);
+        bundle.putIntArray(KEY_WEATHER_IDS, mWeatherIds);
+        bundle.putDoubleArray(KEY_MIN_TEMPS, mMinTemps);
+        bundle.putDoubleArray(KEY_MAX_TEMPS, mMaxTemps);
+        bundle.putIntArray(KEY_HUMIDITIES, mHumidities);
+        bundle.putDoubleArray(KEY_PRESSURES, mPressures);
+        bundle.putDoubleArray(KEY_WIND_SPEEDS, mWindSpeeds);
+        bundle.putDoubleArray(KEY_DEGREES, mDegrees);
+        return bundle;
+    }
+
+    /**
+     * Reads back a batch made by {@link #toBundle()}, sharing its arrays.
+     *
+     * @param bundle The Bundle holding the batch
+     * @return The batch
+     * @throws IllegalArgumentException If the Bundle doesn't hold a complete batch
+     */
+    public static ForecastBatch fromBundle(Bundle bundle) {
+        ForecastBatch batch = new ForecastBatch(0);
+        batch.mDates = bundle.getLongArray(KEY_DATES);
+        batch.mWeatherIds = bundle.getIntArray(KEY_WEATHER_IDS);
+        batch.mMinTemps = bundle.getDoubleArray(KEY_MIN_TEMPS);
+        batch.mMaxTemps = bundle.getDoubleArray(KEY_MAX_TEMPS);
+        batch.mHumidities = bundle.getIntArray(KEY_HUMIDITIES);
+        batch.mPressures = bundle.getDoubleArray(KEY_PRESSURES);
+        batch.mWindSpeeds = bundle.getDoubleArray(KEY_WIND_SPEEDS);
+        batch.mDegrees = bundle.getDoubleArray(KEY_DEGREES);
+        batch.mSize = bundle.getInt(KEY_SIZE, -1);
+
+        if (batch.mSize < 0 || batch.getCapacity() < batch.mSize) {
+            throw new IllegalArgumentException("Bundle doesn't hold a complete forecast batch");
+        }
+        return batch;
+    }
+
+    /**
+     * @return The number of days every column has room for, or -1 if a column is missing
+     */
+    private int getCapacity() {
+        if (mDates == null || mWeatherIds == null || mMinTemps == null || mMaxTemps == null
+                || mHumidities == null || mPressures == null || mWindSpeeds == null
+                || mDegrees == null) {
+            return -1;
+        }
+        int capacity = Math.min(mDates.length, mWeatherIds.length);
+        capacity = Math.min(capacity, Math.min(mMinTemps.length, mMaxTemps.length));
+        capacity = Math.min(capacity, Math.min(mHumidities.length, mPressures.length));
+        return Math.min(capacity, Math.min(mWindSpeeds.length, mDegrees.length));
+    }
+
+    /**
+     * Builds a batch out of complete days of weather, for callers that still produce
+     * ContentValues.
+     *
+     * @param values Days holding every weather column
+     * @return The batch
+     * @throws IllegalArgumentException If a day is missing a column
+     */
+    public static ForecastBatch fromContentValues(ContentValues[] values) {
+        ForecastBatch batch = new ForecastBatch(values.length);
+        for (ContentValues value : values) {
+            Long date = value.getAsLong(WeatherEntry.COLUMN_DATE);
+            Integer weatherId = value.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID);
+            Double minTemp = value.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP);
+            Double maxTemp = value.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP);
+            Integer humidity = value.getAsInteger(WeatherEntry.COLUMN_HUMIDITY);
+            Double pressure = value.getAsDouble(WeatherEntry.COLUMN_PRESSURE);
+            Double windSpeed = value.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED);
+            Double degrees = value.getAsDouble(WeatherEntry.COLUMN_DEGREES);
+
+            if (date == null || weatherId == null || minTemp == null || maxTemp == null
+                    || humidity == null || pressure == null || windSpeed == null
+                    || degrees == null) {
+                throw new IllegalArgumentException("Incomplete day of weather: " + value);
+            }
+
+            batch.add(date, weatherId, minTemp, maxTemp, humidity, pressure, windSpeed, degrees);
+        }
+        return batch;
+    }
+
+    /**
+     * Converts the batch to ContentValues, with the same types the parsers have always used.
+     *
+     * @return One ContentValues per day
+     */
+    public ContentValues[] toContentValues() {
+        ContentValues[] values = new ContentValues[mSize];
+        for (int day = 0; day < mSize; day++) {
+            ContentValues value = new ContentValues();
+            value.put(WeatherEntry.COLUMN_DATE, mDates[day]);
+            value.put(WeatherEntry.COLUMN_WEATHER_ID, mWeatherIds[day]);
+            value.put(WeatherEntry.COLUMN_MIN_TEMP, mMinTemps[day]);
+            value.put(WeatherEntry.COLUMN_MAX_TEMP, mMaxTemps[day]);
+            value.put(WeatherEntry.COLUMN_HUMIDITY, mHumidities[day]);
+            value.put(WeatherEntry.COLUMN_PRESSURE, mPressures[day]);
+            value.put(WeatherEntry.COLUMN_WIND_SPEED, mWindSpeeds[day]);
+            value.put(WeatherEntry.COLUMN_DEGREES, mDegrees[day]);
+            values[day] = value;
+        }
+        return values;
+    }
+}
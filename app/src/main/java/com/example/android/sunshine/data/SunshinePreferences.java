@@ -31,6 +31,32 @@ public final class SunshinePreferences {
     public static final String PREF_COORD_LAT = "coord_lat";
     public static final String PREF_COORD_LONG = "coord_long";
 
+    /*
+     * Hash of the last forecast that was successfully sent to the watch face, so that we only
+     * send the forecast again once it has changed.
+     */
+    private static final String PREF_LAST_WEARABLE_PAYLOAD_HASH = "last_wearable_payload_hash";
+
+    /*
+     * Interval of the periodic sync, which is adapted to how often the forecast changes, so that
+     * it survives the process being killed.
+     */
+    private static final String PREF_SYNC_INTERVAL_SECONDS = "sync_interval_seconds";
+
+    /*
+     * The preferences that are read while binding and formatting the forecast. They are read from
+     * SharedPreferences once and kept in an immutable Snapshot, which the listener below replaces
+     * whenever one of the preferences changes. Reading a preference is then a field read rather
+     * than a SharedPreferences lookup plus a few resource lookups for its key and default value.
+     */
+    private static volatile Snapshot sSnapshot;
+
+    /*
+     * SharedPreferences only keeps weak references to its listeners, so we hold on to ours here
+     * for as long as the process lives.
+     */
+    private static SharedPreferences.OnSharedPreferenceChangeListener sSnapshotListener;
+
     /**
      * Helper method to handle setting location details in Preferences (city name, latitude,
      * longitude)
@@ -48,6 +74,9 @@ public final class SunshinePreferences {
         editor.putLong(PREF_COORD_LAT, Double.doubleToRawLongBits(lat));
         editor.putLong(PREF_COORD_LONG, Double.doubleToRawLongBits(lon));
         editor.apply();
+
+        /* apply() updates SharedPreferences in memory right away, so the snapshot can follow */
+        refreshSnapshot(context);
     }
 
     /**
@@ -62,6 +91,9 @@ public final class SunshinePreferences {
         editor.remove(PREF_COORD_LAT);
         editor.remove(PREF_COORD_LONG);
         editor.apply();
+
+        /* apply() updates SharedPreferences in memory right away, so the snapshot can follow */
+        refreshSnapshot(context);
     }
 
     /**
@@ -74,12 +106,7 @@ public final class SunshinePreferences {
      * "94043,USA" if SharedPreferences have not been implemented yet.
      */
     public static String getPreferredWeatherLocation(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        String keyForLocation = context.getString(R.string.pref_location_key);
-        String defaultLocation = context.getString(R.string.pref_location_default);
-
-        return sp.getString(keyForLocation, defaultLocation);
+        return getSnapshot(context).mLocation;
     }
 
     /**
@@ -89,19 +116,7 @@ public final class SunshinePreferences {
      * @return true if metric display should be used, false if imperial display should be used
      */
     public static boolean isMetric(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        String keyForUnits = context.getString(R.string.pref_units_key);
-        String defaultUnits = context.getString(R.string.pref_units_metric);
-        String preferredUnits = sp.getString(keyForUnits, defaultUnits);
-        String metric = context.getString(R.string.pref_units_metric);
-
-        boolean userPrefersMetric = false;
-        if (metric.equals(preferredUnits)) {
-            userPrefersMetric = true;
-        }
-
-        return userPrefersMetric;
+        return getSnapshot(context).mIsMetric;
     }
 
     /**
@@ -113,25 +128,8 @@ public final class SunshinePreferences {
      * @return an array containing the two coordinate values for the user's preferred location
      */
     public static double[] getLocationCoordinates(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        double[] preferredCoordinates = new double[2];
-
-        /*
-         * This is a hack we have to resort to since you can't store doubles in SharedPreferences.
-         *
-         * Double.doubleToLongBits returns an integer corresponding to the bits of the given
-         * IEEE 754 double precision value.
-         *
-         * Double.longBitsToDouble does the opposite, converting a long (that represents a double)
-         * into the double itself.
-         */
-        preferredCoordinates[0] = Double
-                 .longBitsToDouble(sp.getLong(PREF_COORD_LAT, Double.doubleToRawLongBits(0.0)));
-        preferredCoordinates[1] = Double
-                .longBitsToDouble(sp.getLong(PREF_COORD_LONG, Double.doubleToRawLongBits(0.0)));
-
-        return preferredCoordinates;
+        Snapshot snapshot = getSnapshot(context);
+        return new double[]{snapshot.mLatitude, snapshot.mLongitude};
     }
 
     /**
@@ -142,17 +140,7 @@ public final class SunshinePreferences {
      * @return true if lat/long are saved in SharedPreferences
      */
     public static boolean isLocationLatLonAvailable(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        boolean spContainLatitude = sp.contains(PREF_COORD_LAT);
-        boolean spContainLongitude = sp.contains(PREF_COORD_LONG);
-
-        boolean spContainBothLatitudeAndLongitude = false;
-        if (spContainLatitude && spContainLongitude) {
-            spContainBothLatitudeAndLongitude = true;
-        }
-
-        return spContainBothLatitudeAndLongitude;
+        return getSnapshot(context).mIsLatLonAvailable;
     }
 
     /**
@@ -163,26 +151,7 @@ public final class SunshinePreferences {
      * @return true if the user prefers to see notifications, false otherwise
      */
     public static boolean areNotificationsEnabled(Context context) {
-        /* Key for accessing the preference for showing notifications */
-        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
-
-        /*
-         * In Sunshine, the user has the ability to say whether she would like notifications
-         * enabled or not. If no preference has been chosen, we want to be able to determine
-         * whether or not to show them. To do this, we reference a bool stored in bools.xml.
-         */
-        boolean shouldDisplayNotificationsByDefault = context
-                .getResources()
-                .getBoolean(R.bool.show_notifications_by_default);
-
-        /* As usual, we use the default SharedPreferences to access the user's preferences */
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        /* If a value is stored with the key, we extract it here. If not, use a default. */
-        boolean shouldDisplayNotifications = sp
-                .getBoolean(displayNotificationsKey, shouldDisplayNotificationsByDefault);
-
-        return shouldDisplayNotifications;
+        return getSnapshot(context).mNotificationsEnabled;
     }
 
     /**
@@ -242,4 +211,152 @@ public final class SunshinePreferences {
         editor.putLong(lastNotificationKey, timeOfNotification);
         editor.apply();
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the hash of the last forecast that was sent to the watch face.
+     *
+     * @param context Used to access SharedPreferences
+     * @return The hash of the last forecast sent, or -1 if none was sent yet
+     */
+    public static long getLastWearablePayloadHash(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        return sp.getLong(PREF_LAST_WEARABLE_PAYLOAD_HASH, -1);
+    }
+
+    /**
+     * Saves the hash of the forecast that was just sent to the watch face.
+     *
+     * @param context     Used to access SharedPreferences
+     * @param payloadHash Hash of the forecast that was sent
+     */
+    public static void saveLastWearablePayloadHash(Context context, long payloadHash) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+        editor.putLong(PREF_LAST_WEARABLE_PAYLOAD_HASH, payloadHash);
+        editor.apply();
+    }
+
+    /**
+     * Returns the interval the periodic sync was last scheduled with.
+     *
+     * @param context        Used to access SharedPreferences
+     * @param defaultSeconds Interval to return if the sync hasn't been scheduled yet
+     * @return The interval of the periodic sync, in seconds
+     */
+    public static long getSyncIntervalSeconds(Context context, long defaultSeconds) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        return sp.getLong(PREF_SYNC_INTERVAL_SECONDS, defaultSeconds);
+    }
+
+    /**
+     * Saves the interval the periodic sync was just scheduled with.
+     *
+     * @param context         Used to access SharedPreferences
+     * @param intervalSeconds Interval of the periodic sync, in seconds
+     */
+    public static void saveSyncIntervalSeconds(Context context, long intervalSeconds) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+        editor.putLong(PREF_SYNC_INTERVAL_SECONDS, intervalSeconds);
+        editor.apply();
+    }
+
+    /**
+     * Returns the current snapshot of the preferences, reading it from SharedPreferences the
+     * first time it is needed.
+     *
+     * @param context Used to access SharedPreferences
+     * @return The current snapshot
+     */
+    private static Snapshot getSnapshot(Context context) {
+        Snapshot snapshot = sSnapshot;
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        synchronized (SunshinePreferences.class) {
+            if (sSnapshot == null) {
+                final Context appContext = context.getApplicationContext();
+                SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(appContext);
+
+                sSnapshotListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                    @Override
+                    public void onSharedPreferenceChanged(SharedPreferences sp, String key) {
+                        refreshSnapshot(appContext);
+                    }
+                };
+                sp.registerOnSharedPreferenceChangeListener(sSnapshotListener);
+
+                sSnapshot = new Snapshot(appContext, sp);
+            }
+            return sSnapshot;
+        }
+    }
+
+    /**
+     * Reads the preferences again and replaces the snapshot with the result. Called by the
+     * listener whenever a preference changes, and by our own setters so that the new values are
+     * visible to the calling thread straight away rather than once the listener has run on the
+     * main thread.
+     *
+     * @param context Used to access SharedPreferences
+     */
+    private static void refreshSnapshot(Context context) {
+        synchronized (SunshinePreferences.class) {
+            /* If nobody has read a preference yet, the first read will build the snapshot */
+            if (sSnapshot == null) {
+                return;
+            }
+            Context appContext = context.getApplicationContext();
+            sSnapshot = new Snapshot(appContext,
+                    PreferenceManager.getDefaultSharedPreferences(appContext));
+        }
+    }
+
+    /**
+     * An immutable copy of the preferences that are read while displaying the weather.
+     */
+    private static final class Snapshot {
+
+        final String mLocation;
+        final boolean mIsMetric;
+        final double mLatitude;
+        final double mLongitude;
+        final boolean mIsLatLonAvailable;
+        final boolean mNotificationsEnabled;
+
+        Snapshot(Context context, SharedPreferences sp) {
+            mLocation = sp.getString(context.getString(R.string.pref_location_key),
+                    context.getString(R.string.pref_location_default));
+
+            String metric = context.getString(R.string.pref_units_metric);
+            mIsMetric = metric.equals(sp.getString(context.getString(R.string.pref_units_key),
+                    metric));
+
+            /*
+             * This is a hack we have to resort to since you can't store doubles in
+             * SharedPreferences.
+             *
+             * Double.doubleToLongBits returns an integer corresponding to the bits of the given
+             * IEEE 754 double precision value.
+             *
+             * Double.longBitsToDouble does the opposite, converting a long (that represents a
+             * double) into the double itself.
+             */
+            mLatitude = Double
+                    .longBitsToDouble(sp.getLong(PREF_COORD_LAT, Double.doubleToRawLongBits(0.0)));
+            mLongitude = Double
+                    .longBitsToDouble(sp.getLong(PREF_COORD_LONG, Double.doubleToRawLongBits(0.0)));
+            mIsLatLonAvailable = sp.contains(PREF_COORD_LAT) && sp.contains(PREF_COORD_LONG);
+
+            /*
+             * In Sunshine, the user has the ability to say whether she would like notifications
+             * enabled or not. If no preference has been chosen, we want to be able to determine
+             * whether or not to show them. To do this, we reference a bool stored in bools.xml.
+             */
+            mNotificationsEnabled = sp.getBoolean(
+                    context.getString(R.string.pref_enable_notifications_key),
+                    context.getResources().getBoolean(R.bool.show_notifications_by_default));
+        }
+    }
+}
@@ -15,7 +15,10 @@
  */
 package com.example.android.sunshine.data;
 
+import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.net.Uri;
+import android.os.Bundle;
 import android.provider.BaseColumns;
 
 import com.example.android.sunshine.utilities.SunshineDateUtils;
@@ -56,6 +59,117 @@ public class WeatherContract {
      */
     public static final String PATH_WEATHER = "weather";
 
+    /*
+     * Appended to the weather path to bulkInsert a whole forecast by reconciling it with what is
+     * already stored rather than inserting every row.
+     *
+     *     content://com.example.android.sunshine/weather/reconcile
+     */
+    public static final String PATH_RECONCILE = "reconcile";
+
+    /*
+     * Path of the saved locations, whose forecasts are synced alongside the forecast for the
+     * location picked in the settings.
+     *
+     *     content://com.example.android.sunshine/location/
+     */
+    public static final String PATH_LOCATION = "location";
+
+    /*
+     * Path of the forecast history, and the paths appended to it for its queries.
+     *
+     *     content://com.example.android.sunshine/history/range/1474588800000/1475193600000
+     *     content://com.example.android.sunshine/history/asof/1474678800000
+     */
+    public static final String PATH_HISTORY = "history";
+    public static final String PATH_RANGE = "range";
+    public static final String PATH_AS_OF = "asof";
+    public static final String PATH_COMPACT = "compact";
+
+    /*
+     * Query parameter that limits the number of rows a weather query returns. Along with a
+     * selection on the date, it lets the forecast be read a page at a time.
+     *
+     *     content://com.example.android.sunshine/weather?limit=30
+     */
+    public static final String PARAM_LIMIT = "limit";
+
+    /*
+     * Method of ContentResolver#call that does what a bulkInsert at a reconcile URI does, but
+     * takes the forecast as a ForecastBatch rather than as ContentValues. The arg is the reconcile
+     * URI, as a String, and the extras are made by ForecastBatch#toBundle. The result holds the
+     * number of days written under EXTRA_ROWS_WRITTEN.
+     */
+    public static final String METHOD_RECONCILE_FORECAST = "reconcile_forecast";
+    public static final String EXTRA_ROWS_WRITTEN = "rows_written";
+
+    /**
+     * Reconciles the stored forecast of a location with the given batch.
+     *
+     * @param resolver     Used to call the provider
+     * @param reconcileUri {@link WeatherEntry#CONTENT_RECONCILE_URI}, or the URI built by
+     *                     {@link LocationEntry#buildWeatherUri(long)} for a saved location
+     * @param batch        The complete new forecast
+     * @return The number of days that were written
+     */
+    public static int reconcileForecast(ContentResolver resolver, Uri reconcileUri,
+            ForecastBatch batch) {
+        Bundle result = resolver.call(BASE_CONTENT_URI, METHOD_RECONCILE_FORECAST,
+                reconcileUri.toString(), batch.toBundle());
+        return result == null ? 0 : result.getInt(EXTRA_ROWS_WRITTEN);
+    }
+
+    /* Inner class that defines the table contents of the location table */
+    public static final class LocationEntry implements BaseColumns {
+
+        /* The base CONTENT_URI used to query the saved locations from the content provider */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_LOCATION)
+                .build();
+
+        /* Used internally as the name of our location table. */
+        public static final String TABLE_NAME = "location";
+
+        /*
+         * The location as the user typed it, sent to the weather server as the location query.
+         * Each location can only be saved once.
+         */
+        public static final String COLUMN_LOCATION_SETTING = "location_setting";
+
+        /*
+         * The location picked in the settings doesn't have a row in the location table. Its
+         * forecast is stored under this ID, which the table never hands out, and is what the
+         * URIs in WeatherEntry refer to.
+         */
+        public static final long PREFERRED_LOCATION_ID = 0;
+
+        /**
+         * Builds a URI for a single saved location. Deleting it also deletes its forecast.
+         *
+         * @param locationId The _ID of the location
+         * @return Uri of the location
+         */
+        public static Uri buildLocationUri(long locationId) {
+            return ContentUris.withAppendedId(CONTENT_URI, locationId);
+        }
+
+        /**
+         * Builds a URI for the forecast of a saved location. A bulkInsert at this URI reconciles
+         * the stored forecast with the given one in a single transaction, just like
+         * {@link WeatherEntry#CONTENT_RECONCILE_URI} does for the preferred location.
+         *
+         *     content://com.example.android.sunshine/location/3/weather
+         *
+         * @param locationId The _ID of the location
+         * @return Uri of the location's forecast
+         */
+        public static Uri buildWeatherUri(long locationId) {
+            return buildLocationUri(locationId).buildUpon()
+                    .appendPath(PATH_WEATHER)
+                    .build();
+        }
+    }
+
     /* Inner class that defines the table contents of the weather table */
     public static final class WeatherEntry implements BaseColumns {
 
@@ -64,6 +178,15 @@ public class WeatherContract {
                 .appendPath(PATH_WEATHER)
                 .build();
 
+        /*
+         * bulkInsert at this URI replaces the stored forecast with the given one. Days that are
+         * unchanged are left alone, days that are no longer part of the forecast are deleted and
+         * a single change notification is sent for CONTENT_URI.
+         */
+        public static final Uri CONTENT_RECONCILE_URI = CONTENT_URI.buildUpon()
+                .appendPath(PATH_RECONCILE)
+                .build();
+
         /* Used internally as the name of our weather table. */
         public static final String TABLE_NAME = "weather";
 
@@ -109,6 +232,13 @@ public class WeatherContract {
          */
         public static final String COLUMN_DEGREES = "degrees";
 
+        /*
+         * The _ID of the location in the location table this forecast is for, or
+         * LocationEntry.PREFERRED_LOCATION_ID for the location picked in the settings. Every URI
+         * below only ever sees the forecast of the preferred location.
+         */
+        public static final String COLUMN_LOCATION_ID = "location_id";
+
         /**
          * Builds a URI that adds the weather date to the end of the forecast content URI path.
          * This is used to query details about a single weather entry by date. This is what we
@@ -124,15 +254,104 @@ public class WeatherContract {
         }
 
         /**
-         * Returns just the selection part of the weather query from a normalized today value.
-         * This is used to get a weather forecast from today's date. To make this easy to use
-         * in compound selection, we embed today's date as an argument in the query.
+         * Builds a URI that returns at most the given number of rows of weather.
          *
-         * @return The selection part of the weather query for today onwards
+         * @param limit Maximum number of rows to return
+         * @return Uri to query a page of the weather
          */
-        public static String getSqlSelectForTodayOnwards() {
+        public static Uri buildWeatherUriWithLimit(int limit) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit))
+                    .build();
+        }
+
+        /*
+         * Selection of the weather on or after a date, passed as its only argument. Since the
+         * date is an argument rather than part of the SQL, every query for today onwards, or for
+         * a page starting at some date, compiles to the same statement.
+         */
+        public static final String SQL_SELECT_FROM_DATE = COLUMN_DATE + " >= ?";
+
+        /**
+         * Returns the selection argument that goes with {@link #SQL_SELECT_FROM_DATE} to get a
+         * weather forecast from today's date.
+         *
+         * @return The selection arguments of the weather query for today onwards
+         */
+        public static String[] getSelectionArgsForTodayOnwards() {
             long normalizedUtcNow = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
-            return WeatherContract.WeatherEntry.COLUMN_DATE + " >= " + normalizedUtcNow;
+            return new String[]{Long.toString(normalizedUtcNow)};
+        }
+    }
+
+    /*
+     * Inner class that defines the table contents of the forecast history table. Every forecast
+     * that a sync stores is also appended here, stamped with the time it was fetched, so the
+     * history holds each forecast we have ever been given for a day rather than just the latest.
+     * Like WeatherEntry, the URIs below are for the location picked in the settings.
+     */
+    public static final class HistoryEntry implements BaseColumns {
+
+        /* The base CONTENT_URI used to query the whole history from the content provider */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_HISTORY)
+                .build();
+
+        /*
+         * Deleting at this URI applies the retention policy: recent forecasts are all kept, older
+         * ones are thinned out to the last forecast of each day and the oldest are dropped.
+         */
+        public static final Uri CONTENT_COMPACT_URI = CONTENT_URI.buildUpon()
+                .appendPath(PATH_COMPACT)
+                .build();
+
+        /* Used internally as the name of our history table. */
+        public static final String TABLE_NAME = "weather_history";
+
+        /* When the forecast was fetched, in milliseconds since the epoch */
+        public static final String COLUMN_FETCH_TIME = "fetch_time";
+
+        /* The remaining columns hold the same data as the columns of the same name in WeatherEntry */
+        public static final String COLUMN_LOCATION_ID = WeatherEntry.COLUMN_LOCATION_ID;
+        public static final String COLUMN_DATE = WeatherEntry.COLUMN_DATE;
+        public static final String COLUMN_WEATHER_ID = WeatherEntry.COLUMN_WEATHER_ID;
+        public static final String COLUMN_MIN_TEMP = WeatherEntry.COLUMN_MIN_TEMP;
+        public static final String COLUMN_MAX_TEMP = WeatherEntry.COLUMN_MAX_TEMP;
+        public static final String COLUMN_HUMIDITY = WeatherEntry.COLUMN_HUMIDITY;
+        public static final String COLUMN_PRESSURE = WeatherEntry.COLUMN_PRESSURE;
+        public static final String COLUMN_WIND_SPEED = WeatherEntry.COLUMN_WIND_SPEED;
+        public static final String COLUMN_DEGREES = WeatherEntry.COLUMN_DEGREES;
+
+        /**
+         * Builds a URI for every forecast we were given for the days from startDate to endDate,
+         * both included. Rows are sorted by date and then by fetch time unless a sort order is
+         * given.
+         *
+         * @param startDate Normalized date of the first day, in milliseconds
+         * @param endDate   Normalized date of the last day, in milliseconds
+         * @return Uri to query the history of a range of days
+         */
+        public static Uri buildHistoryUriWithDateRange(long startDate, long endDate) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(PATH_RANGE)
+                    .appendPath(Long.toString(startDate))
+                    .appendPath(Long.toString(endDate))
+                    .build();
+        }
+
+        /**
+         * Builds a URI for the forecast as it stood at the given time, that is the last forecast
+         * fetched at or before it. A selection can narrow it down further, to a range of dates
+         * for instance.
+         *
+         * @param fetchTime Time in milliseconds since the epoch
+         * @return Uri to query the forecast as of that time
+         */
+        public static Uri buildHistoryUriAsOf(long fetchTime) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(PATH_AS_OF)
+                    .appendPath(Long.toString(fetchTime))
+                    .build();
         }
     }
-}
\ No newline at end of file
+}
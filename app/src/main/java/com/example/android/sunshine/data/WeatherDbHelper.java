@@ -19,6 +19,8 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.android.sunshine.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
 
 /**
@@ -43,10 +45,18 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
      * use-case, we wanted to watch out for it and warn you what could happen if you mistakenly
      * version your databases.
      */
-    private static final int DATABASE_VERSION = 3;
+    private static final int DATABASE_VERSION = 5;
 
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+
+        /*
+         * With write-ahead logging, the forecast list, the detail screen and notifications can
+         * keep reading the last committed forecast while a sync is writing a new one, instead of
+         * waiting for the sync's transaction to finish. Enabling it also lets SQLiteDatabase
+         * keep a pool of connections so those reads can run concurrently with each other.
+         */
+        setWriteAheadLoggingEnabled(true);
     }
 
     /**
@@ -87,18 +97,96 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 WeatherEntry.COLUMN_DEGREES    + " REAL NOT NULL, "                    +
 
                 /*
-                 * To ensure this table can only contain one weather entry per date, we declare
-                 * the date column to be unique. We also specify "ON CONFLICT REPLACE". This tells
-                 * SQLite that if we have a weather entry for a certain date and we attempt to
-                 * insert another weather entry with that date, we replace the old weather entry.
+                 * Rows that don't say which location they are for belong to the location picked
+                 * in the settings.
+                 */
+                WeatherEntry.COLUMN_LOCATION_ID + " INTEGER NOT NULL DEFAULT "
+                        + LocationEntry.PREFERRED_LOCATION_ID + ", " +
+
+                /*
+                 * To ensure this table can only contain one weather entry per date for each
+                 * location, we declare the location and date to be unique together. We also
+                 * specify "ON CONFLICT REPLACE". This tells SQLite that if we have a weather entry
+                 * for a certain date and location and we attempt to insert another weather entry
+                 * with that date and location, we replace the old weather entry. The index that
+                 * backs this constraint also serves every query, as they all filter on location.
                  */
-                " UNIQUE (" + WeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+                " UNIQUE (" + WeatherEntry.COLUMN_LOCATION_ID + ", " + WeatherEntry.COLUMN_DATE
+                        + ") ON CONFLICT REPLACE);";
+
+        /*
+         * The saved locations. Saving a location twice keeps the first row, so the forecast that
+         * is stored under its _ID stays attached to it.
+         */
+        final String SQL_CREATE_LOCATION_TABLE =
+
+                "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
+
+                LocationEntry._ID                     + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+
+                LocationEntry.COLUMN_LOCATION_SETTING + " TEXT NOT NULL, "                     +
+
+                " UNIQUE (" + LocationEntry.COLUMN_LOCATION_SETTING + ") ON CONFLICT IGNORE);";
+
+        /*
+         * The forecast history only ever grows at its end, by a whole forecast at a time, and is
+         * trimmed by the retention policy. We don't use AUTOINCREMENT here: row IDs are never
+         * handed out, so there is no need to pay for the sqlite_sequence update on every insert.
+         */
+        final String SQL_CREATE_HISTORY_TABLE =
+
+                "CREATE TABLE " + HistoryEntry.TABLE_NAME + " (" +
+
+                HistoryEntry._ID               + " INTEGER PRIMARY KEY, " +
+
+                HistoryEntry.COLUMN_LOCATION_ID + " INTEGER NOT NULL, "   +
+                HistoryEntry.COLUMN_FETCH_TIME + " INTEGER NOT NULL, "    +
+
+                HistoryEntry.COLUMN_DATE       + " INTEGER NOT NULL, "    +
+
+                HistoryEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL,"     +
+
+                HistoryEntry.COLUMN_MIN_TEMP   + " REAL NOT NULL, "       +
+                HistoryEntry.COLUMN_MAX_TEMP   + " REAL NOT NULL, "       +
+
+                HistoryEntry.COLUMN_HUMIDITY   + " REAL NOT NULL, "       +
+                HistoryEntry.COLUMN_PRESSURE   + " REAL NOT NULL, "       +
+
+                HistoryEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, "       +
+                HistoryEntry.COLUMN_DEGREES    + " REAL NOT NULL);";
+
+        /*
+         * Date range queries look up a location and a range of dates, and want each day's
+         * forecasts in the order they were fetched. With a year of hourly syncs the table holds
+         * well over a hundred thousand rows per location, so this index is what keeps those
+         * queries to the rows in the range.
+         */
+        final String SQL_CREATE_HISTORY_DATE_INDEX =
+                "CREATE INDEX " + HistoryEntry.TABLE_NAME + "_date_index ON "
+                        + HistoryEntry.TABLE_NAME + " ("
+                        + HistoryEntry.COLUMN_LOCATION_ID + ", "
+                        + HistoryEntry.COLUMN_DATE + ", "
+                        + HistoryEntry.COLUMN_FETCH_TIME + ");";
+
+        /*
+         * "As of" queries look for the last fetch before a given time, and the retention policy
+         * looks for the last fetch of each day. Both are a seek into this index.
+         */
+        final String SQL_CREATE_HISTORY_FETCH_TIME_INDEX =
+                "CREATE INDEX " + HistoryEntry.TABLE_NAME + "_fetch_time_index ON "
+                        + HistoryEntry.TABLE_NAME + " ("
+                        + HistoryEntry.COLUMN_LOCATION_ID + ", "
+                        + HistoryEntry.COLUMN_FETCH_TIME + ");";
 
         /*
          * After we've spelled out our SQLite table creation statement above, we actually execute
          * that SQL with the execSQL method of our SQLite database object.
          */
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_HISTORY_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_HISTORY_DATE_INDEX);
+        sqLiteDatabase.execSQL(SQL_CREATE_HISTORY_FETCH_TIME_INDEX);
     }
 
     /**
@@ -116,6 +204,8 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + HistoryEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
 }
\ No newline at end of file
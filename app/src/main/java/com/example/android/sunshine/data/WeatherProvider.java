@@ -20,12 +20,23 @@ import android.content.ContentProvider;
 import android.content.ContentValues;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
 import android.support.annotation.NonNull;
+import android.text.TextUtils;
+import android.util.Log;
 
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 /**
  * This class serves as the ContentProvider for all of Sunshine's data. This class allows us to
  * bulkInsert data, query data, and delete data.
@@ -38,6 +49,8 @@ import com.example.android.sunshine.utilities.SunshineDateUtils;
  */
 public class WeatherProvider extends ContentProvider {
 
+    private static final String TAG = WeatherProvider.class.getSimpleName();
+
     /*
      * These constant will be used to match URIs with the data they are looking for. We will take
      * advantage of the UriMatcher class to make that matching MUCH easier than doing something
@@ -45,6 +58,16 @@ public class WeatherProvider extends ContentProvider {
      */
     public static final int CODE_WEATHER = 100;
     public static final int CODE_WEATHER_WITH_DATE = 101;
+    public static final int CODE_WEATHER_RECONCILE = 102;
+
+    public static final int CODE_LOCATION = 200;
+    public static final int CODE_LOCATION_WITH_ID = 201;
+    public static final int CODE_LOCATION_WEATHER = 202;
+
+    public static final int CODE_HISTORY = 300;
+    public static final int CODE_HISTORY_RANGE = 301;
+    public static final int CODE_HISTORY_AS_OF = 302;
+    public static final int CODE_HISTORY_COMPACT = 303;
 
     /*
      * The URI Matcher used by this content provider. The leading "s" in this variable name
@@ -52,6 +75,90 @@ public class WeatherProvider extends ContentProvider {
      * common convention in Android programming.
      */
     private static final UriMatcher sUriMatcher = buildUriMatcher();
+
+    /*
+     * The columns bound by the compiled INSERT statement used by bulkInsert, in the order of its
+     * "?" placeholders. The first two are integers, the rest are stored as REAL. The location ID
+     * follows as the last placeholder; it comes from the URI rather than from the values.
+     */
+    private static final String[] INSERT_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+    private static final int INSERT_INTEGER_COLUMN_COUNT = 2;
+
+    /* The columns of INSERT_COLUMNS after the date, which are compared when reconciling a batch */
+    private static final int STORED_COLUMN_COUNT = INSERT_COLUMNS.length - 1;
+
+    private static final String SQL_INSERT_WEATHER = buildInsertSql(
+            WeatherContract.WeatherEntry.TABLE_NAME,
+            WeatherContract.WeatherEntry.COLUMN_LOCATION_ID);
+
+    /* The history takes the same columns, followed by the location and the fetch time */
+    private static final String SQL_INSERT_HISTORY = buildInsertSql(
+            WeatherContract.HistoryEntry.TABLE_NAME,
+            WeatherContract.HistoryEntry.COLUMN_LOCATION_ID,
+            WeatherContract.HistoryEntry.COLUMN_FETCH_TIME);
+
+    /*
+     * The retention policy of the history: every forecast of the last week is kept, forecasts
+     * from before that are thinned out to the last one fetched each day, and forecasts older
+     * than a year are deleted.
+     */
+    private static final long HISTORY_FULL_RESOLUTION_MILLIS = TimeUnit.DAYS.toMillis(7);
+    private static final long HISTORY_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(365);
+
+    /*
+     * Deletes a forecast from before the cutoff if the same location has a later forecast from
+     * the same UTC day. The lookup of the later forecast is a seek into the fetch time index.
+     */
+    private static final String SQL_THIN_HISTORY = "DELETE FROM "
+            + WeatherContract.HistoryEntry.TABLE_NAME
+            + " WHERE " + WeatherContract.HistoryEntry.COLUMN_FETCH_TIME + " < ?"
+            + " AND EXISTS (SELECT 1 FROM " + WeatherContract.HistoryEntry.TABLE_NAME + " later"
+            + " WHERE later." + WeatherContract.HistoryEntry.COLUMN_LOCATION_ID + " = "
+            + WeatherContract.HistoryEntry.TABLE_NAME + "."
+            + WeatherContract.HistoryEntry.COLUMN_LOCATION_ID
+            + " AND later." + WeatherContract.HistoryEntry.COLUMN_FETCH_TIME + " > "
+            + WeatherContract.HistoryEntry.TABLE_NAME + "."
+            + WeatherContract.HistoryEntry.COLUMN_FETCH_TIME
+            + " AND later." + WeatherContract.HistoryEntry.COLUMN_FETCH_TIME + " < ("
+            + WeatherContract.HistoryEntry.TABLE_NAME + "."
+            + WeatherContract.HistoryEntry.COLUMN_FETCH_TIME + " / "
+            + SunshineDateUtils.DAY_IN_MILLIS + " + 1) * " + SunshineDateUtils.DAY_IN_MILLIS
+            + ")";
+
+    /* Every query, insert and delete of weather is restricted to a single location */
+    private static final String SELECT_LOCATION =
+            WeatherContract.WeatherEntry.COLUMN_LOCATION_ID + " = ?";
+
+    private static final String SELECT_LOCATION_AND_DATE = SELECT_LOCATION + " AND "
+            + WeatherContract.WeatherEntry.COLUMN_DATE + " = ?";
+
+    /* Served by the history's date index */
+    private static final String SELECT_HISTORY_DATE_RANGE = SELECT_LOCATION + " AND "
+            + WeatherContract.HistoryEntry.COLUMN_DATE + " BETWEEN ? AND ?";
+
+    private static final String SORT_HISTORY_BY_DATE =
+            WeatherContract.HistoryEntry.COLUMN_DATE + " ASC, "
+                    + WeatherContract.HistoryEntry.COLUMN_FETCH_TIME + " ASC";
+
+    /*
+     * Picks the forecast that was current at a given time: the one with the latest fetch time
+     * that isn't after it. Both lookups are served by the history's fetch time index.
+     */
+    private static final String SELECT_HISTORY_AS_OF = SELECT_LOCATION + " AND "
+            + WeatherContract.HistoryEntry.COLUMN_FETCH_TIME + " = (SELECT MAX("
+            + WeatherContract.HistoryEntry.COLUMN_FETCH_TIME + ") FROM "
+            + WeatherContract.HistoryEntry.TABLE_NAME + " WHERE " + SELECT_LOCATION + " AND "
+            + WeatherContract.HistoryEntry.COLUMN_FETCH_TIME + " <= ?)";
+
     private WeatherDbHelper mOpenHelper;
 
     /**
@@ -96,6 +203,40 @@ public class WeatherProvider extends ContentProvider {
          */
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/#", CODE_WEATHER_WITH_DATE);
 
+        /* This URI is content://com.example.android.sunshine/weather/reconcile */
+        matcher.addURI(authority,
+                WeatherContract.PATH_WEATHER + "/" + WeatherContract.PATH_RECONCILE,
+                CODE_WEATHER_RECONCILE);
+
+        /* This URI is content://com.example.android.sunshine/location/ */
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION, CODE_LOCATION);
+
+        /* This URI would look something like content://com.example.android.sunshine/location/3 */
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/#", CODE_LOCATION_WITH_ID);
+
+        /* This URI would look something like content://com.example.android.sunshine/location/3/weather */
+        matcher.addURI(authority,
+                WeatherContract.PATH_LOCATION + "/#/" + WeatherContract.PATH_WEATHER,
+                CODE_LOCATION_WEATHER);
+
+        /* This URI is content://com.example.android.sunshine/history/ */
+        matcher.addURI(authority, WeatherContract.PATH_HISTORY, CODE_HISTORY);
+
+        /* This URI would look something like content://com.example.android.sunshine/history/range/1472169600000/1472774400000 */
+        matcher.addURI(authority,
+                WeatherContract.PATH_HISTORY + "/" + WeatherContract.PATH_RANGE + "/#/#",
+                CODE_HISTORY_RANGE);
+
+        /* This URI would look something like content://com.example.android.sunshine/history/asof/1472214172000 */
+        matcher.addURI(authority,
+                WeatherContract.PATH_HISTORY + "/" + WeatherContract.PATH_AS_OF + "/#",
+                CODE_HISTORY_AS_OF);
+
+        /* This URI is content://com.example.android.sunshine/history/compact */
+        matcher.addURI(authority,
+                WeatherContract.PATH_HISTORY + "/" + WeatherContract.PATH_COMPACT,
+                CODE_HISTORY_COMPACT);
+
         return matcher;
     }
 
@@ -145,23 +286,28 @@ public class WeatherProvider extends ContentProvider {
         switch (sUriMatcher.match(uri)) {
 
             case CODE_WEATHER:
-                db.beginTransaction();
+                /*
+                 * The database uses write-ahead logging, so an IMMEDIATE transaction is enough to
+                 * keep other writers out while readers carry on with the last committed data.
+                 */
+                db.beginTransactionNonExclusive();
                 int rowsInserted = 0;
+                /*
+                 * The INSERT is compiled once for the whole batch rather than being rebuilt
+                 * from the ContentValues of every row.
+                 */
+                SQLiteStatement insertStatement = db.compileStatement(SQL_INSERT_WEATHER);
                 try {
                     for (ContentValues value : values) {
-                        long weatherDate =
-                                value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
-                        if (!SunshineDateUtils.isDateNormalized(weatherDate)) {
-                            throw new IllegalArgumentException("Date must be normalized to insert");
-                        }
-
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                        long _id = insertWeather(db, insertStatement,
+                                WeatherContract.LocationEntry.PREFERRED_LOCATION_ID, value);
                         if (_id != -1) {
                             rowsInserted++;
                         }
                     }
                     db.setTransactionSuccessful();
                 } finally {
+                    insertStatement.close();
                     db.endTransaction();
                 }
 
@@ -171,11 +317,475 @@ public class WeatherProvider extends ContentProvider {
 
                 return rowsInserted;
 
+            case CODE_WEATHER_RECONCILE:
+                return reconcileWeather(db, WeatherContract.LocationEntry.PREFERRED_LOCATION_ID,
+                        values, WeatherContract.WeatherEntry.CONTENT_URI);
+
+            /* A saved location's forecast is always replaced as a whole */
+            case CODE_LOCATION_WEATHER:
+                return reconcileWeather(db, getLocationId(uri), values, uri);
+
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Handles {@link WeatherContract#METHOD_RECONCILE_FORECAST}, which reconciles a stored
+     * forecast with a {@link ForecastBatch}. Within the app's process the Bundle is handed over
+     * as it is, so the batch reaches the database without its values ever being boxed.
+     *
+     * @param method {@link WeatherContract#METHOD_RECONCILE_FORECAST}
+     * @param arg    The reconcile URI of the location, as a String
+     * @param extras The batch, from {@link ForecastBatch#toBundle()}
+     * @return The number of days written, under {@link WeatherContract#EXTRA_ROWS_WRITTEN}
+     */
+    @Override
+    public Bundle call(@NonNull String method, String arg, Bundle extras) {
+        if (!WeatherContract.METHOD_RECONCILE_FORECAST.equals(method)) {
+            return super.call(method, arg, extras);
+        }
+
+        Uri uri = Uri.parse(arg);
+        ForecastBatch batch = ForecastBatch.fromBundle(extras);
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int rowsWritten;
+
+        switch (sUriMatcher.match(uri)) {
+
+            case CODE_WEATHER_RECONCILE:
+                rowsWritten = reconcileWeather(db,
+                        WeatherContract.LocationEntry.PREFERRED_LOCATION_ID, batch,
+                        WeatherContract.WeatherEntry.CONTENT_URI);
+                break;
+
+            case CODE_LOCATION_WEATHER:
+                rowsWritten = reconcileWeather(db, getLocationId(uri), batch, uri);
+                break;
+
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(WeatherContract.EXTRA_ROWS_WRITTEN, rowsWritten);
+        return result;
+    }
+
+    /**
+     * Builds the INSERT statement for all of the columns in {@link #INSERT_COLUMNS}, followed by
+     * the given columns whose values don't come from the ContentValues.
+     */
+    private static String buildInsertSql(String table, String... trailingColumns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ")
+                .append(table)
+                .append(" (");
+        for (int i = 0; i < INSERT_COLUMNS.length; i++) {
+            if (i > 0) sql.append(", ");
+            sql.append(INSERT_COLUMNS[i]);
+        }
+        for (String column : trailingColumns) {
+            sql.append(", ").append(column);
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < INSERT_COLUMNS.length + trailingColumns.length; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(')').toString();
+    }
+
+    /**
+     * Binds the columns of {@link #INSERT_COLUMNS} to the first placeholders of a statement
+     * built by {@link #buildInsertSql}.
+     *
+     * @return false if the values don't hold exactly those columns as numbers, in which case
+     * they must be inserted some other way
+     */
+    private static boolean bindWeatherColumns(SQLiteStatement statement, ContentValues value) {
+        if (value.size() != INSERT_COLUMNS.length) {
+            return false;
+        }
+
+        statement.clearBindings();
+        for (int i = 0; i < INSERT_COLUMNS.length; i++) {
+            Object column = value.get(INSERT_COLUMNS[i]);
+            if (!(column instanceof Number)) {
+                return false;
+            }
+
+            /* SQLiteStatement's bind indices start at 1 */
+            if (i < INSERT_INTEGER_COLUMN_COUNT) {
+                statement.bindLong(i + 1, ((Number) column).longValue());
+            } else {
+                statement.bindDouble(i + 1, ((Number) column).doubleValue());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Binds a day of a batch to the first placeholders of a statement built by
+     * {@link #buildInsertSql}, in the order of {@link #INSERT_COLUMNS}.
+     */
+    private static void bindWeatherColumns(SQLiteStatement statement, ForecastBatch batch,
+            int day) {
+        statement.bindLong(1, batch.getDate(day));
+        statement.bindLong(2, batch.getWeatherId(day));
+        statement.bindDouble(3, batch.getMinTemp(day));
+        statement.bindDouble(4, batch.getMaxTemp(day));
+        statement.bindDouble(5, batch.getHumidity(day));
+        statement.bindDouble(6, batch.getPressure(day));
+        statement.bindDouble(7, batch.getWindSpeed(day));
+        statement.bindDouble(8, batch.getDegrees(day));
+    }
+
+    /**
+     * Inserts a single day of weather. Rows that hold exactly the columns of
+     * {@link #INSERT_COLUMNS} are bound as primitives to the compiled insertStatement, which is
+     * reused for every row. Anything else goes through {@link SQLiteDatabase#insert} so that
+     * partial or unexpected rows behave exactly as they always have.
+     *
+     * @param db              The database to insert into
+     * @param insertStatement The statement compiled from {@link #SQL_INSERT_WEATHER}
+     * @param locationId      The location the day belongs to
+     * @param value           The day to insert
+     * @return The row ID of the inserted day, or -1 if it couldn't be inserted
+     */
+    private static long insertWeather(SQLiteDatabase db, SQLiteStatement insertStatement,
+            long locationId, ContentValues value) {
+        Object weatherDate = value.get(WeatherContract.WeatherEntry.COLUMN_DATE);
+        if (!(weatherDate instanceof Number)
+                || !SunshineDateUtils.isDateNormalized(((Number) weatherDate).longValue())) {
+            throw new IllegalArgumentException("Date must be normalized to insert");
+        }
+
+        if (!bindWeatherColumns(insertStatement, value)) {
+            return insertWeatherValues(db, locationId, value);
+        }
+        insertStatement.bindLong(INSERT_COLUMNS.length + 1, locationId);
+        return insertStatement.executeInsert();
+    }
+
+    /**
+     * Appends a day of a freshly fetched forecast to the history.
+     *
+     * @param db               The database to insert into
+     * @param historyStatement The statement compiled from {@link #SQL_INSERT_HISTORY}
+     * @param locationId       The location the forecast is for
+     * @param fetchTime        When the forecast was fetched
+     * @param value            The day to append
+     */
+    private static void appendHistory(SQLiteDatabase db, SQLiteStatement historyStatement,
+            long locationId, long fetchTime, ContentValues value) {
+        if (bindWeatherColumns(historyStatement, value)) {
+            historyStatement.bindLong(INSERT_COLUMNS.length + 1, locationId);
+            historyStatement.bindLong(INSERT_COLUMNS.length + 2, fetchTime);
+            historyStatement.executeInsert();
+            return;
+        }
+
+        ContentValues historyValue = new ContentValues(value);
+        historyValue.put(WeatherContract.HistoryEntry.COLUMN_LOCATION_ID, locationId);
+        historyValue.put(WeatherContract.HistoryEntry.COLUMN_FETCH_TIME, fetchTime);
+        db.insert(WeatherContract.HistoryEntry.TABLE_NAME, null, historyValue);
+    }
+
+    /**
+     * Applies the retention policy of the history, see {@link #HISTORY_FULL_RESOLUTION_MILLIS}
+     * and {@link #HISTORY_MAX_AGE_MILLIS}.
+     *
+     * @return The number of forecast days that were deleted
+     */
+    private static int compactHistory(SQLiteDatabase db) {
+        long now = System.currentTimeMillis();
+        int rowsDeleted;
+
+        db.beginTransactionNonExclusive();
+        SQLiteStatement thinStatement = db.compileStatement(SQL_THIN_HISTORY);
+        try {
+            rowsDeleted = db.delete(WeatherContract.HistoryEntry.TABLE_NAME,
+                    WeatherContract.HistoryEntry.COLUMN_FETCH_TIME + " < ?",
+                    new String[]{Long.toString(now - HISTORY_MAX_AGE_MILLIS)});
+
+            thinStatement.bindLong(1, now - HISTORY_FULL_RESOLUTION_MILLIS);
+            rowsDeleted += thinStatement.executeUpdateDelete();
+
+            db.setTransactionSuccessful();
+        } finally {
+            thinStatement.close();
+            db.endTransaction();
+        }
+
+        Log.d(TAG, "Compacted forecast history: " + rowsDeleted + " deleted");
+        return rowsDeleted;
+    }
+
+    /**
+     * Inserts a day of weather through {@link SQLiteDatabase#insert}, adding the location unless
+     * the values already name one.
+     */
+    private static long insertWeatherValues(SQLiteDatabase db, long locationId,
+            ContentValues value) {
+        if (!value.containsKey(WeatherContract.WeatherEntry.COLUMN_LOCATION_ID)) {
+            value = new ContentValues(value);
+            value.put(WeatherContract.WeatherEntry.COLUMN_LOCATION_ID, locationId);
+        }
+        return db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+    }
+
+    /**
+     * Replaces the stored forecast of a location with the given one, touching as few rows as
+     * possible. Rows are matched on their date: a day whose values haven't changed is skipped, a
+     * new or changed day is written and a stored day that isn't part of the new forecast has
+     * expired and is deleted. The whole new forecast is also appended to the history, stamped
+     * with the current time. Everything happens in one transaction and observers of notifyUri
+     * are notified once, and only if something changed.
+     *
+     * @param db         The database to write to
+     * @param locationId The location whose forecast is replaced
+     * @param values     The complete new forecast
+     * @param notifyUri  The URI to notify of the change
+     * @return The number of days that were written
+     */
+    private int reconcileWeather(SQLiteDatabase db, long locationId, ContentValues[] values,
+            Uri notifyUri) {
+        String location = Long.toString(locationId);
+        long fetchTime = System.currentTimeMillis();
+        int rowsWritten = 0;
+        int rowsDeleted;
+
+        db.beginTransactionNonExclusive();
+        SQLiteStatement insertStatement = db.compileStatement(SQL_INSERT_WEATHER);
+        SQLiteStatement historyStatement = db.compileStatement(SQL_INSERT_HISTORY);
+        try {
+            /* Read what we have stored so far, keyed on the date of each day */
+            Map<Long, ContentValues> storedDays = new HashMap<>();
+            Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                    null, SELECT_LOCATION, new String[]{location}, null, null, null);
+            try {
+                int dateIndex = cursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
+                while (cursor.moveToNext()) {
+                    storedDays.put(cursor.getLong(dateIndex), readStoredDay(cursor));
+                }
+            } finally {
+                cursor.close();
+            }
+
+            for (ContentValues value : values) {
+                long weatherDate = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+
+                /* The history keeps every forecast, changed or not */
+                appendHistory(db, historyStatement, locationId, fetchTime, value);
+
+                ContentValues storedDay = storedDays.remove(weatherDate);
+                if (storedDay != null && isSameDay(storedDay, value)) {
+                    continue;
+                }
+
+                /* The date is UNIQUE ON CONFLICT REPLACE, so this also overwrites a changed day */
+                long _id = insertWeather(db, insertStatement, locationId, value);
+                if (_id != -1) {
+                    rowsWritten++;
+                }
+            }
+
+            /* Whatever is left wasn't in the new forecast, so those days have expired */
+            rowsDeleted = 0;
+            for (Long expiredDate : storedDays.keySet()) {
+                rowsDeleted += db.delete(WeatherContract.WeatherEntry.TABLE_NAME,
+                        SELECT_LOCATION_AND_DATE,
+                        new String[]{location, Long.toString(expiredDate)});
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            insertStatement.close();
+            historyStatement.close();
+            db.endTransaction();
+        }
+
+        Log.d(TAG, "Reconciled forecast for location " + location + ": " + rowsWritten
+                + " written, " + (values.length - rowsWritten) + " skipped, " + rowsDeleted
+                + " deleted");
+
+        if (rowsWritten > 0 || rowsDeleted > 0) {
+            getContext().getContentResolver().notifyChange(notifyUri, null);
+        }
+        getContext().getContentResolver()
+                .notifyChange(WeatherContract.HistoryEntry.CONTENT_URI, null);
+
+        return rowsWritten;
+    }
+
+    /**
+     * Does what {@link #reconcileWeather(SQLiteDatabase, long, ContentValues[], Uri)} does for a
+     * forecast held in a {@link ForecastBatch}. The stored days are read into arrays ordered by
+     * date and looked up with a binary search, so comparing and writing the days doesn't box a
+     * single value.
+     *
+     * @param db         The database to write to
+     * @param locationId The location whose forecast is replaced
+     * @param batch      The complete new forecast
+     * @param notifyUri  The URI to notify of the change
+     * @return The number of days that were written
+     */
+    private int reconcileWeather(SQLiteDatabase db, long locationId, ForecastBatch batch,
+            Uri notifyUri) {
+        String location = Long.toString(locationId);
+        long fetchTime = System.currentTimeMillis();
+        int rowsWritten = 0;
+        int rowsDeleted = 0;
+
+        db.beginTransactionNonExclusive();
+        SQLiteStatement insertStatement = db.compileStatement(SQL_INSERT_WEATHER);
+        SQLiteStatement historyStatement = db.compileStatement(SQL_INSERT_HISTORY);
+        try {
+            /*
+             * Read what we have stored so far. Every column but the date is kept as a double,
+             * one row of STORED_COLUMN_COUNT values per day, since that is how they compare.
+             */
+            Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME, INSERT_COLUMNS,
+                    SELECT_LOCATION, new String[]{location}, null, null,
+                    WeatherContract.WeatherEntry.COLUMN_DATE);
+            long[] storedDates;
+            double[] storedColumns;
+            try {
+                storedDates = new long[cursor.getCount()];
+                storedColumns = new double[cursor.getCount() * STORED_COLUMN_COUNT];
+                for (int row = 0; cursor.moveToNext(); row++) {
+                    storedDates[row] = cursor.getLong(0);
+                    for (int column = 0; column < STORED_COLUMN_COUNT; column++) {
+                        storedColumns[row * STORED_COLUMN_COUNT + column] =
+                                cursor.getDouble(column + 1);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+            boolean[] stillForecast = new boolean[storedDates.length];
+
+            for (int day = 0; day < batch.size(); day++) {
+                long weatherDate = batch.getDate(day);
+                if (!SunshineDateUtils.isDateNormalized(weatherDate)) {
+                    throw new IllegalArgumentException("Date must be normalized to insert");
+                }
+
+                /* The history keeps every forecast, changed or not */
+                bindWeatherColumns(historyStatement, batch, day);
+                historyStatement.bindLong(INSERT_COLUMNS.length + 1, locationId);
+                historyStatement.bindLong(INSERT_COLUMNS.length + 2, fetchTime);
+                historyStatement.executeInsert();
+
+                int storedDay = Arrays.binarySearch(storedDates, weatherDate);
+                if (storedDay >= 0) {
+                    stillForecast[storedDay] = true;
+                    if (isSameDay(storedColumns, storedDay, batch, day)) {
+                        continue;
+                    }
+                }
+
+                /* The date is UNIQUE ON CONFLICT REPLACE, so this also overwrites a changed day */
+                bindWeatherColumns(insertStatement, batch, day);
+                insertStatement.bindLong(INSERT_COLUMNS.length + 1, locationId);
+                if (insertStatement.executeInsert() != -1) {
+                    rowsWritten++;
+                }
+            }
+
+            /* The stored days that weren't in the new forecast have expired */
+            for (int storedDay = 0; storedDay < storedDates.length; storedDay++) {
+                if (!stillForecast[storedDay]) {
+                    rowsDeleted += db.delete(WeatherContract.WeatherEntry.TABLE_NAME,
+                            SELECT_LOCATION_AND_DATE,
+                            new String[]{location, Long.toString(storedDates[storedDay])});
+                }
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            insertStatement.close();
+            historyStatement.close();
+            db.endTransaction();
+        }
+
+        Log.d(TAG, "Reconciled forecast batch for location " + location + ": " + rowsWritten
+                + " written, " + (batch.size() - rowsWritten) + " skipped, " + rowsDeleted
+                + " deleted");
+
+        if (rowsWritten > 0 || rowsDeleted > 0) {
+            getContext().getContentResolver().notifyChange(notifyUri, null);
+        }
+        getContext().getContentResolver()
+                .notifyChange(WeatherContract.HistoryEntry.CONTENT_URI, null);
+
+        return rowsWritten;
+    }
+
+    /**
+     * Compares a stored day, as read by the batch version of reconcileWeather, with a day of a
+     * new forecast.
+     */
+    private static boolean isSameDay(double[] storedColumns, int storedDay, ForecastBatch batch,
+            int day) {
+        int offset = storedDay * STORED_COLUMN_COUNT;
+        return storedColumns[offset] == batch.getWeatherId(day)
+                && storedColumns[offset + 1] == batch.getMinTemp(day)
+                && storedColumns[offset + 2] == batch.getMaxTemp(day)
+                && storedColumns[offset + 3] == batch.getHumidity(day)
+                && storedColumns[offset + 4] == batch.getPressure(day)
+                && storedColumns[offset + 5] == batch.getWindSpeed(day)
+                && storedColumns[offset + 6] == batch.getDegrees(day);
+    }
+
+    /**
+     * Copies the current row of the cursor into ContentValues, keeping numbers as numbers so
+     * they can be compared with freshly parsed values.
+     */
+    private static ContentValues readStoredDay(Cursor cursor) {
+        ContentValues storedDay = new ContentValues();
+        for (int i = 0; i < cursor.getColumnCount(); i++) {
+            String column = cursor.getColumnName(i);
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    storedDay.putNull(column);
+                    break;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    storedDay.put(column, cursor.getLong(i));
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    storedDay.put(column, cursor.getDouble(i));
+                    break;
+                default:
+                    storedDay.put(column, cursor.getString(i));
+                    break;
+            }
+        }
+        return storedDay;
+    }
+
+    /**
+     * Compares a stored day with a day from a new forecast. Only the columns present in the new
+     * values are compared, and numbers are compared by value since the database may hand them
+     * back with a different type than the parser used.
+     */
+    private static boolean isSameDay(ContentValues storedDay, ContentValues newDay) {
+        for (Map.Entry<String, Object> column : newDay.valueSet()) {
+            Object newValue = column.getValue();
+            Object storedValue = storedDay.get(column.getKey());
+
+            if (newValue == null || storedValue == null) {
+                if (newValue != storedValue) return false;
+            } else if (newValue instanceof Number && storedValue instanceof Number) {
+                if (((Number) newValue).doubleValue() != ((Number) storedValue).doubleValue()) {
+                    return false;
+                }
+            } else if (!newValue.toString().equals(storedValue.toString())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Handles query requests from clients. We will use this method in Sunshine to query for all
      * of our weather data as well as to query for the weather on a particular day.
@@ -231,7 +841,9 @@ public class WeatherProvider extends ContentProvider {
                  * one "?", we have to create a string array that only contains one element
                  * because this method signature accepts a string array.
                  */
-                String[] selectionArguments = new String[]{normalizedUtcDateString};
+                String[] selectionArguments = new String[]{
+                        Long.toString(WeatherContract.LocationEntry.PREFERRED_LOCATION_ID),
+                        normalizedUtcDateString};
 
                 cursor = mOpenHelper.getReadableDatabase().query(
                         /* Table we are going to query */
@@ -252,7 +864,7 @@ public class WeatherProvider extends ContentProvider {
                          * within the selectionArguments array will be inserted into the
                          * selection statement by SQLite under the hood.
                          */
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ",
+                        SELECT_LOCATION_AND_DATE,
                         selectionArguments,
                         null,
                         null,
@@ -273,8 +885,58 @@ public class WeatherProvider extends ContentProvider {
              * in our weather table.
              */
             case CODE_WEATHER: {
+                cursor = queryWeather(uri, WeatherContract.LocationEntry.PREFERRED_LOCATION_ID,
+                        projection, selection, selectionArgs, sortOrder);
+
+                break;
+            }
+
+            case CODE_LOCATION_WEATHER: {
+                cursor = queryWeather(uri, getLocationId(uri),
+                        projection, selection, selectionArgs, sortOrder);
+
+                break;
+            }
+
+            case CODE_HISTORY: {
+                cursor = queryHistory(SELECT_LOCATION, new String[0],
+                        projection, selection, selectionArgs, sortOrder);
+
+                break;
+            }
+
+            /*
+             * content://com.example.android.sunshine/history/range/1472169600000/1472774400000
+             * returns every forecast we were given for the days in the range.
+             */
+            case CODE_HISTORY_RANGE: {
+                List<String> segments = uri.getPathSegments();
+                cursor = queryHistory(SELECT_HISTORY_DATE_RANGE,
+                        new String[]{segments.get(2), segments.get(3)},
+                        projection, selection, selectionArgs,
+                        sortOrder != null ? sortOrder : SORT_HISTORY_BY_DATE);
+
+                break;
+            }
+
+            /*
+             * content://com.example.android.sunshine/history/asof/1472214172000 returns the
+             * forecast as it stood at that time.
+             */
+            case CODE_HISTORY_AS_OF: {
+                String preferredLocation =
+                        Long.toString(WeatherContract.LocationEntry.PREFERRED_LOCATION_ID);
+                cursor = queryHistory(SELECT_HISTORY_AS_OF,
+                        new String[]{preferredLocation, uri.getLastPathSegment()},
+                        projection, selection, selectionArgs,
+                        sortOrder != null ? sortOrder : WeatherContract.HistoryEntry.COLUMN_DATE);
+
+                break;
+            }
+
+            case CODE_LOCATION: {
                 cursor = mOpenHelper.getReadableDatabase().query(
-                        WeatherContract.WeatherEntry.TABLE_NAME,
+                        WeatherContract.LocationEntry.TABLE_NAME,
                         projection,
                         selection,
                         selectionArgs,
@@ -285,6 +947,19 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
 
+            case CODE_LOCATION_WITH_ID: {
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.LocationEntry.TABLE_NAME,
+                        projection,
+                        WeatherContract.LocationEntry._ID + " = ?",
+                        new String[]{uri.getLastPathSegment()},
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -293,6 +968,60 @@ public class WeatherProvider extends ContentProvider {
         return cursor;
     }
 
+    /**
+     * Queries the forecast of a single location. The location is added to the given selection,
+     * and the number of rows is limited if the URI has a {@link WeatherContract#PARAM_LIMIT}.
+     */
+    private Cursor queryWeather(Uri uri, long locationId, String[] projection, String selection,
+            String[] selectionArgs, String sortOrder) {
+        String limit = uri.getQueryParameter(WeatherContract.PARAM_LIMIT);
+        if (limit != null && (limit.isEmpty() || !TextUtils.isDigitsOnly(limit))) {
+            throw new IllegalArgumentException("Invalid limit: " + uri);
+        }
+
+        return mOpenHelper.getReadableDatabase().query(
+                WeatherContract.WeatherEntry.TABLE_NAME,
+                projection,
+                DatabaseUtils.concatenateWhere(SELECT_LOCATION, selection),
+                DatabaseUtils.appendSelectionArgs(
+                        new String[]{Long.toString(locationId)}, selectionArgs),
+                null,
+                null,
+                sortOrder,
+                limit);
+    }
+
+    /**
+     * Queries the history of the preferred location.
+     *
+     * @param uriSelection     The selection implied by the URI. Its first argument is always the
+     *                         location, which is added here.
+     * @param uriSelectionArgs The rest of the arguments of uriSelection
+     */
+    private Cursor queryHistory(String uriSelection, String[] uriSelectionArgs,
+            String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        String[] locationArgs = DatabaseUtils.appendSelectionArgs(
+                new String[]{Long.toString(WeatherContract.LocationEntry.PREFERRED_LOCATION_ID)},
+                uriSelectionArgs);
+
+        return mOpenHelper.getReadableDatabase().query(
+                WeatherContract.HistoryEntry.TABLE_NAME,
+                projection,
+                DatabaseUtils.concatenateWhere(uriSelection, selection),
+                DatabaseUtils.appendSelectionArgs(locationArgs, selectionArgs),
+                null,
+                null,
+                sortOrder);
+    }
+
+    /**
+     * Returns the location ID of a content://com.example.android.sunshine/location/# URI or of
+     * one of its children.
+     */
+    private static long getLocationId(Uri uri) {
+        return Long.parseLong(uri.getPathSegments().get(1));
+    }
+
     /**
      * Deletes data at a given URI with optional arguments for more fine tuned deletions.
      *
@@ -319,13 +1048,71 @@ public class WeatherProvider extends ContentProvider {
         switch (sUriMatcher.match(uri)) {
 
             case CODE_WEATHER:
-                numRowsDeleted = mOpenHelper.getWritableDatabase().delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME,
+                numRowsDeleted = deleteWeather(mOpenHelper.getWritableDatabase(),
+                        WeatherContract.LocationEntry.PREFERRED_LOCATION_ID,
+                        selection,
+                        selectionArgs);
+
+                break;
+
+            case CODE_LOCATION_WEATHER:
+                numRowsDeleted = deleteWeather(mOpenHelper.getWritableDatabase(),
+                        getLocationId(uri),
                         selection,
                         selectionArgs);
 
                 break;
 
+            case CODE_HISTORY:
+                numRowsDeleted = mOpenHelper.getWritableDatabase().delete(
+                        WeatherContract.HistoryEntry.TABLE_NAME,
+                        DatabaseUtils.concatenateWhere(SELECT_LOCATION, selection),
+                        DatabaseUtils.appendSelectionArgs(new String[]{
+                                Long.toString(WeatherContract.LocationEntry.PREFERRED_LOCATION_ID)
+                        }, selectionArgs));
+
+                break;
+
+            /* The retention policy covers the history of every location */
+            case CODE_HISTORY_COMPACT:
+                numRowsDeleted = compactHistory(mOpenHelper.getWritableDatabase());
+
+                /* Observers of the history ranges and snapshots are below the history URI */
+                if (numRowsDeleted != 0) {
+                    getContext().getContentResolver()
+                            .notifyChange(WeatherContract.HistoryEntry.CONTENT_URI, null);
+                }
+
+                break;
+
+            /* Deleting a saved location also deletes its forecast and its history */
+            case CODE_LOCATION_WITH_ID: {
+                long locationId = getLocationId(uri);
+                SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+
+                db.beginTransactionNonExclusive();
+                try {
+                    deleteWeather(db, locationId, null, null);
+                    db.delete(WeatherContract.HistoryEntry.TABLE_NAME, SELECT_LOCATION,
+                            new String[]{Long.toString(locationId)});
+                    numRowsDeleted = db.delete(WeatherContract.LocationEntry.TABLE_NAME,
+                            DatabaseUtils.concatenateWhere(
+                                    WeatherContract.LocationEntry._ID + " = " + locationId,
+                                    selection),
+                            selectionArgs);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+
+                if (numRowsDeleted != 0) {
+                    getContext().getContentResolver()
+                            .notifyChange(WeatherContract.LocationEntry.CONTENT_URI, null);
+                }
+
+                break;
+            }
+
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -338,6 +1125,18 @@ public class WeatherProvider extends ContentProvider {
         return numRowsDeleted;
     }
 
+    /**
+     * Deletes the rows of a single location's forecast that match the selection.
+     */
+    private static int deleteWeather(SQLiteDatabase db, long locationId, String selection,
+            String[] selectionArgs) {
+        return db.delete(
+                WeatherContract.WeatherEntry.TABLE_NAME,
+                DatabaseUtils.concatenateWhere(SELECT_LOCATION, selection),
+                DatabaseUtils.appendSelectionArgs(
+                        new String[]{Long.toString(locationId)}, selectionArgs));
+    }
+
     /**
      * In Sunshine, we aren't going to do anything with this method. However, we are required to
      * override it as WeatherProvider extends ContentProvider and getType is an abstract method in
@@ -354,20 +1153,40 @@ public class WeatherProvider extends ContentProvider {
     }
 
     /**
-     * In Sunshine, we aren't going to do anything with this method. However, we are required to
-     * override it as WeatherProvider extends ContentProvider and insert is an abstract method in
-     * ContentProvider. Rather than the single insert method, we are only going to implement
-     * {@link WeatherProvider#bulkInsert}.
+     * Saves a location. Weather is only ever inserted a whole forecast at a time, through
+     * {@link WeatherProvider#bulkInsert}, so locations are the only thing that can be inserted
+     * here. Saving a location that is already saved returns the URI of the existing location.
      *
      * @param uri    The URI of the insertion request. This must not be null.
      * @param values A set of column_name/value pairs to add to the database.
      *               This must not be null
-     * @return nothing in Sunshine, but normally the URI for the newly inserted item.
+     * @return The URI of the saved location.
      */
     @Override
     public Uri insert(@NonNull Uri uri, ContentValues values) {
-        throw new RuntimeException(
-                "We are not implementing insert in Sunshine. Use bulkInsert instead");
+        if (sUriMatcher.match(uri) != CODE_LOCATION) {
+            throw new RuntimeException(
+                    "We are not implementing insert in Sunshine. Use bulkInsert instead");
+        }
+
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        long locationId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+
+        if (locationId == -1) {
+            /* The location is saved already; ON CONFLICT IGNORE kept the existing row */
+            String locationSetting =
+                    values.getAsString(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+            locationId = DatabaseUtils.longForQuery(db,
+                    "SELECT " + WeatherContract.LocationEntry._ID
+                            + " FROM " + WeatherContract.LocationEntry.TABLE_NAME
+                            + " WHERE " + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING
+                            + " = ?",
+                    new String[]{locationSetting});
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+
+        return WeatherContract.LocationEntry.buildLocationUri(locationId);
     }
 
     @Override
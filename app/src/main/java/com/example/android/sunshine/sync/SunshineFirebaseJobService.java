@@ -17,16 +17,22 @@ package com.example.android.sunshine.sync;
 
 import android.content.Context;
 import android.os.AsyncTask;
+import android.util.Log;
 
 import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.JobParameters;
 import com.firebase.jobdispatcher.JobService;
 import com.firebase.jobdispatcher.RetryStrategy;
 
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
 
 public class SunshineFirebaseJobService extends JobService {
 
-    private AsyncTask<Void, Void, Void> mFetchWeatherTask;
+    private static final String TAG = SunshineFirebaseJobService.class.getSimpleName();
+
+    private AsyncTask<Void, Void, Boolean> mFetchWeatherTask;
 
     /**
      * The entry point to your Job. Implementations should offload work to another thread of
@@ -41,18 +47,39 @@ public class SunshineFirebaseJobService extends JobService {
     @Override
     public boolean onStartJob(final JobParameters jobParameters) {
 
-        mFetchWeatherTask = new AsyncTask<Void, Void, Void>(){
+        mFetchWeatherTask = new AsyncTask<Void, Void, Boolean>(){
+            /**
+             * @return Whether the job should be retried, using the job's RetryStrategy
+             */
             @Override
-            protected Void doInBackground(Void... voids) {
+            protected Boolean doInBackground(Void... voids) {
                 Context context = getApplicationContext();
-                SunshineSyncTask.syncWeather(context);
-                jobFinished(jobParameters, false);
-                return null;
+
+                /*
+                 * If a sync is already running or queued, the job simply waits for it rather than
+                 * starting one of its own.
+                 */
+                try {
+                    SunshineSyncCoordinator.getInstance(context).requestSync().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "Sync failed", e.getCause());
+
+                    /*
+                     * A server that couldn't be reached is worth trying again soon, unless the
+                     * circuit breaker says it has been failing for a while. In that case the next
+                     * periodic sync will try once the breaker lets it.
+                     */
+                    return e.getCause() instanceof IOException
+                            && !(e.getCause() instanceof SyncCircuitBreaker.OpenException);
+                }
+                return false;
             }
 
             @Override
-            protected void onPostExecute(Void aVoid) {
-                jobFinished(jobParameters, false);
+            protected void onPostExecute(Boolean needsReschedule) {
+                jobFinished(jobParameters, needsReschedule);
             }
         };
 
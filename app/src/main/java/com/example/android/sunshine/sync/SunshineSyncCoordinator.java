@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs weather syncs on behalf of everything that asks for one: the settings screen, the
+ * immediate sync on first launch and the periodic job. Requests that overlap are merged:
+ * <ul>
+ * <li>If no sync is running, a request starts one.</li>
+ * <li>If a sync is running, it may have started before whatever prompted the request (a new
+ * location, for instance), so one more sync is queued to run after it. Every request that comes
+ * in while the sync is running shares that queued sync.</li>
+ * </ul>
+ * So however many requests pile up, at most one sync runs and at most one more waits, and every
+ * caller gets a Future for the sync that will cover its request.
+ */
+public final class SunshineSyncCoordinator {
+
+    private static final String TAG = SunshineSyncCoordinator.class.getSimpleName();
+
+    /* The sync thread is let go when it has been idle for this long */
+    private static final long SYNC_THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    private static SunshineSyncCoordinator sInstance;
+
+    private final Callable<List<String>> mSync;
+    private final Executor mExecutor;
+
+    /* Guarded by this */
+    private SyncRun mRunningSync;
+    private SyncRun mQueuedSync;
+    private long mRequestCount;
+    private long mMergedRequestCount;
+    private long mExecutedSyncCount;
+
+    /**
+     * Returns the coordinator that runs Sunshine's syncs.
+     *
+     * @param context Used to access the ContentResolver and to start services
+     * @return The coordinator shared by the whole app
+     */
+    public static synchronized SunshineSyncCoordinator getInstance(Context context) {
+        if (sInstance == null) {
+            final Context appContext = context.getApplicationContext();
+
+            Callable<List<String>> sync = new Callable<List<String>>() {
+                @Override
+                public List<String> call() throws IOException {
+                    List<String> wearableData = SunshineSyncTask.syncWeather(appContext);
+
+                    /* Something new was stored, so the watch face may have to be updated */
+                    if (wearableData != null) {
+                        Intent syncWearableIntent = new Intent();
+                        syncWearableIntent.setClass(appContext, SunshineSyncWearable.class);
+                        appContext.startService(syncWearableIntent);
+                    }
+                    return wearableData;
+                }
+            };
+
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                    SYNC_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+            executor.allowCoreThreadTimeOut(true);
+
+            sInstance = new SunshineSyncCoordinator(sync, executor);
+        }
+        return sInstance;
+    }
+
+    SunshineSyncCoordinator(Callable<List<String>> sync, Executor executor) {
+        mSync = sync;
+        mExecutor = executor;
+    }
+
+    /**
+     * Asks for the weather to be synced. This returns straight away; use the returned Future to
+     * wait for the sync. The Future is shared with other callers, so it can't be cancelled.
+     *
+     * @return The sync that will cover this request. Its result is the data for the wearable,
+     * or null if nothing new was stored. If the weather server couldn't be reached, getting the
+     * result throws an ExecutionException caused by an IOException.
+     */
+    public synchronized Future<List<String>> requestSync() {
+        mRequestCount++;
+
+        if (mRunningSync == null) {
+            mRunningSync = new SyncRun();
+            startSync(mRunningSync);
+            return mRunningSync;
+        }
+
+        if (mQueuedSync == null) {
+            mQueuedSync = new SyncRun();
+        } else {
+            mMergedRequestCount++;
+        }
+        return mQueuedSync;
+    }
+
+    private synchronized void onSyncFinished() {
+        mRunningSync = mQueuedSync;
+        mQueuedSync = null;
+
+        if (mRunningSync != null) {
+            startSync(mRunningSync);
+        }
+
+        Log.d(TAG, "Sync finished, " + describe());
+    }
+
+    /* Must be called while holding this */
+    private void startSync(SyncRun sync) {
+        mExecutedSyncCount++;
+        mExecutor.execute(sync);
+    }
+
+    /* Number of syncs that were asked for */
+    public synchronized long getRequestCount() {
+        return mRequestCount;
+    }
+
+    /* Number of requests that were covered by a sync another request had already queued */
+    public synchronized long getMergedRequestCount() {
+        return mMergedRequestCount;
+    }
+
+    /* Number of syncs that were actually run */
+    public synchronized long getExecutedSyncCount() {
+        return mExecutedSyncCount;
+    }
+
+    /**
+     * @return A one line summary of the counters, for logging
+     */
+    public synchronized String describe() {
+        return "requests=" + mRequestCount + " merged=" + mMergedRequestCount
+                + " executed=" + mExecutedSyncCount;
+    }
+
+    /**
+     * A single sync, shared by every request it covers. Once it is done, the queued sync, if
+     * there is one, is started.
+     */
+    private final class SyncRun extends FutureTask<List<String>> {
+
+        SyncRun() {
+            super(mSync);
+        }
+
+        /* Other callers may be waiting for this sync, so one of them can't call it off */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        protected void done() {
+            onSyncFinished();
+        }
+    }
+}
@@ -17,31 +17,56 @@ package com.example.android.sunshine.sync;
 
 import android.app.IntentService;
 import android.content.Intent;
+import android.util.Log;
 
-import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * An {@link IntentService} subclass for handling asynchronous task requests in
  * a service on a separate handler thread.
+ * <p>
+ * The sync itself is run by {@link SunshineSyncCoordinator}. Each request is handed to it as soon
+ * as it arrives, rather than when the handler thread gets to it, so that requests that arrive
+ * while a sync is running are merged instead of each waiting for its own sync. The handler
+ * thread then only waits for the sync that covers the request, which keeps the service (and
+ * the process) alive until it is done.
  */
 public class SunshineSyncIntentService extends IntentService {
 
-    private static final String EXTRA_WEARABLE_DATA = "SunshineSyncIntentServiceWearableDataExtra";
+    private static final String TAG = SunshineSyncIntentService.class.getSimpleName();
+
+    /*
+     * One Future per request, in the order the requests arrived. IntentService handles intents
+     * in that same order, so each call to onHandleIntent takes the Future of its own request.
+     */
+    private final Queue<Future<?>> mPendingSyncs = new ConcurrentLinkedQueue<>();
 
     public SunshineSyncIntentService() {
         super("SunshineSyncIntentService");
     }
 
     @Override
-    protected void onHandleIntent(Intent intent) {
-
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        mPendingSyncs.add(SunshineSyncCoordinator.getInstance(this).requestSync());
+        return super.onStartCommand(intent, flags, startId);
+    }
 
-        List<String> wearableDataList =  SunshineSyncTask.syncWeather(getApplicationContext());
-        String[] wearableDataStringArray = wearableDataList.toArray(new String[0]);
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        Future<?> sync = mPendingSyncs.poll();
+        if (sync == null) {
+            return;
+        }
 
-        Intent syncWearableIntent = new Intent();
-        syncWearableIntent.setClass(getApplicationContext(), SunshineSyncWearable.class);
-        syncWearableIntent.putExtra(EXTRA_WEARABLE_DATA, wearableDataStringArray);
-        startService(syncWearableIntent);
+        try {
+            sync.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Sync failed", e.getCause());
+        }
     }
-}
\ No newline at end of file
+}
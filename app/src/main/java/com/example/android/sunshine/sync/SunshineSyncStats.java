@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters describing what the weather syncs did since the process started. The values for the
+ * most recent sync are kept alongside the running totals so a single sync can be inspected in
+ * the logs.
+ */
+public final class SunshineSyncStats {
+
+    /* Number of syncs that wrote a forecast to the database */
+    private static final AtomicLong sSyncCount = new AtomicLong();
+
+    /* Days that were new or changed and had to be written */
+    private static final AtomicLong sRowsWritten = new AtomicLong();
+
+    /* Days that were identical to what was already stored */
+    private static final AtomicLong sRowsSkipped = new AtomicLong();
+
+    /* Forecasts sent to the watch face, and the bytes of payload they carried */
+    private static final AtomicLong sWearablePushes = new AtomicLong();
+    private static final AtomicLong sWearableBytes = new AtomicLong();
+
+    /* Forecasts that weren't sent to the watch face because they hadn't changed */
+    private static final AtomicLong sWearableSuppressed = new AtomicLong();
+
+    private static volatile int sLastRowsWritten;
+    private static volatile int sLastRowsSkipped;
+
+    private SunshineSyncStats() {
+    }
+
+    /**
+     * Records the outcome of a sync that reconciled at least one forecast with the database.
+     * It is called once per sync, with the rows of every location added up.
+     *
+     * @param rowsWritten Number of days that were written, across all locations
+     * @param rowsSkipped Number of days that were already up to date, across all locations
+     */
+    static void recordReconcile(int rowsWritten, int rowsSkipped) {
+        sLastRowsWritten = rowsWritten;
+        sLastRowsSkipped = rowsSkipped;
+        sSyncCount.incrementAndGet();
+        sRowsWritten.addAndGet(rowsWritten);
+        sRowsSkipped.addAndGet(rowsSkipped);
+    }
+
+    /**
+     * Records a forecast that was sent to the watch face.
+     *
+     * @param payloadBytes Size of the payload that was sent
+     */
+    static void recordWearablePush(int payloadBytes) {
+        sWearablePushes.incrementAndGet();
+        sWearableBytes.addAndGet(payloadBytes);
+    }
+
+    /**
+     * Records a forecast that wasn't sent to the watch face because it hadn't changed.
+     */
+    static void recordWearableSuppressed() {
+        sWearableSuppressed.incrementAndGet();
+    }
+
+    public static long getSyncCount() {
+        return sSyncCount.get();
+    }
+
+    public static long getRowsWritten() {
+        return sRowsWritten.get();
+    }
+
+    public static long getRowsSkipped() {
+        return sRowsSkipped.get();
+    }
+
+    public static int getLastRowsWritten() {
+        return sLastRowsWritten;
+    }
+
+    public static int getLastRowsSkipped() {
+        return sLastRowsSkipped;
+    }
+
+    public static long getWearablePushes() {
+        return sWearablePushes.get();
+    }
+
+    public static long getWearableBytes() {
+        return sWearableBytes.get();
+    }
+
+    public static long getWearableSuppressed() {
+        return sWearableSuppressed.get();
+    }
+
+    /**
+     * @return The share of forecasts for the watch face that weren't sent, between 0 and 1
+     */
+    public static double getWearableSuppressionRate() {
+        long suppressed = getWearableSuppressed();
+        long total = suppressed + getWearablePushes();
+        return total == 0 ? 0 : (double) suppressed / total;
+    }
+
+    /**
+     * @return A one line summary of the wearable counters, suitable for logging
+     */
+    public static String describeWearable() {
+        long pushes = getWearablePushes();
+        return "wearable: " + pushes + " pushes, "
+                + (pushes == 0 ? 0 : getWearableBytes() / pushes) + " bytes per push, "
+                + getWearableSuppressed() + " suppressed ("
+                + Math.round(getWearableSuppressionRate() * 100) + "%)";
+    }
+
+    /**
+     * @return A one line summary of the counters, suitable for logging
+     */
+    public static String describe() {
+        return "last sync: " + getLastRowsWritten() + " written, " + getLastRowsSkipped()
+                + " skipped; total over " + getSyncCount() + " syncs: " + getRowsWritten()
+                + " written, " + getRowsSkipped() + " skipped";
+    }
+}
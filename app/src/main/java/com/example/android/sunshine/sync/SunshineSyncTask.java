@@ -18,29 +18,116 @@ package com.example.android.sunshine.sync;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
 import android.support.v4.util.Pair;
 import android.text.format.DateUtils;
+import android.util.Log;
+import android.util.MalformedJsonException;
 
+import com.example.android.sunshine.data.ForecastBatch;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.utilities.ForecastResponseCache;
 import com.example.android.sunshine.utilities.NetworkUtils;
 import com.example.android.sunshine.utilities.NotificationUtils;
 import com.example.android.sunshine.utilities.OpenWeatherJsonUtils;
+import com.example.android.sunshine.utilities.SunshineHttpClient;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.WeatherArtCache;
 
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class SunshineSyncTask {
 
+    private static final String TAG = SunshineSyncTask.class.getSimpleName();
+
+    /*
+     * When true, the forecast is parsed straight off the network stream rather than being read
+     * into a String and parsed into a JSONObject first. The JSONObject parser is still used as a
+     * fallback if the streaming parser rejects a response.
+     */
+    private static final boolean USE_STREAMING_PARSER = true;
+
+    /*
+     * The saved locations are synced in parallel with each other and with the preferred location,
+     * but no more than this many at a time, so a long list of locations can't flood the network.
+     */
+    private static final int MAX_CONCURRENT_LOCATION_SYNCS = 4;
+
+    /* Threads that sit idle for this long are let go until the next sync */
+    private static final long LOCATION_SYNC_KEEP_ALIVE_SECONDS = 30;
+
+    private static final String[] SAVED_LOCATION_PROJECTION = {
+            WeatherContract.LocationEntry._ID,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING
+    };
+
+    private static final int INDEX_LOCATION_ID = 0;
+    private static final int INDEX_LOCATION_SETTING = 1;
+
+    /*
+     * Rows reconciled by a sync, added up over every location so the sync is recorded in
+     * SunshineSyncStats once: days written, days skipped and locations reconciled.
+     */
+    private static final int RECONCILE_ROWS_WRITTEN = 0;
+    private static final int RECONCILE_ROWS_SKIPPED = 1;
+    private static final int RECONCILE_LOCATIONS = 2;
+
+    private static final ThreadPoolExecutor sLocationSyncExecutor = createLocationSyncExecutor();
+
     /**
      * Performs the network request for updated weather, parses the JSON from that request, and
      * inserts the new weather information into our ContentProvider. Will notify the user that new
      * weather has been loaded if the user hasn't been notified of the weather within the last day
      * AND they haven't disabled notifications in the preferences screen.
+     * <p>
+     * The forecasts of the saved locations are fetched at the same time, on a bounded pool of
+     * threads, and each is written in its own transaction. This method only returns once all of
+     * them are done, so a sync takes about as long as its slowest location.
+     * <p>
+     * Syncs must not overlap, so this is only ever called by {@link SunshineSyncCoordinator},
+     * which runs one sync at a time and merges the requests that arrive in the meantime. Anything
+     * else that needs a sync should ask the coordinator for one.
+     *
+     * <p>
+     * The request for the preferred location is retried with {@link SyncRetryPolicy#DEFAULT}.
+     * If it still fails, or the weather server has been failing for a while and the
+     * {@link SyncCircuitBreaker} is open, the IOException is thrown so that the caller can decide
+     * whether to try again later.
      *
      * @param context Used to access utility methods and the ContentResolver
+     * @return The data for the wearable, or null if nothing new was stored
+     * @throws IOException If the weather server couldn't be reached
      */
-    synchronized public static List<String> syncWeather(Context context) {
+    static List<String> syncWeather(final Context context) throws IOException {
+
+        final SyncCircuitBreaker breaker = SyncCircuitBreaker.getInstance(context);
+        if (!breaker.allowRequest(System.currentTimeMillis())) {
+            /* Don't bother the server with the saved locations either */
+            throw new SyncCircuitBreaker.OpenException(breaker.getOpenUntil());
+        }
+
+        /* Get the saved locations going first, so they download while the preferred one does */
+        List<Future<int[]>> savedLocationSyncs = startSavedLocationSyncs(context);
+
+        /* What this sync found, which decides when the next periodic sync runs */
+        int outcome = SyncIntervalPolicy.OUTCOME_FAILED;
+
+        int[] reconcileTotals = new int[3];
 
         try {
             /*
@@ -48,17 +135,31 @@ public class SunshineSyncTask {
              * weather. It will decide whether to create a URL based off of the latitude and
              * longitude or off of a simple location as a String.
              */
-            URL weatherRequestUrl = NetworkUtils.getUrl(context);
+            final URL weatherRequestUrl = NetworkUtils.getUrl(context);
 
-            /* Use the URL to retrieve the JSON */
-            String jsonWeatherResponse = NetworkUtils.getResponseFromHttpUrl(weatherRequestUrl);
-
-            /* Parse the JSON into a list of weather values */
+            /* Use the URL to retrieve and parse the JSON into a list of weather values */
             //UPDATED TO GET PAIR. FIRST ELEMENT OF PAIR IS DATA NEEDED TO BE SENT TO THE WEARABLE
-            Pair<List<String>, ContentValues[]> weatherValuesPair = OpenWeatherJsonUtils
-                    .getWeatherContentValuesFromJson(context, jsonWeatherResponse);
+            Pair<List<String>, ForecastBatch> weatherValuesPair = SyncRetryPolicy.DEFAULT.execute(
+                    breaker,
+                    new SyncRetryPolicy.Attempt<Pair<List<String>, ForecastBatch>>() {
+                        @Override
+                        public Pair<List<String>, ForecastBatch> run()
+                                throws IOException, JSONException {
+                            return getForecastBatch(context, weatherRequestUrl,
+                                    WeatherContract.WeatherEntry.CONTENT_URI, true);
+                        }
+                    });
 
-            ContentValues[] weatherValues = weatherValuesPair.second;
+            /*
+             * Either the server returned an error code or the forecast hasn't changed since we
+             * last stored it. In both cases there is nothing to insert.
+             */
+            if (weatherValuesPair == null) {
+                outcome = SyncIntervalPolicy.OUTCOME_UNCHANGED;
+                return null;
+            }
+
+            ForecastBatch weatherValues = weatherValuesPair.second;
 
             /*
              * In cases where our JSON contained an error code, getWeatherContentValuesFromJson
@@ -66,21 +167,26 @@ public class SunshineSyncTask {
              * NullPointerExceptions being thrown. We also have no reason to insert fresh data if
              * there isn't any to insert.
              */
-            if (weatherValues != null && weatherValues.length != 0) {
-                /* Get a handle on the ContentResolver to delete and insert data */
+            if (weatherValues != null && weatherValues.size() != 0) {
+                /* Get a handle on the ContentResolver to reconcile the stored forecast */
                 ContentResolver sunshineContentResolver = context.getContentResolver();
 
-                /* Delete old weather data because we don't need to keep multiple days' data */
-                sunshineContentResolver.delete(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        null,
-                        null);
-
-                /* Insert our new weather data into Sunshine's ContentProvider */
-                sunshineContentResolver.bulkInsert(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
+                /*
+                 * Rather than deleting every day and inserting the whole forecast again, only
+                 * write the days that changed and delete the days that have expired. This keeps
+                 * unchanged rows (and the views bound to them) untouched and sends a single
+                 * change notification. The batch is handed to the provider as it is, without
+                 * turning every value into a boxed ContentValues entry.
+                 */
+                int rowsWritten = WeatherContract.reconcileForecast(sunshineContentResolver,
+                        WeatherContract.WeatherEntry.CONTENT_RECONCILE_URI,
                         weatherValues);
 
+                addReconcile(reconcileTotals, rowsWritten, weatherValues.size() - rowsWritten);
+                outcome = rowsWritten > 0
+                        ? SyncIntervalPolicy.OUTCOME_CHANGED
+                        : SyncIntervalPolicy.OUTCOME_UNCHANGED;
+
                 /*
                  * Finally, after we insert data into the ContentProvider, determine whether or not
                  * we should notify the user that the weather has been refreshed.
@@ -115,11 +221,267 @@ public class SunshineSyncTask {
 
             return weatherValuesPair.first;
 
+        } catch (IOException e) {
+            /* The server couldn't be reached, even after retrying */
+            Log.e(TAG, "Sync failed, " + breaker, e);
+            throw e;
         } catch (Exception e) {
             /* Server probably invalid */
             e.printStackTrace();
             return null;
+        } finally {
+            awaitSavedLocationSyncs(savedLocationSyncs, reconcileTotals);
+            if (reconcileTotals[RECONCILE_LOCATIONS] > 0) {
+                SunshineSyncStats.recordReconcile(reconcileTotals[RECONCILE_ROWS_WRITTEN],
+                        reconcileTotals[RECONCILE_ROWS_SKIPPED]);
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Sync finished, " + SunshineSyncStats.describe());
+                }
+            }
+            compactHistory(context);
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "HTTP latency: " + SunshineHttpClient.getInstance().describeLatency());
+                Log.d(TAG, "Weather art cache: " + WeatherArtCache.getInstance(context));
+            }
+
+            /* Whatever the server said, a forecast without today in it needs refreshing soon */
+            if (outcome != SyncIntervalPolicy.OUTCOME_FAILED
+                    && !hasWeatherForToday(context, WeatherContract.WeatherEntry.CONTENT_URI)) {
+                outcome = SyncIntervalPolicy.OUTCOME_STALE;
+            }
+            SunshineSyncUtils.adaptSyncInterval(context, outcome);
+        }
+
+    }
+
+    /**
+     * Applies the retention policy of the forecast history once every location has been synced.
+     * A failure here doesn't affect the sync, so it is only logged.
+     *
+     * @param context Used to access the ContentResolver
+     */
+    private static void compactHistory(Context context) {
+        try {
+            context.getContentResolver()
+                    .delete(WeatherContract.HistoryEntry.CONTENT_COMPACT_URI, null, null);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Unable to compact the forecast history", e);
         }
+    }
+
+    private static ThreadPoolExecutor createLocationSyncExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                MAX_CONCURRENT_LOCATION_SYNCS,
+                MAX_CONCURRENT_LOCATION_SYNCS,
+                LOCATION_SYNC_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Submits a sync for every saved location to the location sync executor.
+     *
+     * @param context Used to access the ContentResolver
+     * @return The pending syncs, to be passed to {@link #awaitSavedLocationSyncs(List, int[])}
+     */
+    private static List<Future<int[]>> startSavedLocationSyncs(Context context) {
+        final Context appContext = context.getApplicationContext();
+        List<Future<int[]>> savedLocationSyncs = new ArrayList<>();
 
+        Cursor cursor = appContext.getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                SAVED_LOCATION_PROJECTION,
+                null,
+                null,
+                null);
+
+        if (cursor == null) {
+            return savedLocationSyncs;
+        }
+
+        try {
+            while (cursor.moveToNext()) {
+                final long locationId = cursor.getLong(INDEX_LOCATION_ID);
+                final String locationSetting = cursor.getString(INDEX_LOCATION_SETTING);
+
+                savedLocationSyncs.add(sLocationSyncExecutor.submit(new Callable<int[]>() {
+                    @Override
+                    public int[] call() {
+                        return syncSavedLocation(appContext, locationId, locationSetting);
+                    }
+                }));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return savedLocationSyncs;
+    }
+
+    /**
+     * Waits for the saved locations to finish syncing, and adds the rows they reconciled to the
+     * totals of the sync.
+     *
+     * @param savedLocationSyncs The syncs returned by {@link #startSavedLocationSyncs(Context)}
+     * @param reconcileTotals    The rows reconciled by the sync so far
+     */
+    private static void awaitSavedLocationSyncs(List<Future<int[]>> savedLocationSyncs,
+            int[] reconcileTotals) {
+        for (Future<int[]> savedLocationSync : savedLocationSyncs) {
+            try {
+                int[] rows = savedLocationSync.get();
+                if (rows != null) {
+                    addReconcile(reconcileTotals, rows[RECONCILE_ROWS_WRITTEN],
+                            rows[RECONCILE_ROWS_SKIPPED]);
+                }
+            } catch (InterruptedException e) {
+                /* The remaining syncs carry on; we just stop waiting for them */
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Saved location sync failed", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Downloads the forecast of a saved location and reconciles it with the stored one in a
+     * single transaction. Runs on the location sync executor.
+     *
+     * @param context         Used to access the ContentResolver
+     * @param locationId      The _ID of the saved location
+     * @param locationSetting The saved location, as the user typed it
+     * @return The days written and skipped, indexed by RECONCILE_ROWS_WRITTEN and
+     * RECONCILE_ROWS_SKIPPED, or null if nothing was reconciled
+     */
+    private static int[] syncSavedLocation(Context context, long locationId,
+            String locationSetting) {
+        long start = SystemClock.elapsedRealtime();
+        int[] rows = null;
+
+        try {
+            URL weatherRequestUrl = NetworkUtils.getUrlForLocation(locationSetting);
+            Uri forecastUri = WeatherContract.LocationEntry.buildWeatherUri(locationId);
+
+            Pair<List<String>, ForecastBatch> weatherValuesPair =
+                    getForecastBatch(context, weatherRequestUrl, forecastUri, false);
+
+            if (weatherValuesPair != null && weatherValuesPair.second != null
+                    && weatherValuesPair.second.size() != 0) {
+                ForecastBatch weatherValues = weatherValuesPair.second;
+                int rowsWritten = WeatherContract.reconcileForecast(context.getContentResolver(),
+                        forecastUri, weatherValues);
+                rows = new int[3];
+                addReconcile(rows, rowsWritten, weatherValues.size() - rowsWritten);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Unable to sync " + locationSetting, e);
+        }
+
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Synced " + locationSetting + " in "
+                    + (SystemClock.elapsedRealtime() - start) + " ms");
+        }
+        return rows;
+    }
+
+    /**
+     * Adds the rows of one location's reconcile to a set of totals.
+     */
+    private static void addReconcile(int[] totals, int rowsWritten, int rowsSkipped) {
+        totals[RECONCILE_ROWS_WRITTEN] += rowsWritten;
+        totals[RECONCILE_ROWS_SKIPPED] += rowsSkipped;
+        totals[RECONCILE_LOCATIONS]++;
+    }
+
+    /**
+     * Downloads and parses the forecast at the given URL. The streaming parser is tried first;
+     * if it can't make sense of the response, the forecast is downloaded again and handed to the
+     * JSONObject based parser.
+     * <p>
+     * The streaming request is conditional. If the server says the forecast hasn't changed since
+     * we last stored it, null is returned without parsing anything. The cached body is only
+     * parsed again when the forecast was stored on an earlier day, because the dates we assign
+     * to each entry are relative to today, or when today's weather is missing from the database.
+     *
+     * @param context           Used by the parsers to store the location details
+     * @param weatherRequestUrl URL of the forecast
+     * @param forecastUri       Where the forecast for this location is stored
+     * @param isPreferredLocation Whether this is the location picked in the settings, whose
+     *                            coordinates are stored in the preferences
+     * @return The parsed forecast, or null if the server returned an error code or the forecast
+     * hasn't changed
+     */
+    private static Pair<List<String>, ForecastBatch> getForecastBatch(
+            Context context, URL weatherRequestUrl, Uri forecastUri,
+            boolean isPreferredLocation) throws IOException, JSONException {
+
+        /* The parsers only store the coordinates of the city when they're given a Context */
+        final Context parserContext = isPreferredLocation ? context : null;
+
+        if (USE_STREAMING_PARSER) {
+            ForecastResponseCache responseCache = ForecastResponseCache.getInstance(context);
+            boolean needsBody = !responseCache.wasValidatedToday(weatherRequestUrl)
+                    || !hasWeatherForToday(context, forecastUri);
+
+            NetworkUtils.ResponseHandler<Pair<List<String>, ForecastBatch>> streamingParser =
+                    new NetworkUtils.ResponseHandler<Pair<List<String>, ForecastBatch>>() {
+                        @Override
+                        public Pair<List<String>, ForecastBatch> handleResponse(InputStream in)
+                                throws IOException {
+                            return OpenWeatherJsonUtils
+                                    .getForecastBatchFromStream(parserContext, in);
+                        }
+                    };
+
+            try {
+                Pair<List<String>, ForecastBatch> weatherValuesPair = NetworkUtils
+                        .getResponseFromHttpUrl(weatherRequestUrl, responseCache, needsBody,
+                                streamingParser);
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Forecast response cache: " + responseCache + ", "
+                            + NetworkUtils.describeTransfer());
+                }
+                return weatherValuesPair;
+            } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+                Log.w(TAG, "Streaming parser rejected the forecast, falling back to JSONObject", e);
+            }
+        }
+
+        String jsonWeatherResponse = NetworkUtils.getResponseFromHttpUrl(weatherRequestUrl);
+        Pair<List<String>, ContentValues[]> weatherValuesPair = OpenWeatherJsonUtils
+                .getWeatherContentValuesFromJson(parserContext, jsonWeatherResponse);
+
+        /* The fallback is rare enough that copying its ContentValues into a batch is fine */
+        return weatherValuesPair == null ? null : Pair.create(weatherValuesPair.first,
+                ForecastBatch.fromContentValues(weatherValuesPair.second));
+    }
+
+    /**
+     * Checks whether the database holds the weather for today.
+     *
+     * @param context     Used to access the ContentResolver
+     * @param forecastUri The forecast of the location to check
+     * @return true if there is a row for today's date
+     */
+    private static boolean hasWeatherForToday(Context context, Uri forecastUri) {
+        Cursor cursor = context.getContentResolver().query(
+                forecastUri,
+                new String[]{WeatherContract.WeatherEntry._ID},
+                WeatherContract.WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(SunshineDateUtils.getNormalizedUtcDateForToday())},
+                null);
+
+        if (cursor == null) {
+            return false;
+        }
+
+        try {
+            return cursor.getCount() != 0;
+        } finally {
+            cursor.close();
+        }
     }
 }
\ No newline at end of file
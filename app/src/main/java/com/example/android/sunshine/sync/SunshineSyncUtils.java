@@ -20,7 +20,9 @@ import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
 import android.support.annotation.NonNull;
+import android.util.Log;
 
+import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
 import com.firebase.jobdispatcher.Constraint;
 import com.firebase.jobdispatcher.Driver;
@@ -28,31 +30,30 @@ import com.firebase.jobdispatcher.FirebaseJobDispatcher;
 import com.firebase.jobdispatcher.GooglePlayDriver;
 import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.Lifetime;
+import com.firebase.jobdispatcher.RetryStrategy;
 import com.firebase.jobdispatcher.Trigger;
 
-import java.util.concurrent.TimeUnit;
-
 public class SunshineSyncUtils {
 
-    /*
-     * Interval at which to sync with the weather. Use TimeUnit for convenience, rather than
-     * writing out a bunch of multiplication ourselves and risk making a silly mistake.
-     */
-    private static final int SYNC_INTERVAL_HOURS = 3;
-    private static final int SYNC_INTERVAL_SECONDS = (int) TimeUnit.HOURS.toSeconds(SYNC_INTERVAL_HOURS);
-    private static final int SYNC_FLEXTIME_SECONDS = SYNC_INTERVAL_SECONDS / 3;
+    private static final String TAG = SunshineSyncUtils.class.getSimpleName();
 
     private static boolean sInitialized;
 
     private static final String SUNSHINE_SYNC_TAG = "sunshine-sync";
 
     /**
-     * Schedules a repeating sync of Sunshine's weather data using FirebaseJobDispatcher.
+     * Schedules a repeating sync of Sunshine's weather data using FirebaseJobDispatcher. The
+     * interval is the one chosen by {@link #adaptSyncInterval(Context, int)}, or
+     * {@link SyncIntervalPolicy#DEFAULT_INTERVAL_SECONDS} until the first sync has run.
      * @param context Context used to create the GooglePlayDriver that powers the
      *                FirebaseJobDispatcher
      */
     static void scheduleFirebaseJobDispatcherSync(@NonNull final Context context) {
 
+        long syncIntervalSeconds = SunshinePreferences.getSyncIntervalSeconds(context,
+                SyncIntervalPolicy.DEFAULT_INTERVAL_SECONDS);
+        long syncFlextimeSeconds = SyncIntervalPolicy.getFlexSeconds(syncIntervalSeconds);
+
         Driver driver = new GooglePlayDriver(context);
         FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(driver);
 
@@ -79,26 +80,57 @@ public class SunshineSyncUtils {
                  */
                 .setRecurring(true)
                 /*
-                 * We want the weather data to be synced every 3 to 4 hours. The first argument for
+                 * We want the weather data to be synced every interval, give or take a third. By
+                 * default that is every 3 to 4 hours. The first argument for
                  * Trigger's static executionWindow method is the start of the time frame when the
                  * sync should be performed. The second argument is the latest point in time at
                  * which the data should be synced. Please note that this end time is not
                  * guaranteed, but is more of a guideline for FirebaseJobDispatcher to go off of.
                  */
                 .setTrigger(Trigger.executionWindow(
-                        SYNC_INTERVAL_SECONDS,
-                        SYNC_INTERVAL_SECONDS + SYNC_FLEXTIME_SECONDS))
+                        (int) syncIntervalSeconds,
+                        (int) (syncIntervalSeconds + syncFlextimeSeconds)))
                 /*
                  * If a Job with the tag with provided already exists, this new job will replace
                  * the old one.
                  */
                 .setReplaceCurrent(true)
+                /*
+                 * A sync that couldn't reach the server asks to be retried. The dispatcher then
+                 * waits 30 seconds, doubling every time it fails again, up to an hour.
+                 */
+                .setRetryStrategy(RetryStrategy.DEFAULT_EXPONENTIAL)
                 /* Once the Job is ready, call the builder's build method to return the Job */
                 .build();
 
         /* Schedule the Job with the dispatcher */
         dispatcher.schedule(syncSunshineJob);
     }
+
+    /**
+     * Adjusts the interval of the periodic sync to what the last sync found, and schedules the
+     * job again if the interval changed. See {@link SyncIntervalPolicy} for how the interval is
+     * chosen.
+     *
+     * @param context Used to access SharedPreferences and to schedule the job
+     * @param outcome What the last sync found, one of the SyncIntervalPolicy.OUTCOME constants
+     */
+    static void adaptSyncInterval(@NonNull Context context, int outcome) {
+        long currentIntervalSeconds = SunshinePreferences.getSyncIntervalSeconds(context,
+                SyncIntervalPolicy.DEFAULT_INTERVAL_SECONDS);
+        long nextIntervalSeconds =
+                SyncIntervalPolicy.getNextIntervalSeconds(currentIntervalSeconds, outcome);
+
+        Log.d(TAG, "Sync " + SyncIntervalPolicy.describeOutcome(outcome) + ", next sync in "
+                + nextIntervalSeconds / 60 + " minutes");
+
+        if (nextIntervalSeconds == currentIntervalSeconds) {
+            return;
+        }
+
+        SunshinePreferences.saveSyncIntervalSeconds(context, nextIntervalSeconds);
+        scheduleFirebaseJobDispatcherSync(context);
+    }
     /**
      * Creates periodic sync tasks and checks to see if an immediate sync is required. If an
      * immediate sync is required, this method will take care of making sure that sync occurs.
@@ -142,15 +174,16 @@ public class SunshineSyncUtils {
                  * to determine what weather details need to be displayed.
                  */
                 String[] projectionColumns = {WeatherContract.WeatherEntry._ID};
-                String selectionStatement = WeatherContract.WeatherEntry
-                        .getSqlSelectForTodayOnwards();
+                String selectionStatement = WeatherContract.WeatherEntry.SQL_SELECT_FROM_DATE;
+                String[] selectionArguments = WeatherContract.WeatherEntry
+                        .getSelectionArgsForTodayOnwards();
 
                 /* Here, we perform the query to check to see if we have any weather data */
                 Cursor cursor = context.getContentResolver().query(
                         forecastQueryUri,
                         projectionColumns,
                         selectionStatement,
-                        null,
+                        selectionArguments,
                         null);
                 /*
                  * A Cursor object can be null for various different reasons. A few are
@@ -10,7 +10,7 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
-import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+import com.example.android.sunshine.data.SunshinePreferences;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
@@ -19,17 +19,20 @@ import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
+/**
+ * Sends the forecast to the watch face as a {@link WearablePayload}. The payload is only sent
+ * when it differs from the last one the watch received.
+ */
 public class SunshineSyncWearable extends Service implements
       GoogleApiClient.ConnectionCallbacks,
       GoogleApiClient.OnConnectionFailedListener {
 
-    private static final String EXTRA_WEARABLE_DATA = "SunshineSyncIntentServiceWearableDataExtra";
-    private static final String KEY_HI_LOW_TEMP = "SunshineSyncWearableHi";
-    private static final String KEY_WEATHER_IMAGE = "SunshineSyncWearableWeatherImage";
+    private static final String TAG = SunshineSyncWearable.class.getSimpleName();
+
+    private static final String KEY_FORECAST = "SunshineSyncWearableForecast";
     private static final String DATA_SYNC_MAP_PATH = "/sunshinewatchface";
 
     GoogleApiClient mGoogleClientApi;
-    String[] mWearableDataStringArray;
 
     public SunshineSyncWearable() {
     }
@@ -46,16 +49,19 @@ public class SunshineSyncWearable extends Service implements
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        mWearableDataStringArray = intent.getExtras().getStringArray(EXTRA_WEARABLE_DATA);
+        /* A sync that finishes while we're still running won't get another onConnected */
+        if (mGoogleClientApi.isConnected()) {
+            new DataTask (getApplicationContext()).execute();
+        }
         return START_NOT_STICKY;
     }
 
     @Override
     public void onConnected(@Nullable Bundle bundle) {
-        new DataTask (getApplicationContext()).execute(mWearableDataStringArray);
+        new DataTask (getApplicationContext()).execute();
     }
 
-    private class DataTask  extends AsyncTask<String[], Void, Void> {
+    private class DataTask  extends AsyncTask<Void, Void, Void> {
         Context c;
 
         DataTask (Context c) {
@@ -63,24 +69,27 @@ public class SunshineSyncWearable extends Service implements
         }
 
         @Override
-        protected Void doInBackground(String[]... params) {
-            String[] wearableDataStringArray = params[0] ;
-
-            double wearableDataHi = Double.valueOf(wearableDataStringArray[0]);
-            double wearableDataLow = Double.valueOf(wearableDataStringArray[1]);
-            int wearableDataWeatherId = Integer.valueOf(wearableDataStringArray[2]);
-
-            String wearableHiLow = SunshineWeatherUtils.formatHighLows(getApplicationContext(), wearableDataHi, wearableDataLow);
-
-            int wearableImageId = SunshineWeatherUtils
-                        .getSmallArtResourceIdForWeatherCondition(wearableDataWeatherId);
-
-            String weatherIconName
-                  = getApplicationContext().getResources().getResourceEntryName(wearableImageId);
+        protected Void doInBackground(Void... params) {
+            byte[] payload = WearablePayload.createFromDatabase(c);
+            if (payload == null) {
+                return null;
+            }
+
+            /*
+             * Sending the same forecast again would cost a round trip over Bluetooth for
+             * nothing, so we skip it if the watch already has exactly this forecast.
+             */
+            final long payloadHash = WearablePayload.hash(payload);
+            if (payloadHash == SunshinePreferences.getLastWearablePayloadHash(c)) {
+                SunshineSyncStats.recordWearableSuppressed();
+                Log.d(TAG, "Forecast unchanged, " + SunshineSyncStats.describeWearable());
+                return null;
+            }
+
+            final int payloadBytes = payload.length;
 
             PutDataMapRequest dataMap = PutDataMapRequest.create(DATA_SYNC_MAP_PATH);
-            dataMap.getDataMap().putString(KEY_HI_LOW_TEMP, wearableHiLow);
-            dataMap.getDataMap().putString(KEY_WEATHER_IMAGE, weatherIconName);
+            dataMap.getDataMap().putByteArray(KEY_FORECAST, payload);
 
             PutDataRequest request = dataMap.asPutDataRequest();
 
@@ -89,9 +98,13 @@ public class SunshineSyncWearable extends Service implements
                         @Override
                         public void onResult(@NonNull DataApi.DataItemResult dataItemResult) {
                             if (dataItemResult.getStatus().isSuccess()) {
-                                Log.d(this.getClass().getSimpleName(), "Successfully Sent Data to Wear");
+                                /* Only remember forecasts that actually made it to the watch */
+                                SunshinePreferences.saveLastWearablePayloadHash(c, payloadHash);
+                                SunshineSyncStats.recordWearablePush(payloadBytes);
+                                Log.d(TAG, "Successfully Sent Data to Wear, "
+                                        + SunshineSyncStats.describeWearable());
                             } else {
-                                Log.e(this.getClass().getSimpleName(), "Failed to Send Data to Wear");
+                                Log.e(TAG, "Failed to Send Data to Wear");
                             }
                         }
                     });
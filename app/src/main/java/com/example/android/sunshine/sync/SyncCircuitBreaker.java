@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.format.DateUtils;
+
+import java.io.IOException;
+
+/**
+ * Stops syncs from going to the weather server while it keeps failing.
+ * <p>
+ * Once {@link #FAILURE_THRESHOLD} syncs in a row have failed, the breaker opens and every sync is
+ * refused until the open period is over. The next sync after that is let through as a trial: if
+ * it succeeds the breaker closes, and if it fails the breaker opens again for twice as long, up
+ * to {@link #MAX_OPEN_MILLIS}.
+ * <p>
+ * The state is kept in its own SharedPreferences file, so a process that is killed and started
+ * again by the next scheduled sync doesn't go straight back to a server that is down.
+ */
+final class SyncCircuitBreaker {
+
+    /* Consecutive failed syncs that open the breaker */
+    static final int FAILURE_THRESHOLD = 3;
+
+    static final long INITIAL_OPEN_MILLIS = 15 * DateUtils.MINUTE_IN_MILLIS;
+    static final long MAX_OPEN_MILLIS = 6 * DateUtils.HOUR_IN_MILLIS;
+
+    private static final String PREFS_NAME = "sync_circuit_breaker";
+    private static final String KEY_CONSECUTIVE_FAILURES = "consecutive_failures";
+    private static final String KEY_OPEN_UNTIL = "open_until";
+    private static final String KEY_OPEN_MILLIS = "open_millis";
+
+    private static SyncCircuitBreaker sInstance;
+
+    private final SharedPreferences mPreferences;
+
+    /* Guarded by this */
+    private int mConsecutiveFailures;
+    private long mOpenUntil;
+    private long mOpenMillis;
+
+    /**
+     * Thrown instead of making a request while the breaker is open.
+     */
+    static final class OpenException extends IOException {
+        OpenException(long openUntil) {
+            super("Weather server failed " + FAILURE_THRESHOLD + " times in a row, not syncing"
+                    + " for another " + Math.max(0, openUntil - System.currentTimeMillis()) / 1000
+                    + " s");
+        }
+    }
+
+    /**
+     * Returns the breaker that guards Sunshine's syncs.
+     *
+     * @param context Used to access SharedPreferences
+     * @return The breaker shared by the whole app
+     */
+    static synchronized SyncCircuitBreaker getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SyncCircuitBreaker(context.getApplicationContext()
+                    .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE));
+        }
+        return sInstance;
+    }
+
+    SyncCircuitBreaker(SharedPreferences preferences) {
+        mPreferences = preferences;
+        mConsecutiveFailures = preferences.getInt(KEY_CONSECUTIVE_FAILURES, 0);
+        mOpenUntil = preferences.getLong(KEY_OPEN_UNTIL, 0);
+        mOpenMillis = preferences.getLong(KEY_OPEN_MILLIS, 0);
+    }
+
+    /**
+     * @param now The current time, in milliseconds since the epoch
+     * @return true if a request may be made now
+     */
+    synchronized boolean allowRequest(long now) {
+        /*
+         * The open period was stored with the wall clock. If the clock was set back, the period
+         * can look longer than it can ever be; rather than refusing syncs for that long, we let
+         * one through as a trial.
+         */
+        return now >= mOpenUntil || mOpenUntil - now > MAX_OPEN_MILLIS;
+    }
+
+    /**
+     * Records a successful request, which closes the breaker.
+     */
+    synchronized void recordSuccess() {
+        if (mConsecutiveFailures == 0 && mOpenUntil == 0) {
+            return;
+        }
+        mConsecutiveFailures = 0;
+        mOpenUntil = 0;
+        mOpenMillis = 0;
+        save();
+    }
+
+    /**
+     * Records a failed request. This opens the breaker once {@link #FAILURE_THRESHOLD} requests
+     * in a row have failed, and every failure after that opens it for twice as long as before.
+     *
+     * @param now The current time, in milliseconds since the epoch
+     */
+    synchronized void recordFailure(long now) {
+        mConsecutiveFailures++;
+        if (mConsecutiveFailures >= FAILURE_THRESHOLD) {
+            mOpenMillis = mOpenMillis == 0
+                    ? INITIAL_OPEN_MILLIS
+                    : Math.min(MAX_OPEN_MILLIS, mOpenMillis * 2);
+            mOpenUntil = now + mOpenMillis;
+        }
+        save();
+    }
+
+    synchronized int getConsecutiveFailures() {
+        return mConsecutiveFailures;
+    }
+
+    /* Time until which requests are refused, or 0 if the breaker has never opened */
+    synchronized long getOpenUntil() {
+        return mOpenUntil;
+    }
+
+    /* Must be called while holding this */
+    private void save() {
+        mPreferences.edit()
+                .putInt(KEY_CONSECUTIVE_FAILURES, mConsecutiveFailures)
+                .putLong(KEY_OPEN_UNTIL, mOpenUntil)
+                .putLong(KEY_OPEN_MILLIS, mOpenMillis)
+                .apply();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "failures=" + mConsecutiveFailures + " openUntil=" + mOpenUntil;
+    }
+}
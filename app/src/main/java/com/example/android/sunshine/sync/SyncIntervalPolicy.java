@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how long to wait before the next periodic sync, based on what the last sync found.
+ * <ul>
+ * <li>When a sync finds the same forecast as before, the weather is calm and the interval is
+ * stretched, up to {@link #MAX_INTERVAL_SECONDS}.</li>
+ * <li>When a sync finds a changed forecast, the interval is shortened back to
+ * {@link #DEFAULT_INTERVAL_SECONDS}, or kept if it is already shorter. Going any shorter than
+ * the default on changes alone costs more syncs than the fixed interval did, because a stormy
+ * forecast changes every few hours.</li>
+ * <li>When there is no weather for today even after a sync, the data is stale and the interval
+ * drops to {@link #MIN_INTERVAL_SECONDS}.</li>
+ * <li>A sync that failed says nothing about the weather, so the interval is left as it is.</li>
+ * </ul>
+ */
+final class SyncIntervalPolicy {
+
+    /* The sync found the forecast it fetched to be different from the stored one */
+    static final int OUTCOME_CHANGED = 0;
+
+    /* The sync found the same forecast as the one already stored */
+    static final int OUTCOME_UNCHANGED = 1;
+
+    /* After the sync, the database still has no weather for today */
+    static final int OUTCOME_STALE = 2;
+
+    /* The sync couldn't reach the server */
+    static final int OUTCOME_FAILED = 3;
+
+    static final long MIN_INTERVAL_SECONDS = TimeUnit.HOURS.toSeconds(1);
+    static final long DEFAULT_INTERVAL_SECONDS = TimeUnit.HOURS.toSeconds(3);
+
+    /*
+     * Even a forecast that never changes has to be fetched more than once a day, or the list
+     * would start on yesterday by the time the next sync comes around.
+     */
+    static final long MAX_INTERVAL_SECONDS = TimeUnit.HOURS.toSeconds(12);
+
+    /* Each unchanged forecast stretches the interval by half */
+    private static final long STRETCH_NUMERATOR = 3;
+    private static final long STRETCH_DENOMINATOR = 2;
+
+    private SyncIntervalPolicy() {
+    }
+
+    /**
+     * Returns the interval to schedule after a sync.
+     *
+     * @param currentIntervalSeconds The interval that is currently scheduled
+     * @param outcome                What the sync found, one of the OUTCOME constants
+     * @return The interval for the next sync, in seconds
+     */
+    static long getNextIntervalSeconds(long currentIntervalSeconds, int outcome) {
+        switch (outcome) {
+            case OUTCOME_CHANGED:
+                return Math.min(DEFAULT_INTERVAL_SECONDS, currentIntervalSeconds);
+
+            case OUTCOME_UNCHANGED:
+                return Math.min(MAX_INTERVAL_SECONDS,
+                        currentIntervalSeconds * STRETCH_NUMERATOR / STRETCH_DENOMINATOR);
+
+            case OUTCOME_STALE:
+                return MIN_INTERVAL_SECONDS;
+
+            case OUTCOME_FAILED:
+                return currentIntervalSeconds;
+
+            default:
+                throw new IllegalArgumentException("Unknown sync outcome: " + outcome);
+        }
+    }
+
+    /**
+     * The flex is how much later than the interval the sync may run, which lets the job
+     * dispatcher batch it with other work. It is a third of the interval, as it always was.
+     *
+     * @param intervalSeconds The interval of the sync
+     * @return The flex of the sync, in seconds
+     */
+    static long getFlexSeconds(long intervalSeconds) {
+        return intervalSeconds / 3;
+    }
+
+    static String describeOutcome(int outcome) {
+        switch (outcome) {
+            case OUTCOME_CHANGED:
+                return "changed";
+            case OUTCOME_UNCHANGED:
+                return "unchanged";
+            case OUTCOME_STALE:
+                return "stale";
+            case OUTCOME_FAILED:
+                return "failed";
+            default:
+                return "unknown";
+        }
+    }
+}
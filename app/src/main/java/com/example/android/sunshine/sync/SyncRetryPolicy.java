@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Retries a request that failed with an IOException, waiting a little longer before each new
+ * attempt. The wait doubles with every attempt, and half of it is random, so phones that lost
+ * the server at the same moment don't all come back to it at the same moment.
+ * <p>
+ * Requests are made through a {@link SyncCircuitBreaker}: nothing is attempted while it is open,
+ * and a request that fails on every attempt counts as a single failure.
+ */
+final class SyncRetryPolicy {
+
+    private static final String TAG = SyncRetryPolicy.class.getSimpleName();
+
+    /* The policy used by the syncs: three attempts, waiting up to one and then two seconds */
+    static final SyncRetryPolicy DEFAULT = new SyncRetryPolicy(3, 1000, 8000, new Random());
+
+    private final int mMaxAttempts;
+    private final long mBaseDelayMillis;
+    private final long mMaxDelayMillis;
+    private final Random mRandom;
+
+    /**
+     * A request that may be retried.
+     *
+     * @param <T> The type of the value produced by the request
+     */
+    interface Attempt<T> {
+        T run() throws IOException, JSONException;
+    }
+
+    SyncRetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, Random random) {
+        mMaxAttempts = maxAttempts;
+        mBaseDelayMillis = baseDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+        mRandom = random;
+    }
+
+    /**
+     * Returns how long to wait after a failed attempt. This is somewhere between half of and
+     * the full exponential delay, which is capped at the maximum delay.
+     *
+     * @param failedAttempts Number of attempts that have failed so far, at least 1
+     * @return The time to wait before the next attempt, in milliseconds
+     */
+    long getDelayMillis(int failedAttempts) {
+        long delay = mBaseDelayMillis << Math.min(failedAttempts - 1, 30);
+        if (delay <= 0 || delay > mMaxDelayMillis) {
+            delay = mMaxDelayMillis;
+        }
+        long half = delay / 2;
+        return half + (long) (mRandom.nextDouble() * (delay - half));
+    }
+
+    /**
+     * Runs the request, retrying it while it fails with an IOException.
+     *
+     * @param breaker Guards the server the request goes to
+     * @param attempt The request
+     * @param <T>     The type of the value produced by the request
+     * @return Whatever the request produced
+     * @throws SyncCircuitBreaker.OpenException If the breaker is open and nothing was attempted
+     * @throws IOException   If the last attempt failed
+     * @throws JSONException If the response couldn't be parsed, which isn't retried
+     */
+    <T> T execute(SyncCircuitBreaker breaker, Attempt<T> attempt)
+            throws IOException, JSONException {
+        if (!breaker.allowRequest(System.currentTimeMillis())) {
+            throw new SyncCircuitBreaker.OpenException(breaker.getOpenUntil());
+        }
+
+        for (int failedAttempts = 0; ; ) {
+            try {
+                T result = attempt.run();
+                breaker.recordSuccess();
+                return result;
+            } catch (IOException e) {
+                failedAttempts++;
+                if (failedAttempts >= mMaxAttempts) {
+                    breaker.recordFailure(System.currentTimeMillis());
+                    throw e;
+                }
+
+                long delay = getDelayMillis(failedAttempts);
+                Log.w(TAG, "Attempt " + failedAttempts + " failed, retrying in " + delay + " ms",
+                        e);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    /* We were asked to stop, so give up on the request */
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Builds the forecast that is sent to the watch face. Rather than formatted Strings, the watch
+ * gets the raw values in a small binary layout that it can read without parsing any text:
+ * <pre>
+ *     byte  version             ({@link #VERSION})
+ *     byte  units               ({@link #UNITS_METRIC} or {@link #UNITS_IMPERIAL})
+ *     int   first day           (normalized UTC date of the first day, in days since the epoch)
+ *     byte  day count
+ *     then, for every day:
+ *     float high                (°C)
+ *     float low                 (°C)
+ *     short weather id
+ * </pre>
+ * All values are big-endian. The watch face module has a matching decoder, so the layout must
+ * only ever change together with {@link #VERSION}.
+ */
+public final class WearablePayload {
+
+    public static final byte VERSION = 1;
+
+    public static final byte UNITS_METRIC = 0;
+    public static final byte UNITS_IMPERIAL = 1;
+
+    /* Number of days, starting with today, sent to the watch */
+    static final int MAX_DAYS = 7;
+
+    private static final int HEADER_SIZE = 1 + 1 + 4 + 1;
+    private static final int DAY_SIZE = 4 + 4 + 2;
+
+    private static final String[] FORECAST_PROJECTION = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+    };
+
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_MAX_TEMP = 1;
+    private static final int INDEX_MIN_TEMP = 2;
+    private static final int INDEX_WEATHER_ID = 3;
+
+    private WearablePayload() {
+    }
+
+    /**
+     * Reads the forecast from today onwards out of the database and encodes it.
+     *
+     * @param context Used to query the ContentProvider and read the units preference
+     * @return The encoded forecast, or null if there is no forecast for today onwards
+     */
+    static byte[] createFromDatabase(Context context) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                FORECAST_PROJECTION,
+                WeatherContract.WeatherEntry.SQL_SELECT_FROM_DATE,
+                WeatherContract.WeatherEntry.getSelectionArgsForTodayOnwards(),
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+
+        if (cursor == null) {
+            return null;
+        }
+
+        try {
+            int dayCount = Math.min(cursor.getCount(), MAX_DAYS);
+            if (dayCount == 0 || !cursor.moveToFirst()) {
+                return null;
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(HEADER_SIZE + dayCount * DAY_SIZE);
+            payload.put(VERSION);
+            payload.put(SunshinePreferences.isMetric(context) ? UNITS_METRIC : UNITS_IMPERIAL);
+            payload.putInt((int) (cursor.getLong(INDEX_DATE) / SunshineDateUtils.DAY_IN_MILLIS));
+            payload.put((byte) dayCount);
+
+            for (int i = 0; i < dayCount; i++, cursor.moveToNext()) {
+                payload.putFloat(cursor.getFloat(INDEX_MAX_TEMP));
+                payload.putFloat(cursor.getFloat(INDEX_MIN_TEMP));
+                payload.putShort((short) cursor.getInt(INDEX_WEATHER_ID));
+            }
+
+            return payload.array();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Hashes an encoded forecast so that we can tell whether it differs from the last one that
+     * was sent without keeping the whole payload around.
+     *
+     * @param payload The encoded forecast
+     * @return The CRC-32 of the payload
+     */
+    static long hash(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return crc.getValue();
+    }
+}
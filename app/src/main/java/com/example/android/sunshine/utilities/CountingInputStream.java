@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adds the number of bytes read through it to a counter, and refuses to read more than a given
+ * number of bytes. NetworkUtils puts one of these on either side of the decompressor, so that it
+ * can count the bytes on the wire and the decoded bytes separately.
+ */
+final class CountingInputStream extends FilterInputStream {
+
+    private final AtomicLong mCounter;
+    private final long mLimit;
+    private long mCount;
+
+    /**
+     * @param in      The stream to count
+     * @param counter Where the bytes read are added up, shared between streams
+     * @param limit   The number of bytes after which reading fails
+     */
+    CountingInputStream(InputStream in, AtomicLong counter, long limit) {
+        super(in);
+        mCounter = counter;
+        mLimit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) count(1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        int read = super.read(buffer, offset, count);
+        if (read > 0) count(read);
+        return read;
+    }
+
+    @Override
+    public long skip(long byteCount) throws IOException {
+        long skipped = super.skip(byteCount);
+        if (skipped > 0) count(skipped);
+        return skipped;
+    }
+
+    /* Marking would let bytes be counted twice, and nothing needs it */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void count(long bytes) throws IOException {
+        mCount += bytes;
+        mCounter.addAndGet(bytes);
+        if (mCount > mLimit) {
+            throw new IOException("Response body is larger than " + mLimit + " bytes");
+        }
+    }
+}
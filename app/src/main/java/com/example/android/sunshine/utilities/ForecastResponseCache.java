@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * On-disk cache of forecast responses, keyed by the request URL. For every URL we keep the body
+ * of the last successful response along with its ETag and Last-Modified validators. Those are sent
+ * back to the server as If-None-Match and If-Modified-Since, so an unchanged forecast costs a
+ * 304 response instead of the whole payload.
+ * <p>
+ * The cache also counts hits (304 responses), misses (full downloads) and the number of body bytes
+ * that did not have to be downloaded thanks to hits.
+ */
+public final class ForecastResponseCache {
+
+    private static final String TAG = ForecastResponseCache.class.getSimpleName();
+
+    /* Directory, within the app's cache directory, that holds the cached responses */
+    private static final String CACHE_DIRECTORY = "forecast_responses";
+
+    private static final String BODY_SUFFIX = ".body";
+    private static final String METADATA_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /* Keys used in the metadata file of each entry */
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "last_modified";
+    private static final String KEY_BODY_LENGTH = "body_length";
+    private static final String KEY_VALIDATED_DAY = "validated_day";
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static ForecastResponseCache sInstance;
+
+    private final File mDirectory;
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mBytesSaved = new AtomicLong();
+
+    /**
+     * Returns the cache that lives in the app's cache directory.
+     *
+     * @param context Used to find the cache directory
+     * @return The response cache shared by the whole app
+     */
+    public static synchronized ForecastResponseCache getInstance(Context context) {
+        if (sInstance == null) {
+            File directory = new File(context.getApplicationContext().getCacheDir(),
+                    CACHE_DIRECTORY);
+            sInstance = new ForecastResponseCache(directory);
+        }
+        return sInstance;
+    }
+
+    ForecastResponseCache(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Adds the If-None-Match and If-Modified-Since headers to a request if we have a cached
+     * response for its URL. Must be called before the connection is opened.
+     *
+     * @param url        The URL being requested
+     * @param connection The not yet connected request
+     */
+    void addValidators(URL url, HttpURLConnection connection) {
+        if (!getBodyFile(url).exists()) {
+            return;
+        }
+
+        Properties metadata = readMetadata(url);
+        String eTag = metadata.getProperty(KEY_ETAG);
+        String lastModified = metadata.getProperty(KEY_LAST_MODIFIED);
+
+        if (eTag != null) {
+            connection.setRequestProperty(HEADER_IF_NONE_MATCH, eTag);
+        }
+        if (lastModified != null) {
+            connection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, lastModified);
+        }
+    }
+
+    /**
+     * Returns true if the cached response for this URL was downloaded or revalidated today. The
+     * dates in a forecast are relative to the day it was parsed on, so a response that was last
+     * parsed on an earlier day has to be parsed again even if the server says it is unchanged.
+     *
+     * @param url The URL of the forecast
+     * @return true if the cached response was validated today
+     */
+    public boolean wasValidatedToday(URL url) {
+        String validatedDay = readMetadata(url).getProperty(KEY_VALIDATED_DAY);
+        return String.valueOf(SunshineDateUtils.getNormalizedUtcDateForToday())
+                .equals(validatedDay);
+    }
+
+    /**
+     * Records a 304 response for the URL and marks its cached response as validated today.
+     *
+     * @param url The URL that was not modified
+     */
+    void recordHit(URL url) {
+        Properties metadata = readMetadata(url);
+
+        mHitCount.incrementAndGet();
+        mBytesSaved.addAndGet(Long.parseLong(metadata.getProperty(KEY_BODY_LENGTH, "0")));
+
+        metadata.setProperty(KEY_VALIDATED_DAY,
+                String.valueOf(SunshineDateUtils.getNormalizedUtcDateForToday()));
+        writeMetadata(url, metadata);
+    }
+
+    /**
+     * Records a full download.
+     */
+    void recordMiss() {
+        mMissCount.incrementAndGet();
+    }
+
+    /**
+     * Opens the cached body for a URL.
+     *
+     * @param url The URL of the cached response
+     * @return The cached body, or null if there is none
+     */
+    InputStream openCachedBody(URL url) {
+        try {
+            return new FileInputStream(getBodyFile(url));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts writing a new response for the URL into the cache. The returned Editor copies the
+     * body to disk as it is read, so the response is never buffered in memory.
+     *
+     * @param url The URL of the response
+     * @return An Editor that must be either committed or aborted
+     * @throws IOException If the cache file can't be created
+     */
+    Editor edit(URL url) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + mDirectory);
+        }
+        return new Editor(url);
+    }
+
+    /* Number of requests that were answered with 304 Not Modified */
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    /* Number of requests that downloaded the whole forecast */
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    /* Number of body bytes that were not downloaded because the server answered 304 */
+    public long getBytesSaved() {
+        return mBytesSaved.get();
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + getHitCount() + " misses=" + getMissCount()
+                + " bytesSaved=" + getBytesSaved();
+    }
+
+    private File getBodyFile(URL url) {
+        return new File(mDirectory, getKey(url) + BODY_SUFFIX);
+    }
+
+    private File getMetadataFile(URL url) {
+        return new File(mDirectory, getKey(url) + METADATA_SUFFIX);
+    }
+
+    private Properties readMetadata(URL url) {
+        Properties metadata = new Properties();
+        File metadataFile = getMetadataFile(url);
+        if (!metadataFile.exists()) {
+            return metadata;
+        }
+
+        InputStream in = null;
+        try {
+            in = new FileInputStream(metadataFile);
+            metadata.load(in);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read cache metadata for " + url, e);
+        } finally {
+            closeQuietly(in);
+        }
+        return metadata;
+    }
+
+    private void writeMetadata(URL url, Properties metadata) {
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(getMetadataFile(url));
+            metadata.store(out, null);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write cache metadata for " + url, e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * The URL contains the location query, so we hash it to get a safe file name.
+     */
+    private static String getKey(URL url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest(url.toString().getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return Integer.toHexString(url.toString().hashCode());
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Writes a single new response into the cache. The body is copied into a temporary file as it
+     * is read and only replaces the previous response once the Editor is committed.
+     */
+    final class Editor {
+
+        private final URL mUrl;
+        private final File mTempFile;
+        private final OutputStream mTempOut;
+        private InputStream mBody;
+
+        private Editor(URL url) throws IOException {
+            mUrl = url;
+            mTempFile = new File(mDirectory, getKey(url) + TEMP_SUFFIX);
+            mTempOut = new FileOutputStream(mTempFile);
+        }
+
+        /**
+         * Wraps the body of the response so that everything read from it is also written to
+         * the cache.
+         *
+         * @param body The body of the response
+         * @return A stream with the same contents as body
+         */
+        InputStream newBodyStream(InputStream body) {
+            mBody = new FilterInputStream(body) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) mTempOut.write(b);
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int count) throws IOException {
+                    int read = super.read(buffer, offset, count);
+                    if (read > 0) mTempOut.write(buffer, offset, read);
+                    return read;
+                }
+
+                @Override
+                public long skip(long byteCount) throws IOException {
+                    if (byteCount <= 0) {
+                        return 0;
+                    }
+                    /* Skipped bytes still have to make it into the cache */
+                    int read = read(new byte[(int) Math.min(byteCount, 4096)]);
+                    /* skip() reports the end of the stream as 0 bytes skipped, not -1 */
+                    return Math.max(read, 0);
+                }
+            };
+            return mBody;
+        }
+
+        /**
+         * Reads whatever is left of the body and stores it along with the validators of the
+         * response.
+         *
+         * @param connection The connection the body came from
+         * @throws IOException If the rest of the body can't be read or the cache can't be written
+         */
+        void commit(HttpURLConnection connection) throws IOException {
+            try {
+                byte[] buffer = new byte[4096];
+                while (mBody.read(buffer) != -1) {
+                    /* The parser may stop before the end of the body, so we read the rest here */
+                }
+            } finally {
+                mTempOut.close();
+            }
+
+            File bodyFile = getBodyFile(mUrl);
+            if (!mTempFile.renameTo(bodyFile)) {
+                abort();
+                throw new IOException("Unable to store cached response for " + mUrl);
+            }
+
+            Properties metadata = new Properties();
+            String eTag = connection.getHeaderField(HEADER_ETAG);
+            String lastModified = connection.getHeaderField(HEADER_LAST_MODIFIED);
+            if (eTag != null) metadata.setProperty(KEY_ETAG, eTag);
+            if (lastModified != null) metadata.setProperty(KEY_LAST_MODIFIED, lastModified);
+            metadata.setProperty(KEY_BODY_LENGTH, String.valueOf(bodyFile.length()));
+            metadata.setProperty(KEY_VALIDATED_DAY,
+                    String.valueOf(SunshineDateUtils.getNormalizedUtcDateForToday()));
+            writeMetadata(mUrl, metadata);
+        }
+
+        /**
+         * Discards the new response and keeps whatever was cached before.
+         */
+        void abort() {
+            closeQuietly(mTempOut);
+            if (mTempFile.exists() && !mTempFile.delete()) {
+                Log.w(TAG, "Unable to delete " + mTempFile);
+            }
+        }
+    }
+}
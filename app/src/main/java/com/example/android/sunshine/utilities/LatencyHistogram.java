@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in a fixed set of buckets, which is enough to tell a typical request from a
+ * slow one without keeping every sample. Safe to record into from several threads.
+ */
+public final class LatencyHistogram {
+
+    /* Upper bounds of the buckets, in milliseconds. One more bucket holds everything slower. */
+    private static final long[] BUCKET_BOUNDS_MILLIS =
+            {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000};
+
+    private final String mName;
+    private final AtomicLongArray mBucketCounts =
+            new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mTotalMillis = new AtomicLong();
+
+    /**
+     * @param name What is being timed, used when the histogram is logged
+     */
+    public LatencyHistogram(String name) {
+        mName = name;
+    }
+
+    /**
+     * @param millis A duration, in milliseconds
+     */
+    public void record(long millis) {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MILLIS.length && millis > BUCKET_BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        mBucketCounts.incrementAndGet(bucket);
+        mCount.incrementAndGet();
+        mTotalMillis.addAndGet(millis);
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getMeanMillis() {
+        long count = getCount();
+        return count == 0 ? 0 : mTotalMillis.get() / count;
+    }
+
+    /**
+     * Returns the upper bound of the bucket that holds the given percentile, so the percentile
+     * itself is at most this long.
+     *
+     * @param percentile Between 0 and 100
+     * @return The bound, in milliseconds, or Long.MAX_VALUE if the percentile is slower than the
+     * last bucket
+     */
+    public long getPercentileMillis(double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_BOUNDS_MILLIS.length; bucket++) {
+            seen += mBucketCounts.get(bucket);
+            if (seen >= rank) {
+                return BUCKET_BOUNDS_MILLIS[bucket];
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return mName + ": n=" + getCount() + " mean=" + getMeanMillis() + "ms"
+                + " p50<=" + describeBound(getPercentileMillis(50))
+                + " p90<=" + describeBound(getPercentileMillis(90))
+                + " p99<=" + describeBound(getPercentileMillis(99));
+    }
+
+    private static String describeBound(long millis) {
+        return millis == Long.MAX_VALUE ? "inf" : millis + "ms";
+    }
+}
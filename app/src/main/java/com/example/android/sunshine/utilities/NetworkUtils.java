@@ -21,12 +21,16 @@ import android.util.Log;
 
 import com.example.android.sunshine.data.SunshinePreferences;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * These utilities will be used to communicate with the weather servers.
@@ -83,6 +87,48 @@ public final class NetworkUtils {
     /* The days parameter allows us to designate how many days of weather data we want */
     private static final String DAYS_PARAM = "cnt";
 
+    /*
+     * Largest response body we accept, once decompressed. A 14 day forecast is about 6 KB, so
+     * anything near this is either broken or not a forecast, and reading it would only waste
+     * memory and battery.
+     */
+    static final long MAX_BODY_BYTES = 2 * 1024 * 1024;
+
+    /*
+     * Setting Accept-Encoding ourselves turns off HttpURLConnection's transparent gzip, so the
+     * response arrives as it was sent and we decompress it while it is read. That way we can count
+     * the bytes on the wire as well as the decoded ones, and the server may also pick deflate.
+     */
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final String ENCODING_GZIP = "gzip";
+    private static final String ENCODING_DEFLATE = "deflate";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /* Each thread reads response bodies through the same buffer rather than a new one each time */
+    private static final ThreadLocal<byte[]> sReadBuffer = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    /* Response body bytes as they came over the network, and once decompressed */
+    private static final AtomicLong sBytesOnWire = new AtomicLong();
+    private static final AtomicLong sBytesDecoded = new AtomicLong();
+
+    /**
+     * Consumes the body of an HTTP response while its connection is still open. This lets
+     * callers such as the streaming JSON parser read straight off the network instead of
+     * waiting for the whole response to be buffered into a String.
+     *
+     * @param <T> The type of the value produced from the response body
+     */
+    public interface ResponseHandler<T> {
+        T handleResponse(InputStream in) throws IOException;
+    }
+
     /**
      * Retrieves the proper URL to query for the weather data. The reason for both this method as
      * well as {@link #buildUrlWithLocationQuery(String)} is two fold.
@@ -109,6 +155,18 @@ public final class NetworkUtils {
         }
     }
 
+    /**
+     * Returns the URL of the forecast for a saved location. Unlike {@link #getUrl(Context)}, this
+     * never uses the coordinates stored in the preferences, as those belong to the location
+     * picked in the settings.
+     *
+     * @param locationQuery The saved location, as the user typed it
+     * @return URL to query weather service
+     */
+    public static URL getUrlForLocation(String locationQuery) {
+        return buildUrlWithLocationQuery(locationQuery);
+    }
+
     /**
      * Builds the URL used to talk to the weather server using latitude and longitude of a
      * location.
@@ -166,25 +224,195 @@ public final class NetworkUtils {
      *
      * @param url The URL to fetch the HTTP response from.
      * @return The contents of the HTTP response, null if no response
-     * @throws IOException Related to network and stream reading
+     * @throws IOException Related to network and stream reading, or if the response is larger
+     * than {@link #MAX_BODY_BYTES}
      */
     public static String getResponseFromHttpUrl(URL url) throws IOException {
-        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        SunshineHttpClient client = SunshineHttpClient.getInstance();
+        HttpURLConnection urlConnection = client.newConnection(url);
+        requestCompression(urlConnection);
+
+        SunshineHttpClient.Exchange exchange = client.execute(urlConnection);
+        try {
+            return readResponseBody(exchange.openBody(MAX_BODY_BYTES));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * This method hands the body of the HTTP response to a {@link ResponseHandler} without
+     * buffering it first. The exchange is closed once the handler returns.
+     *
+     * @param url     The URL to fetch the HTTP response from.
+     * @param handler Consumes the response body.
+     * @param <T>     The type of the value produced by the handler
+     * @return Whatever the handler produced from the response body
+     * @throws IOException Related to network and stream reading
+     */
+    public static <T> T getResponseFromHttpUrl(URL url, ResponseHandler<T> handler)
+            throws IOException {
+        SunshineHttpClient client = SunshineHttpClient.getInstance();
+        HttpURLConnection urlConnection = client.newConnection(url);
+        requestCompression(urlConnection);
+
+        SunshineHttpClient.Exchange exchange = client.execute(urlConnection);
+        try {
+            return handler.handleResponse(exchange.openBody(MAX_BODY_BYTES));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * This method makes a conditional request for the URL using the validators stored in the
+     * {@link ForecastResponseCache}. A new response is handed to the handler while it is being
+     * written to the cache. If the server answers 304 Not Modified, nothing is downloaded and,
+     * unless the caller asked for the body anyway, the handler isn't called at all.
+     *
+     * @param url       The URL to fetch the HTTP response from.
+     * @param cache     Holds the validators and body of the previous response
+     * @param needsBody Whether the handler should be given the cached body on a 304
+     * @param handler   Consumes the response body.
+     * @param <T>       The type of the value produced by the handler
+     * @return Whatever the handler produced from the response body, or null if the response was
+     * not modified and the body wasn't needed
+     * @throws IOException Related to network and stream reading
+     */
+    public static <T> T getResponseFromHttpUrl(URL url, ForecastResponseCache cache,
+            boolean needsBody, ResponseHandler<T> handler) throws IOException {
+        SunshineHttpClient client = SunshineHttpClient.getInstance();
+        HttpURLConnection urlConnection = client.newConnection(url);
+        requestCompression(urlConnection);
+        cache.addValidators(url, urlConnection);
+
+        SunshineHttpClient.Exchange exchange = client.execute(urlConnection);
         try {
-            InputStream in = urlConnection.getInputStream();
+            if (exchange.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                cache.recordHit(url);
+                InputStream cachedBody = needsBody ? cache.openCachedBody(url) : null;
+                if (cachedBody == null) {
+                    return null;
+                }
+                try {
+                    return handler.handleResponse(new BufferedInputStream(cachedBody));
+                } finally {
+                    cachedBody.close();
+                }
+            }
 
-            Scanner scanner = new Scanner(in);
-            scanner.useDelimiter("\\A");
+            cache.recordMiss();
+            InputStream body = exchange.openBody(MAX_BODY_BYTES);
+            ForecastResponseCache.Editor editor = cache.edit(url);
 
-            boolean hasInput = scanner.hasNext();
-            String response = null;
-            if (hasInput) {
-                response = scanner.next();
+            /* The cache keeps the decoded body, so it can be parsed again without inflating it */
+            T response;
+            try {
+                response = handler.handleResponse(editor.newBodyStream(body));
+            } catch (IOException | RuntimeException e) {
+                editor.abort();
+                throw e;
+            }
+
+            /* Error responses are not worth revalidating, so we only cache usable forecasts */
+            if (response == null) {
+                editor.abort();
+            } else {
+                try {
+                    editor.commit(urlConnection);
+                } catch (IOException e) {
+                    /* The forecast was parsed fine, so losing the cached copy isn't fatal */
+                    Log.w(TAG, "Unable to cache the response for " + url, e);
+                    editor.abort();
+                }
             }
-            scanner.close();
             return response;
         } finally {
-            urlConnection.disconnect();
+            exchange.close();
+        }
+    }
+
+    /**
+     * Asks the server to compress the response. Must be called before the connection is opened.
+     *
+     * @param connection The not yet connected request
+     */
+    private static void requestCompression(HttpURLConnection connection) {
+        connection.setRequestProperty(HEADER_ACCEPT_ENCODING, ACCEPT_ENCODING);
+    }
+
+    /**
+     * Opens the body of a response, decompressing it as it is read if the server compressed it.
+     * Reading fails once more than maxBodyBytes have been read on either side of the
+     * decompressor, so neither a huge response nor a small one that inflates into a huge one
+     * can use up our memory.
+     *
+     * @param connection   A request made after {@link #requestCompression(HttpURLConnection)}
+     * @param maxBodyBytes The largest body we are willing to read
+     * @return The decoded body, which must be closed
+     * @throws IOException If the response can't be read, or says up front that it is too large
+     */
+    static InputStream openResponseBody(HttpURLConnection connection, long maxBodyBytes)
+            throws IOException {
+        int contentLength = connection.getContentLength();
+        if (contentLength > maxBodyBytes) {
+            throw new IOException("Response body of " + contentLength
+                    + " bytes is larger than " + maxBodyBytes + " bytes");
         }
+
+        InputStream wire = new CountingInputStream(connection.getInputStream(), sBytesOnWire,
+                maxBodyBytes);
+
+        String contentEncoding = connection.getContentEncoding();
+        InputStream decoded;
+        if (ENCODING_GZIP.equalsIgnoreCase(contentEncoding)) {
+            decoded = new GZIPInputStream(wire, BUFFER_SIZE);
+        } else if (ENCODING_DEFLATE.equalsIgnoreCase(contentEncoding)) {
+            decoded = new InflaterInputStream(wire);
+        } else {
+            decoded = wire;
+        }
+
+        return new CountingInputStream(decoded, sBytesDecoded, maxBodyBytes);
+    }
+
+    /**
+     * Reads a whole response body into a String, through this thread's read buffer.
+     *
+     * @param in The decoded body
+     * @return The body, or null if it is empty
+     * @throws IOException Related to stream reading
+     */
+    private static String readResponseBody(InputStream in) throws IOException {
+        byte[] buffer = sReadBuffer.get();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(BUFFER_SIZE);
+
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+
+        return body.size() == 0 ? null : body.toString("UTF-8");
+    }
+
+    /* Response body bytes received over the network since the process started */
+    public static long getBytesOnWire() {
+        return sBytesOnWire.get();
+    }
+
+    /* Response body bytes after decompression since the process started */
+    public static long getBytesDecoded() {
+        return sBytesDecoded.get();
+    }
+
+    /**
+     * @return A one line summary of the transfer counters, suitable for logging
+     */
+    public static String describeTransfer() {
+        long onWire = getBytesOnWire();
+        long decoded = getBytesDecoded();
+        return "bytesOnWire=" + onWire + " bytesDecoded=" + decoded
+                + " saved=" + (decoded == 0 ? 0 : Math.round(100.0 * (decoded - onWire) / decoded))
+                + "%";
     }
-}
\ No newline at end of file
+}
@@ -7,7 +7,6 @@ import android.content.Intent;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
@@ -83,9 +82,13 @@ public class NotificationUtils {
             int largeArtResourceId = SunshineWeatherUtils
                     .getLargeArtResourceIdForWeatherCondition(weatherId);
 
-            Bitmap largeIcon = BitmapFactory.decodeResource(
-                    resources,
-                    largeArtResourceId);
+            /* The art is cached at the size of a notification's large icon */
+            Bitmap largeIcon = WeatherArtCache.getInstance(context).get(
+                    largeArtResourceId,
+                    resources.getDimensionPixelSize(
+                            android.R.dimen.notification_large_icon_width),
+                    resources.getDimensionPixelSize(
+                            android.R.dimen.notification_large_icon_height));
 
             String notificationTitle = context.getString(R.string.app_name);
 
@@ -18,7 +18,9 @@ package com.example.android.sunshine.utilities;
 import android.content.ContentValues;
 import android.content.Context;
 import android.support.v4.util.Pair;
+import android.util.JsonReader;
 
+import com.example.android.sunshine.data.ForecastBatch;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
 
@@ -26,6 +28,9 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.util.ArrayList;
 import java.util.List;
@@ -63,6 +68,16 @@ public final class OpenWeatherJsonUtils {
 
     private static final String OWM_MESSAGE_CODE = "cod";
 
+    /* Bits set by the streaming parser as it reads each weather column of a day */
+    private static final int COLUMN_BIT_WEATHER_ID = 1;
+    private static final int COLUMN_BIT_MIN_TEMP = 1 << 1;
+    private static final int COLUMN_BIT_MAX_TEMP = 1 << 2;
+    private static final int COLUMN_BIT_HUMIDITY = 1 << 3;
+    private static final int COLUMN_BIT_PRESSURE = 1 << 4;
+    private static final int COLUMN_BIT_WIND_SPEED = 1 << 5;
+    private static final int COLUMN_BIT_DEGREES = 1 << 6;
+    private static final int ALL_COLUMN_BITS = (1 << 7) - 1;
+
     /**
      * This method parses JSON from a web response and returns an array of Strings
      * describing the weather over various days from the forecast.
@@ -108,7 +123,10 @@ public final class OpenWeatherJsonUtils {
         double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
         double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
 
-        SunshinePreferences.setLocationDetails(context, cityLatitude, cityLongitude);
+        /* The coordinates are only kept for the location picked in the settings */
+        if (context != null) {
+            SunshinePreferences.setLocationDetails(context, cityLatitude, cityLongitude);
+        }
 
         ContentValues[] weatherContentValues = new ContentValues[jsonWeatherArray.length()];
 
@@ -193,4 +211,216 @@ public final class OpenWeatherJsonUtils {
 
         return Pair.create(returnStringArray, weatherContentValues);
     }
-}
\ No newline at end of file
+
+    /**
+     * Streaming counterpart to {@link #getWeatherContentValuesFromJson(Context, String)}. Rather
+     * than reading the whole response into a String and building a JSONObject tree out of it,
+     * this method reads tokens straight off the response stream and creates the ContentValues
+     * for each day as soon as that day's object has been read.
+     * <p/>
+     * The results are identical to those of getWeatherContentValuesFromJson for the same JSON.
+     *
+     * @param context      Used to store the coordinates of the forecast's city, or null if the
+     *                     forecast isn't for the location picked in the settings
+     * @param forecastJson Stream of the JSON response from the server. It is not closed here.
+     *
+     * @return Pair of the wearable data for today and the weather values for every day, or null
+     * if the server returned an error code
+     *
+     * @throws IOException If the stream can't be read or doesn't contain well formed JSON
+     */
+    public static Pair<List<String>, ContentValues[]> getWeatherContentValuesFromStream(
+            Context context, InputStream forecastJson) throws IOException {
+        Pair<List<String>, ForecastBatch> forecast =
+                getForecastBatchFromStream(context, forecastJson);
+        return forecast == null ? null
+                : Pair.create(forecast.first, forecast.second.toContentValues());
+    }
+
+    /**
+     * Does what {@link #getWeatherContentValuesFromStream(Context, InputStream)} does, but reads
+     * the days into a {@link ForecastBatch}, so none of their values are boxed.
+     *
+     * @param context      Used to store the coordinates of the forecast's city, or null if the
+     *                     forecast isn't for the location picked in the settings
+     * @param forecastJson Stream of the JSON response from the server. It is not closed here.
+     *
+     * @return Pair of the wearable data for today and the batch of every day, or null if the
+     * server returned an error code
+     *
+     * @throws IOException If the stream can't be read or doesn't contain well formed JSON
+     */
+    public static Pair<List<String>, ForecastBatch> getForecastBatchFromStream(
+            Context context, InputStream forecastJson) throws IOException {
+
+        List<String> returnStringArray = new ArrayList<>();
+        ForecastBatch forecast = new ForecastBatch();
+
+        int errorCode = HttpURLConnection.HTTP_OK;
+        double[] cityCoord = null;
+        boolean hasList = false;
+
+        /* See getWeatherContentValuesFromJson for why we only look at today's date */
+        long normalizedUtcStartDay = SunshineDateUtils.getNormalizedUtcDateForToday();
+
+        JsonReader reader = new JsonReader(new InputStreamReader(forecastJson, "UTF-8"));
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MESSAGE_CODE.equals(name)) {
+                errorCode = reader.nextInt();
+            } else if (OWM_CITY.equals(name)) {
+                cityCoord = readCityCoord(reader);
+            } else if (OWM_LIST.equals(name)) {
+                hasList = true;
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    long dateTimeMillis = normalizedUtcStartDay
+                            + SunshineDateUtils.DAY_IN_MILLIS * forecast.size();
+                    readDayForecast(reader, dateTimeMillis, forecast);
+
+                    // NEW CODE TO IMPLEMENT WEARABLE WATCH-FACE UPDATE
+                    if (forecast.size() == 1) {
+                        returnStringArray.add(String.valueOf(forecast.getMaxTemp(0)));
+                        returnStringArray.add(String.valueOf(forecast.getMinTemp(0)));
+                        returnStringArray.add(String.valueOf(forecast.getWeatherId(0)));
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        /* The error code can come after the list, so we can only check it once we're done */
+        if (errorCode != HttpURLConnection.HTTP_OK) {
+            return null;
+        }
+
+        if (!hasList || cityCoord == null) {
+            throw new IllegalStateException("Forecast JSON is missing the list or city coord");
+        }
+
+        if (context != null) {
+            SunshinePreferences.setLocationDetails(context, cityCoord[0], cityCoord[1]);
+        }
+
+        return Pair.create(returnStringArray, forecast);
+    }
+
+    /**
+     * Reads the "city" object and returns the latitude and longitude from its "coord" child.
+     */
+    private static double[] readCityCoord(JsonReader reader) throws IOException {
+        double[] coord = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (OWM_COORD.equals(reader.nextName())) {
+                coord = new double[2];
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (OWM_LATITUDE.equals(name)) {
+                        coord[0] = reader.nextDouble();
+                    } else if (OWM_LONGITUDE.equals(name)) {
+                        coord[1] = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return coord;
+    }
+
+    /**
+     * Reads one element of the "list" array and adds that day to the batch.
+     */
+    private static void readDayForecast(JsonReader reader, long dateTimeMillis,
+            ForecastBatch forecast) throws IOException {
+
+        double pressure = 0;
+        int humidity = 0;
+        double windSpeed = 0;
+        double windDirection = 0;
+        int weatherId = 0;
+        double high = 0;
+        double low = 0;
+
+        /* One bit per weather column read so far, see the check at the end */
+        int columnsRead = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_PRESSURE.equals(name)) {
+                pressure = reader.nextDouble();
+                columnsRead |= COLUMN_BIT_PRESSURE;
+            } else if (OWM_HUMIDITY.equals(name)) {
+                /* JSONObject#getInt truncates fractional values, so we do the same */
+                humidity = (int) reader.nextDouble();
+                columnsRead |= COLUMN_BIT_HUMIDITY;
+            } else if (OWM_WINDSPEED.equals(name)) {
+                windSpeed = reader.nextDouble();
+                columnsRead |= COLUMN_BIT_WIND_SPEED;
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                windDirection = reader.nextDouble();
+                columnsRead |= COLUMN_BIT_DEGREES;
+            } else if (OWM_WEATHER.equals(name)) {
+                /* Only the first element of the "weather" array is used */
+                reader.beginArray();
+                if (reader.hasNext()) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (OWM_WEATHER_ID.equals(reader.nextName())) {
+                            weatherId = (int) reader.nextDouble();
+                            columnsRead |= COLUMN_BIT_WEATHER_ID;
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String temperatureName = reader.nextName();
+                    if (OWM_MAX.equals(temperatureName)) {
+                        high = reader.nextDouble();
+                        columnsRead |= COLUMN_BIT_MAX_TEMP;
+                    } else if (OWM_MIN.equals(temperatureName)) {
+                        low = reader.nextDouble();
+                        columnsRead |= COLUMN_BIT_MIN_TEMP;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        /* The DOM parser throws if any of these values is missing, so we do too */
+        if (columnsRead != ALL_COLUMN_BITS) {
+            throw new IllegalStateException("Incomplete day in forecast JSON, read columns 0x"
+                    + Integer.toHexString(columnsRead));
+        }
+
+        forecast.add(dateTimeMillis, weatherId, low, high, humidity, pressure, windSpeed,
+                windDirection);
+    }
+}
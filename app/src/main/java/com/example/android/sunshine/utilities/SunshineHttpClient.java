@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.os.SystemClock;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The one place Sunshine makes HTTP requests from, so that they all share the same timeouts and
+ * the same pool of connections.
+ * <p>
+ * HttpURLConnection keeps a connection alive for the next request to the same server as long as
+ * the response body was read to the end and closed, rather than the connection disconnected. The
+ * syncs of all the locations go to the same weather server, so after the first request they can
+ * skip the DNS lookup and the TCP and TLS handshakes. An {@link Exchange} only disconnects when
+ * it can't hand the connection back in a usable state.
+ * <p>
+ * Every request is timed in four phases, each recorded in its own {@link LatencyHistogram}: the
+ * DNS lookup, the connection, the time to the first byte of the response and the body.
+ */
+public final class SunshineHttpClient {
+
+    static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+    static final int DEFAULT_READ_TIMEOUT_MILLIS = 20 * 1000;
+
+    /*
+     * The read timeout only applies to each read on its own, so a server that sends a byte every
+     * few seconds would never trip it. The whole exchange has to be done within this long.
+     */
+    static final int DEFAULT_CALL_TIMEOUT_MILLIS = 60 * 1000;
+
+    private static SunshineHttpClient sInstance;
+
+    /*
+     * Disconnects requests whose headers haven't arrived by the call deadline. Reading the
+     * headers happens inside HttpURLConnection, where the deadline can't be checked between
+     * reads, so it has to be enforced from another thread.
+     */
+    private static final ScheduledThreadPoolExecutor sWatchdog = createWatchdog();
+
+    private final int mConnectTimeoutMillis;
+    private final int mReadTimeoutMillis;
+    private final int mCallTimeoutMillis;
+
+    private final LatencyHistogram mDnsLatency = new LatencyHistogram("dns");
+    private final LatencyHistogram mConnectLatency = new LatencyHistogram("connect");
+    private final LatencyHistogram mFirstByteLatency = new LatencyHistogram("ttfb");
+    private final LatencyHistogram mBodyLatency = new LatencyHistogram("body");
+
+    /**
+     * @return The client shared by the whole app
+     */
+    public static synchronized SunshineHttpClient getInstance() {
+        if (sInstance == null) {
+            sInstance = new SunshineHttpClient(DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                    DEFAULT_READ_TIMEOUT_MILLIS, DEFAULT_CALL_TIMEOUT_MILLIS);
+        }
+        return sInstance;
+    }
+
+    SunshineHttpClient(int connectTimeoutMillis, int readTimeoutMillis, int callTimeoutMillis) {
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+        mCallTimeoutMillis = callTimeoutMillis;
+    }
+
+    /**
+     * Creates a request with the client's timeouts. Request headers can be added to the returned
+     * connection before it is passed to {@link #execute(HttpURLConnection)}.
+     *
+     * @param url The URL to request
+     * @return The not yet connected request
+     * @throws IOException If the URL can't be opened
+     */
+    HttpURLConnection newConnection(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(mConnectTimeoutMillis);
+        connection.setReadTimeout(mReadTimeoutMillis);
+        return connection;
+    }
+
+    private static ScheduledThreadPoolExecutor createWatchdog() {
+        return new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SunshineHttpClient watchdog");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Sends the request and waits for the status line and headers of the response. If they
+     * haven't arrived within the call timeout, however slowly they are trickling in, the
+     * connection is disconnected and the request fails.
+     *
+     * @param connection A request from {@link #newConnection(URL)}
+     * @return The exchange, which must be closed
+     * @throws IOException If the server can't be reached or doesn't answer in time
+     */
+    Exchange execute(final HttpURLConnection connection) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        Exchange exchange = new Exchange(connection, start + mCallTimeoutMillis);
+
+        final AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> watchdog = sWatchdog.schedule(new Runnable() {
+            @Override
+            public void run() {
+                timedOut.set(true);
+                connection.disconnect();
+            }
+        }, mCallTimeoutMillis, TimeUnit.MILLISECONDS);
+
+        try {
+            /*
+             * HttpURLConnection doesn't tell us how long its lookup took, so we resolve the host
+             * first. The connection's own lookup is then answered by the system's DNS cache.
+             */
+            InetAddress.getAllByName(connection.getURL().getHost());
+            long resolved = SystemClock.elapsedRealtime();
+            mDnsLatency.record(resolved - start);
+
+            connection.connect();
+            long connected = SystemClock.elapsedRealtime();
+            mConnectLatency.record(connected - resolved);
+
+            exchange.mResponseCode = connection.getResponseCode();
+            exchange.mFirstByteTime = SystemClock.elapsedRealtime();
+            mFirstByteLatency.record(exchange.mFirstByteTime - connected);
+        } catch (IOException | RuntimeException e) {
+            connection.disconnect();
+            if (timedOut.get()) {
+                throw new SocketTimeoutException(
+                        "No response within " + mCallTimeoutMillis + " ms");
+            }
+            throw e;
+        } finally {
+            watchdog.cancel(false);
+        }
+
+        /* The body is held to the same deadline by DeadlineInputStream, between its reads */
+        if (timedOut.get() || exchange.mFirstByteTime > exchange.mDeadline) {
+            exchange.close();
+            throw new SocketTimeoutException("No response within " + mCallTimeoutMillis + " ms");
+        }
+        return exchange;
+    }
+
+    public LatencyHistogram getDnsLatency() {
+        return mDnsLatency;
+    }
+
+    public LatencyHistogram getConnectLatency() {
+        return mConnectLatency;
+    }
+
+    public LatencyHistogram getFirstByteLatency() {
+        return mFirstByteLatency;
+    }
+
+    public LatencyHistogram getBodyLatency() {
+        return mBodyLatency;
+    }
+
+    /**
+     * @return A one line summary of the latency histograms, suitable for logging
+     */
+    public String describeLatency() {
+        return mDnsLatency + "; " + mConnectLatency + "; " + mFirstByteLatency + "; "
+                + mBodyLatency;
+    }
+
+    /**
+     * A request whose response headers have arrived. Closing it hands the connection back for
+     * reuse if the body was read to the end, and disconnects it otherwise.
+     */
+    final class Exchange implements Closeable {
+
+        private final HttpURLConnection mConnection;
+        private final long mDeadline;
+        private int mResponseCode;
+        private long mFirstByteTime;
+        private DeadlineInputStream mBody;
+        private boolean mClosed;
+
+        private Exchange(HttpURLConnection connection, long deadline) {
+            mConnection = connection;
+            mDeadline = deadline;
+        }
+
+        HttpURLConnection getConnection() {
+            return mConnection;
+        }
+
+        int getResponseCode() {
+            return mResponseCode;
+        }
+
+        /**
+         * Opens the decoded body of the response. Reading it fails once the exchange has taken
+         * longer than the call timeout.
+         *
+         * @param maxBodyBytes The largest body we are willing to read
+         * @return The body, which is closed along with the exchange
+         * @throws IOException If the response has no readable body or is too large
+         */
+        InputStream openBody(long maxBodyBytes) throws IOException {
+            mBody = new DeadlineInputStream(
+                    NetworkUtils.openResponseBody(mConnection, maxBodyBytes), mDeadline);
+            return mBody;
+        }
+
+        @Override
+        public void close() {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+
+            if (mBody != null) {
+                mBodyLatency.record(SystemClock.elapsedRealtime() - mFirstByteTime);
+            }
+
+            boolean reusable;
+            if (mBody != null) {
+                reusable = mBody.isExhausted();
+            } else {
+                /* Responses without a body leave the connection ready for the next request */
+                reusable = mResponseCode == HttpURLConnection.HTTP_NOT_MODIFIED
+                        || mResponseCode == HttpURLConnection.HTTP_NO_CONTENT;
+            }
+
+            if (reusable) {
+                try {
+                    if (mBody != null) mBody.close();
+                    return;
+                } catch (IOException e) {
+                    /* Fall through and make sure the connection is gone */
+                }
+            }
+            mConnection.disconnect();
+        }
+    }
+
+    /**
+     * Fails reads once the deadline has passed, and notices when the end of the stream is
+     * reached.
+     */
+    private static final class DeadlineInputStream extends FilterInputStream {
+
+        private final long mDeadline;
+        private boolean mExhausted;
+
+        DeadlineInputStream(InputStream in, long deadline) {
+            super(in);
+            mDeadline = deadline;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkDeadline();
+            int b = super.read();
+            if (b == -1) mExhausted = true;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            checkDeadline();
+            int read = super.read(buffer, offset, count);
+            if (read == -1) mExhausted = true;
+            return read;
+        }
+
+        @Override
+        public long skip(long byteCount) throws IOException {
+            checkDeadline();
+            return super.skip(byteCount);
+        }
+
+        boolean isExhausted() {
+            return mExhausted;
+        }
+
+        private void checkDeadline() throws SocketTimeoutException {
+            if (SystemClock.elapsedRealtime() > mDeadline) {
+                throw new SocketTimeoutException("Response body took too long");
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.support.v4.content.ContextCompat;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory cache of the weather art, rendered at the exact size it is shown at. The same
+ * few icons are shown over and over by the forecast list, the detail screen and the
+ * notification, so after the first time each of them is shown, showing it again costs a lookup
+ * rather than loading and drawing it.
+ * <p>
+ * Entries are keyed by resource id and size, and the cache is bounded by the bytes its bitmaps
+ * take rather than by their number. It is emptied, or halved, when the system asks the app to
+ * trim its memory.
+ */
+public final class WeatherArtCache {
+
+    private static final String TAG = WeatherArtCache.class.getSimpleName();
+
+    /* Share of the app's memory class the cache may use */
+    private static final int MEMORY_CLASS_DIVISOR = 32;
+
+    private static WeatherArtCache sInstance;
+
+    private final Context mContext;
+    private final LruCache<Long, Bitmap> mBitmaps;
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mDecodeNanos = new AtomicLong();
+
+    /**
+     * Returns the cache of the app, sized after the memory class of the device. The cache is
+     * trimmed along with the rest of the app's memory.
+     *
+     * @param context Used to read the resources and the memory class
+     * @return The cache shared by the whole app
+     */
+    public static synchronized WeatherArtCache getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            ActivityManager activityManager =
+                    (ActivityManager) appContext.getSystemService(Context.ACTIVITY_SERVICE);
+            int maxBytes = activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_CLASS_DIVISOR;
+
+            sInstance = new WeatherArtCache(appContext, maxBytes);
+            appContext.registerComponentCallbacks(new ComponentCallbacks2() {
+                @Override
+                public void onTrimMemory(int level) {
+                    sInstance.trimMemory(level);
+                }
+
+                @Override
+                public void onLowMemory() {
+                    sInstance.trimMemory(TRIM_MEMORY_COMPLETE);
+                }
+
+                @Override
+                public void onConfigurationChanged(Configuration newConfig) {
+                }
+            });
+        }
+        return sInstance;
+    }
+
+    WeatherArtCache(Context context, int maxBytes) {
+        mContext = context.getApplicationContext();
+        mBitmaps = new LruCache<Long, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Long key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Returns the art for a resource at the given size in pixels, rendering it if it isn't
+     * cached yet. Can be called from any thread.
+     *
+     * @param resourceId The drawable to show, from SunshineWeatherUtils
+     * @param width      Width it is shown at, in pixels
+     * @param height     Height it is shown at, in pixels
+     * @return The art, exactly width by height pixels, or null if the resource couldn't be
+     * loaded. It is shared, so it must not be changed or recycled.
+     */
+    public Bitmap get(int resourceId, int width, int height) {
+        Long key = ((long) resourceId << 32) | ((long) (width & 0xffff) << 16) | (height & 0xffff);
+
+        Bitmap bitmap = mBitmaps.get(key);
+        if (bitmap != null) {
+            mHitCount.incrementAndGet();
+            return bitmap;
+        }
+
+        /* Two threads can both miss the same key; they render the same art, so either will do */
+        long start = System.nanoTime();
+        bitmap = render(resourceId, width, height);
+        mDecodeNanos.addAndGet(System.nanoTime() - start);
+        mMissCount.incrementAndGet();
+
+        if (bitmap != null) {
+            mBitmaps.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Draws a drawable resource onto a bitmap of the target size. The art is made of vector
+     * drawables, which BitmapFactory can't decode on devices that load them as vectors, so they
+     * are drawn rather than decoded; bitmap resources are drawn the same way.
+     */
+    private Bitmap render(int resourceId, int width, int height) {
+        Drawable drawable;
+        try {
+            drawable = ContextCompat.getDrawable(mContext, resourceId);
+        } catch (Resources.NotFoundException e) {
+            drawable = null;
+        }
+        if (drawable == null || width <= 0 || height <= 0) {
+            Log.w(TAG, "Couldn't load weather art " + resourceId);
+            return null;
+        }
+
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawable.setBounds(0, 0, width, height);
+        drawable.draw(canvas);
+        return bitmap;
+    }
+
+    /**
+     * Gives memory back when the system asks for it. In the background, or when memory is
+     * critically low, the whole cache goes; while running low, it is halved.
+     *
+     * @param level The level passed to ComponentCallbacks2#onTrimMemory
+     */
+    void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mBitmaps.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mBitmaps.trimToSize(mBitmaps.maxSize() / 2);
+        }
+    }
+
+    /* Number of lookups that found their art in the cache */
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    /* Number of lookups that had to decode their art */
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    /* Bytes taken by the cached bitmaps */
+    public int getSizeBytes() {
+        return mBitmaps.size();
+    }
+
+    /**
+     * Estimates the decode time saved by the cache, assuming every hit would have taken as long
+     * to decode as the misses took on average.
+     *
+     * @return The decode time saved, in milliseconds
+     */
+    public long getDecodeMillisSaved() {
+        long missCount = getMissCount();
+        if (missCount == 0) {
+            return 0;
+        }
+        return mDecodeNanos.get() / missCount * getHitCount() / 1000000;
+    }
+
+    @Override
+    public String toString() {
+        long lookups = getHitCount() + getMissCount();
+        return "hits=" + getHitCount() + " misses=" + getMissCount()
+                + " hitRate=" + (lookups == 0 ? 0 : Math.round(100.0 * getHitCount() / lookups))
+                + "% decodeMillisSaved=" + getDecodeMillisSaved()
+                + " bytes=" + getSizeBytes() + "/" + mBitmaps.maxSize();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import com.example.android.sunshine.BuildConfig;
+import com.example.android.sunshine.R;
+
+/**
+ * Everything we display for an OpenWeatherMap weather condition, in arrays indexed by the
+ * condition ID. See http://openweathermap.org/weather-conditions for a list of all IDs.
+ * <p>
+ * The tables are built once, when the class is loaded, so looking up a condition while binding a
+ * row, building a notification or sending the forecast to the watch is a bounds check and an
+ * array read instead of a walk through a chain of ranges.
+ * <p>
+ * An entry of 0 means that the condition is unknown. IDs outside of the table are unknown as
+ * well.
+ */
+final class WeatherConditionTable {
+
+    /* OpenWeatherMap condition IDs are all below 1000 */
+    static final int MAX_WEATHER_ID = 1000;
+
+    private static final int TABLE_SIZE = MAX_WEATHER_ID + 1;
+
+    private static final int[] SMALL_ART = new int[TABLE_SIZE];
+    private static final int[] LARGE_ART = new int[TABLE_SIZE];
+    private static final int[] DESCRIPTION = new int[TABLE_SIZE];
+
+    static {
+        /*
+         * Ranges are listed in the order of the original if/else chain. An ID that falls into more
+         * than one range keeps the first one, so 761 (dust) is drawn as fog even though it is also
+         * listed with the storms.
+         */
+        putArt(200, 232, R.drawable.ic_storm, R.drawable.art_storm);
+        putArt(300, 321, R.drawable.ic_light_rain, R.drawable.art_light_rain);
+        putArt(500, 504, R.drawable.ic_rain, R.drawable.art_rain);
+        putArt(511, 511, R.drawable.ic_snow, R.drawable.art_snow);
+        putArt(520, 531, R.drawable.ic_rain, R.drawable.art_rain);
+        putArt(600, 622, R.drawable.ic_snow, R.drawable.art_snow);
+        putArt(701, 761, R.drawable.ic_fog, R.drawable.art_fog);
+        putArt(761, 761, R.drawable.ic_storm, R.drawable.art_storm);
+        putArt(771, 771, R.drawable.ic_storm, R.drawable.art_storm);
+        putArt(781, 781, R.drawable.ic_storm, R.drawable.art_storm);
+        putArt(800, 800, R.drawable.ic_clear, R.drawable.art_clear);
+        putArt(801, 801, R.drawable.ic_light_clouds, R.drawable.art_light_clouds);
+        putArt(802, 804, R.drawable.ic_cloudy, R.drawable.art_clouds);
+        putArt(900, 906, R.drawable.ic_storm, R.drawable.art_storm);
+        putArt(958, 962, R.drawable.ic_storm, R.drawable.art_storm);
+        putArt(951, 957, R.drawable.ic_clear, R.drawable.art_clear);
+
+        putDescription(200, 232, R.string.condition_2xx);
+        putDescription(300, 321, R.string.condition_3xx);
+        putDescription(500, R.string.condition_500);
+        putDescription(501, R.string.condition_501);
+        putDescription(502, R.string.condition_502);
+        putDescription(503, R.string.condition_503);
+        putDescription(504, R.string.condition_504);
+        putDescription(511, R.string.condition_511);
+        putDescription(520, R.string.condition_520);
+        putDescription(531, R.string.condition_531);
+        putDescription(600, R.string.condition_600);
+        putDescription(601, R.string.condition_601);
+        putDescription(602, R.string.condition_602);
+        putDescription(611, R.string.condition_611);
+        putDescription(612, R.string.condition_612);
+        putDescription(615, R.string.condition_615);
+        putDescription(616, R.string.condition_616);
+        putDescription(620, R.string.condition_620);
+        putDescription(621, R.string.condition_621);
+        putDescription(622, R.string.condition_622);
+        putDescription(701, R.string.condition_701);
+        putDescription(711, R.string.condition_711);
+        putDescription(721, R.string.condition_721);
+        putDescription(731, R.string.condition_731);
+        putDescription(741, R.string.condition_741);
+        putDescription(751, R.string.condition_751);
+        putDescription(761, R.string.condition_761);
+        putDescription(762, R.string.condition_762);
+        putDescription(771, R.string.condition_771);
+        putDescription(781, R.string.condition_781);
+        putDescription(800, R.string.condition_800);
+        putDescription(801, R.string.condition_801);
+        putDescription(802, R.string.condition_802);
+        putDescription(803, R.string.condition_803);
+        putDescription(804, R.string.condition_804);
+        putDescription(900, R.string.condition_900);
+        putDescription(901, R.string.condition_901);
+        putDescription(902, R.string.condition_902);
+        putDescription(903, R.string.condition_903);
+        putDescription(904, R.string.condition_904);
+        putDescription(905, R.string.condition_905);
+        putDescription(906, R.string.condition_906);
+        putDescription(951, R.string.condition_951);
+        putDescription(952, R.string.condition_952);
+        putDescription(953, R.string.condition_953);
+        putDescription(954, R.string.condition_954);
+        putDescription(955, R.string.condition_955);
+        putDescription(956, R.string.condition_956);
+        putDescription(957, R.string.condition_957);
+        putDescription(958, R.string.condition_958);
+        putDescription(959, R.string.condition_959);
+        putDescription(960, R.string.condition_960);
+        putDescription(961, R.string.condition_961);
+        putDescription(962, R.string.condition_962);
+
+        if (BuildConfig.DEBUG) {
+            validate();
+        }
+    }
+
+    private WeatherConditionTable() {
+    }
+
+    /**
+     * @param weatherId OpenWeatherMap condition ID
+     * @return Small art drawable for the condition, or 0 if the condition is unknown
+     */
+    static int getSmallArt(int weatherId) {
+        return isInTable(weatherId) ? SMALL_ART[weatherId] : 0;
+    }
+
+    /**
+     * @param weatherId OpenWeatherMap condition ID
+     * @return Large art drawable for the condition, or 0 if the condition is unknown
+     */
+    static int getLargeArt(int weatherId) {
+        return isInTable(weatherId) ? LARGE_ART[weatherId] : 0;
+    }
+
+    /**
+     * @param weatherId OpenWeatherMap condition ID
+     * @return String resource describing the condition, or 0 if the condition is unknown
+     */
+    static int getDescription(int weatherId) {
+        return isInTable(weatherId) ? DESCRIPTION[weatherId] : 0;
+    }
+
+    private static boolean isInTable(int weatherId) {
+        return weatherId >= 0 && weatherId <= MAX_WEATHER_ID;
+    }
+
+    private static void putArt(int firstId, int lastId, int smallArt, int largeArt) {
+        for (int id = firstId; id <= lastId; id++) {
+            if (SMALL_ART[id] == 0) {
+                SMALL_ART[id] = smallArt;
+                LARGE_ART[id] = largeArt;
+            }
+        }
+    }
+
+    private static void putDescription(int firstId, int lastId, int description) {
+        for (int id = firstId; id <= lastId; id++) {
+            putDescription(id, description);
+        }
+    }
+
+    private static void putDescription(int id, int description) {
+        if (DESCRIPTION[id] != 0) {
+            throw new IllegalStateException("Condition " + id + " is described twice");
+        }
+        DESCRIPTION[id] = description;
+    }
+
+    /**
+     * Checks, in debug builds, that the two art tables agree with each other: a condition either
+     * has a small icon and a large icon, or neither of them.
+     */
+    private static void validate() {
+        for (int id = 0; id < TABLE_SIZE; id++) {
+            if ((SMALL_ART[id] != 0) != (LARGE_ART[id] != 0)) {
+                throw new IllegalStateException("Incomplete art for condition " + id);
+            }
+        }
+    }
+}
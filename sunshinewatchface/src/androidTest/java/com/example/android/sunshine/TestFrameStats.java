@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks the percentiles and missed deadlines counted by {@link FrameStats}, and that the update
+ * timer of the watch face is aligned to the start of the minute.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestFrameStats {
+
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    @Test
+    public void testUpdatesAreAlignedToTheMinute() {
+        long minuteStart = 1473000000000L - 1473000000000L % MINUTE_MILLIS;
+
+        assertEquals(MINUTE_MILLIS,
+                SunshineWatchFace.getDelayToNextUpdate(minuteStart, MINUTE_MILLIS));
+        assertEquals(1,
+                SunshineWatchFace.getDelayToNextUpdate(minuteStart - 1, MINUTE_MILLIS));
+        assertEquals(MINUTE_MILLIS - 12345, SunshineWatchFace.getDelayToNextUpdate(
+                minuteStart + 12345, MINUTE_MILLIS));
+    }
+
+    @Test
+    public void testPercentilesOfRecentFrames() {
+        FrameStats stats = new FrameStats();
+        assertEquals(0, stats.getDrawNanosPercentile(50));
+
+        /* More frames than are kept, so only the last SAMPLE_COUNT count: 1 to SAMPLE_COUNT */
+        for (int i = -FrameStats.SAMPLE_COUNT + 1; i <= FrameStats.SAMPLE_COUNT; i++) {
+            stats.recordFrame(i);
+        }
+
+        assertEquals(2 * FrameStats.SAMPLE_COUNT, stats.getFrameCount());
+        assertEquals(FrameStats.SAMPLE_COUNT / 2, stats.getDrawNanosPercentile(50));
+        assertEquals(FrameStats.SAMPLE_COUNT, stats.getDrawNanosPercentile(100));
+        assertEquals(1, stats.getDrawNanosPercentile(0));
+    }
+
+    @Test
+    public void testLateWakeUpsMissTheirDeadline() {
+        FrameStats stats = new FrameStats();
+
+        stats.recordWakeUp(MINUTE_MILLIS, MINUTE_MILLIS + 3);
+        stats.recordWakeUp(2 * MINUTE_MILLIS, 2 * MINUTE_MILLIS + FrameStats.DEADLINE_SLACK_MILLIS);
+        stats.recordWakeUp(3 * MINUTE_MILLIS, 3 * MINUTE_MILLIS + 1500);
+
+        assertEquals(1, stats.getMissedDeadlineCount());
+
+        StringWriter dump = new StringWriter();
+        stats.dump(new PrintWriter(dump), "");
+        assertTrue(dump.toString(), dump.toString().contains("missedDeadlines=1"));
+        assertTrue(dump.toString(), dump.toString().contains("maxLatenessMillis=1500"));
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Draws frames with {@link WatchFaceRenderer} onto a canvas that counts the draw operations it
+ * is given, and checks that its cached layers are only redrawn when the weather or the day
+ * change. For comparison, the frame the watch face used to draw, with every element
+ * drawn on every frame, is counted and timed as well, and ambient frames are checked for how
+ * many draw calls they make and how many pixels they light.
+ * <p>
+ * The results are written to logcat under the tag of this class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWatchFaceRenderer {
+
+    private static final String TAG = TestWatchFaceRenderer.class.getSimpleName();
+
+    /* Two hours of frames at the interactive rate of one per second */
+    private static final int FRAME_COUNT = 7200;
+
+    private static final int SIZE = 320;
+
+    /* Clearing to black, the three texts and the outline of the icon */
+    private static final int AMBIENT_DRAW_COUNT = 5;
+
+    /* Ambient frames are drawn once a minute; this is a few hours of them */
+    private static final int AMBIENT_FRAME_COUNT = 240;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+    private final Rect mBounds = new Rect(0, 0, SIZE, SIZE);
+
+    private Calendar mCalendar;
+    private WatchFaceTimeFormatter mFormatter;
+    private Paint mBackgroundPaint;
+    private Paint mTextPaint;
+    private WatchFaceRenderer mRenderer;
+    private RecordingCanvas mCanvas;
+
+    @Before
+    public void setUp() {
+        mCalendar = Calendar.getInstance();
+        mFormatter = new WatchFaceTimeFormatter(mContext);
+
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(Color.BLUE);
+        mTextPaint = new Paint();
+        mTextPaint.setColor(Color.WHITE);
+        mTextPaint.setTextSize(40);
+        mTextPaint.setAntiAlias(true);
+
+        mRenderer = new WatchFaceRenderer(mCalendar, mFormatter, mBackgroundPaint, mTextPaint,
+                mTextPaint, mTextPaint);
+        mRenderer.setOffsets(40, 80);
+        mCanvas = new RecordingCanvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void testLayersAreOnlyRebuiltWhenTheirInputsChange() {
+        WeatherState sunny = WeatherState.create(mContext, "25° / 16°", R.drawable.ic_clear);
+        WeatherState rainy = WeatherState.create(mContext, "18° / 12°", R.drawable.ic_rain);
+
+        /* An hour before midnight, so the two hours of frames cross into the next day */
+        Calendar start = Calendar.getInstance();
+        start.set(2016, Calendar.SEPTEMBER, 4, 23, 0, 0);
+        long startMillis = start.getTimeInMillis();
+
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            WeatherState weather = i < FRAME_COUNT / 2 ? sunny : rainy;
+            boolean ambient = i >= FRAME_COUNT - 60;
+            mRenderer.draw(mCanvas, mBounds, weather, ambient,
+                    startMillis + TimeUnit.SECONDS.toMillis(i));
+        }
+
+        // Once at first and once for the new weather; ambient frames don't use the layers
+        assertEquals(2, mRenderer.getStaticLayerBuildCount());
+        // Once at first and once at midnight
+        assertEquals(2, mRenderer.getDateLayerBuildCount());
+        assertEquals("A frame drew more than it needed to",
+                3 * (FRAME_COUNT - 60) + AMBIENT_DRAW_COUNT * 60, mCanvas.getDrawCount());
+    }
+
+    @Test
+    public void testInvalidatingRebuildsBothLayers() {
+        WeatherState sunny = WeatherState.create(mContext, "25° / 16°", R.drawable.ic_clear);
+        long now = System.currentTimeMillis();
+
+        mRenderer.draw(mCanvas, mBounds, sunny, false, now);
+        mRenderer.draw(mCanvas, mBounds, sunny, false, now);
+        mRenderer.invalidateLayers();
+        mRenderer.draw(mCanvas, mBounds, sunny, false, now);
+
+        assertEquals(2, mRenderer.getStaticLayerBuildCount());
+        assertEquals(2, mRenderer.getDateLayerBuildCount());
+    }
+
+    /**
+     * Every text has to be centered, and measured only when it changes: the time once a
+     * minute, the date and the temperature once.
+     */
+    @Test
+    public void testTextIsCenteredAndMeasuredOncePerChange() {
+        WeatherState sunny = WeatherState.create(mContext, "25° / 16°", R.drawable.ic_clear);
+        Calendar start = Calendar.getInstance();
+        start.set(2016, Calendar.SEPTEMBER, 4, 8, 0, 0);
+        long startMillis = start.getTimeInMillis();
+
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            mRenderer.draw(mCanvas, mBounds, sunny, false,
+                    startMillis + TimeUnit.SECONDS.toMillis(i));
+        }
+
+        WatchFaceLayout layout = mRenderer.getLayout();
+        assertEquals(FRAME_COUNT / 60 + 2, layout.getMeasureCount());
+
+        char[] time = mFormatter.getTimeChars();
+        int timeLength = mFormatter.getTimeLength();
+        assertEquals(SIZE, 2 * layout.getTimeX(time, timeLength)
+                + mTextPaint.measureText(time, 0, timeLength), 0.01f);
+        assertEquals(SIZE, 2 * layout.getTempX(sunny.getTempText())
+                + mTextPaint.measureText(sunny.getTempText()), 0.01f);
+    }
+
+    /**
+     * Frames that don't rebuild a layer must not allocate, like the frames of the watch face
+     * before it was split into layers.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testDrawLoopDoesNotAllocate() {
+        WeatherState sunny = WeatherState.create(mContext, "25° / 16°", R.drawable.ic_clear);
+        Calendar start = Calendar.getInstance();
+        start.set(2016, Calendar.SEPTEMBER, 4, 8, 0, 0);
+        long startMillis = start.getTimeInMillis();
+
+        /* Warm up, so that the layers and anything created lazily on the first frame aren't
+           counted */
+        for (int i = 0; i < 120; i++) {
+            mRenderer.draw(mCanvas, mBounds, sunny, false,
+                    startMillis + TimeUnit.SECONDS.toMillis(i));
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 120; i < FRAME_COUNT; i++) {
+            mRenderer.draw(mCanvas, mBounds, sunny, false,
+                    startMillis + TimeUnit.SECONDS.toMillis(i));
+        }
+        Debug.stopAllocCounting();
+
+        assertEquals("The draw loop allocated", 0, Debug.getThreadAllocCount());
+    }
+
+    /**
+     * Draws the same frames directly, the way onDraw used to, and through the renderer, and
+     * compares the draw operations and the time per frame.
+     */
+    @Test
+    public void benchmarkRenderer() {
+        WeatherState sunny = WeatherState.create(mContext, "25° / 16°", R.drawable.ic_clear);
+        long startMillis = System.currentTimeMillis();
+
+        RecordingCanvas directCanvas =
+                new RecordingCanvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        long directStart = System.nanoTime();
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            drawDirectFrame(directCanvas, sunny, startMillis + TimeUnit.SECONDS.toMillis(i));
+        }
+        long directNanos = System.nanoTime() - directStart;
+
+        long layeredStart = System.nanoTime();
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            mRenderer.draw(mCanvas, mBounds, sunny, false,
+                    startMillis + TimeUnit.SECONDS.toMillis(i));
+        }
+        long layeredNanos = System.nanoTime() - layeredStart;
+
+        Log.i(TAG, String.format("%d frames: direct %.2f ops %.1f us, layered %.2f ops %.1f us"
+                        + " per frame, %d layer rebuilds",
+                FRAME_COUNT,
+                directCanvas.getDrawCount() / (double) FRAME_COUNT,
+                directNanos / 1000.0 / FRAME_COUNT,
+                mCanvas.getDrawCount() / (double) FRAME_COUNT,
+                layeredNanos / 1000.0 / FRAME_COUNT,
+                mRenderer.getStaticLayerBuildCount() + mRenderer.getDateLayerBuildCount()));
+    }
+
+    /**
+     * Draws an ambient frame for every minute of a few hours with burn-in protection on, and
+     * counts the draw calls and the pixels each frame lights, which is what an ambient frame
+     * costs in battery. An interactive frame is counted for comparison.
+     */
+    @Test
+    public void benchmarkAmbientFrames() {
+        WeatherState sunny = WeatherState.create(mContext, "25° / 16°", R.drawable.ic_clear);
+        long startMillis = System.currentTimeMillis();
+
+        mRenderer.draw(mCanvas, mBounds, sunny, false, startMillis);
+        int interactiveLitPixels = mCanvas.countLitPixels();
+
+        mRenderer.setBurnInProtection(true);
+        long litPixels = 0;
+        int maxLitPixels = 0;
+        int drawCountBefore = mCanvas.getDrawCount();
+        for (int i = 0; i < AMBIENT_FRAME_COUNT; i++) {
+            mRenderer.draw(mCanvas, mBounds, sunny, true,
+                    startMillis + TimeUnit.MINUTES.toMillis(i));
+            int frameLitPixels = mCanvas.countLitPixels();
+            litPixels += frameLitPixels;
+            maxLitPixels = Math.max(maxLitPixels, frameLitPixels);
+        }
+        int ambientDrawCount = mCanvas.getDrawCount() - drawCountBefore;
+
+        assertEquals(AMBIENT_DRAW_COUNT * AMBIENT_FRAME_COUNT, ambientDrawCount);
+        assertTrue("An ambient frame lit " + maxLitPixels + " pixels",
+                maxLitPixels < SIZE * SIZE / 10);
+
+        Log.i(TAG, String.format("Ambient: %.1f draw calls, %.2f%% of pixels lit on average,"
+                        + " %.2f%% at most, interactive: %.2f%% of pixels lit",
+                ambientDrawCount / (double) AMBIENT_FRAME_COUNT,
+                100.0 * litPixels / AMBIENT_FRAME_COUNT / (SIZE * SIZE),
+                100.0 * maxLitPixels / (SIZE * SIZE),
+                100.0 * interactiveLitPixels / (SIZE * SIZE)));
+    }
+
+    /* What onDraw did before the renderer: every element, every frame */
+    private void drawDirectFrame(Canvas canvas, WeatherState weatherState, long now) {
+        mCalendar.setTimeInMillis(now);
+        mFormatter.format(mCalendar);
+
+        canvas.drawRect(0, 0, SIZE, SIZE, mBackgroundPaint);
+        canvas.drawText(mFormatter.getTimeChars(), 0, mFormatter.getTimeLength(),
+                SIZE / 2.8f, SIZE / 3f, mTextPaint);
+        canvas.drawText(mFormatter.getDateChars(), 0, mFormatter.getDateLength(),
+                SIZE / 8.5f, SIZE / 3f + 40, mTextPaint);
+        canvas.drawText(weatherState.getTempText(), SIZE / 3.1f, SIZE / 3f + 80, mTextPaint);
+        canvas.drawBitmap(weatherState.getWeatherIcon(),
+                (SIZE - weatherState.getWeatherIcon().getWidth()) / 2f, SIZE * .65f, null);
+    }
+
+    /**
+     * Canvas that counts the draw operations the watch face uses before drawing them, and the
+     * pixels that end up lit.
+     */
+    private static final class RecordingCanvas extends Canvas {
+
+        private final Bitmap mBitmap;
+        private final int[] mPixels;
+        private int mDrawCount;
+
+        RecordingCanvas(Bitmap bitmap) {
+            super(bitmap);
+            mBitmap = bitmap;
+            mPixels = new int[bitmap.getWidth() * bitmap.getHeight()];
+        }
+
+        int getDrawCount() {
+            return mDrawCount;
+        }
+
+        /* Number of pixels that aren't black */
+        int countLitPixels() {
+            int width = mBitmap.getWidth();
+            mBitmap.getPixels(mPixels, 0, width, 0, 0, width, mBitmap.getHeight());
+            int lit = 0;
+            for (int pixel : mPixels) {
+                if ((pixel & 0xffffff) != 0) {
+                    lit++;
+                }
+            }
+            return lit;
+        }
+
+        @Override
+        public void drawColor(int color) {
+            mDrawCount++;
+            super.drawColor(color);
+        }
+
+        @Override
+        public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+            mDrawCount++;
+            super.drawRect(left, top, right, bottom, paint);
+        }
+
+        @Override
+        public void drawText(char[] text, int index, int count, float x, float y, Paint paint) {
+            mDrawCount++;
+            super.drawText(text, index, count, x, y, paint);
+        }
+
+        @Override
+        public void drawText(String text, float x, float y, Paint paint) {
+            mDrawCount++;
+            super.drawText(text, x, y, paint);
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+            mDrawCount++;
+            super.drawBitmap(bitmap, left, top, paint);
+        }
+    }
+}
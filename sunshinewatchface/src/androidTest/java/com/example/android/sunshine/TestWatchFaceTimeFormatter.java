@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Checks that {@link WatchFaceTimeFormatter} produces the same text as the SimpleDateFormat
+ * patterns the watch face used to create on every frame, and that a frame drawn with it doesn't
+ * allocate.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWatchFaceTimeFormatter {
+
+    /* Two hours of frames at the interactive rate of one per second */
+    private static final int FRAME_COUNT = 7200;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private WatchFaceTimeFormatter mFormatter;
+    private Calendar mCalendar;
+
+    @Before
+    public void setUp() {
+        mFormatter = new WatchFaceTimeFormatter(mContext);
+        mCalendar = Calendar.getInstance();
+    }
+
+    @Test
+    public void testFormatMatchesSimpleDateFormat() {
+        String hourFormat = mFormatter.is24HourFormat() ? "H" : "h";
+        SimpleDateFormat timeFormat = new SimpleDateFormat(hourFormat + ":mm", Locale.getDefault());
+        SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, MMM d yyyy", Locale.getDefault());
+
+        /* Every hour of a day, on a date with single and double digit fields */
+        mCalendar.set(2016, Calendar.SEPTEMBER, 4, 0, 7, 0);
+        for (int hour = 0; hour < 24; hour++) {
+            mCalendar.set(Calendar.HOUR_OF_DAY, hour);
+            mCalendar.set(Calendar.DAY_OF_MONTH, 4 + hour);
+            mFormatter.format(mCalendar);
+
+            assertEquals(timeFormat.format(mCalendar.getTime()), new String(
+                    mFormatter.getTimeChars(), 0, mFormatter.getTimeLength()));
+            assertEquals(dateFormat.format(mCalendar.getTime()), new String(
+                    mFormatter.getDateChars(), 0, mFormatter.getDateLength()));
+        }
+    }
+
+    /**
+     * Runs what onDraw does for every frame: setting the calendar, formatting it and drawing the
+     * text and the icon, and counts the allocations made on this thread while doing so.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testDrawLoopDoesNotAllocate() {
+        Bitmap frame = Bitmap.createBitmap(320, 320, Bitmap.Config.ARGB_8888);
+        Bitmap icon = Bitmap.createBitmap(48, 48, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(frame);
+        Paint paint = new Paint();
+        paint.setColor(Color.WHITE);
+        paint.setTextSize(40);
+        String tempText = "25° / 16°";
+
+        long start = System.currentTimeMillis();
+
+        /* Warm up, so that anything created lazily on the first frame isn't counted */
+        drawFrames(canvas, paint, icon, tempText, start, 120);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        drawFrames(canvas, paint, icon, tempText, start, FRAME_COUNT);
+        Debug.stopAllocCounting();
+
+        assertEquals("The draw loop allocated", 0, Debug.getThreadAllocCount());
+    }
+
+    private void drawFrames(Canvas canvas, Paint paint, Bitmap icon, String tempText, long start,
+            int frameCount) {
+        for (int i = 0; i < frameCount; i++) {
+            mCalendar.setTimeInMillis(start + TimeUnit.SECONDS.toMillis(i));
+            mFormatter.format(mCalendar);
+
+            canvas.drawColor(Color.BLACK);
+            canvas.drawText(mFormatter.getTimeChars(), 0, mFormatter.getTimeLength(),
+                    80, 100, paint);
+            canvas.drawText(mFormatter.getDateChars(), 0, mFormatter.getDateLength(),
+                    40, 150, paint);
+            canvas.drawText(tempText, 60, 200, paint);
+            canvas.drawBitmap(icon, 136, 220, null);
+        }
+    }
+}
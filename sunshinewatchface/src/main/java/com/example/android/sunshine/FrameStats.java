@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * Frame timing of the watch face: how many frames were drawn, how long the most recent ones
+ * took to draw, and how often the update timer woke up too late to show the new minute on
+ * time. The numbers are printed by {@link #dump(PrintWriter, String)}, which is reached through
+ * "adb shell dumpsys activity service SunshineWatchFace".
+ * <p>
+ * Recording doesn't allocate, so it can be done on every frame.
+ */
+public class FrameStats {
+
+    /* Draw times of this many of the most recent frames are kept for the percentiles */
+    static final int SAMPLE_COUNT = 256;
+
+    /* A wake up later than this after the time it was scheduled for missed its deadline */
+    static final long DEADLINE_SLACK_MILLIS = 50;
+
+    private final long[] mDrawNanos = new long[SAMPLE_COUNT];
+    private int mFrameCount;
+
+    private int mWakeUpCount;
+    private int mMissedDeadlineCount;
+    private long mMaxLatenessMillis;
+
+    /**
+     * Records a frame.
+     *
+     * @param drawNanos How long the frame took to draw
+     */
+    public synchronized void recordFrame(long drawNanos) {
+        mDrawNanos[mFrameCount % SAMPLE_COUNT] = drawNanos;
+        mFrameCount++;
+    }
+
+    /**
+     * Records a wake up of the update timer.
+     *
+     * @param scheduledMillis The wall clock time it was scheduled for
+     * @param actualMillis    The wall clock time it happened at
+     */
+    public synchronized void recordWakeUp(long scheduledMillis, long actualMillis) {
+        long latenessMillis = actualMillis - scheduledMillis;
+        mWakeUpCount++;
+        mMaxLatenessMillis = Math.max(mMaxLatenessMillis, latenessMillis);
+        if (latenessMillis > DEADLINE_SLACK_MILLIS) {
+            mMissedDeadlineCount++;
+        }
+    }
+
+    public synchronized int getFrameCount() {
+        return mFrameCount;
+    }
+
+    public synchronized int getMissedDeadlineCount() {
+        return mMissedDeadlineCount;
+    }
+
+    /**
+     * Returns a percentile of the draw times of the most recent frames.
+     *
+     * @param percentile From 0 to 100
+     * @return The draw time, in nanoseconds, or 0 if no frame was drawn yet
+     */
+    public synchronized long getDrawNanosPercentile(int percentile) {
+        int sampleCount = Math.min(mFrameCount, SAMPLE_COUNT);
+        if (sampleCount == 0) {
+            return 0;
+        }
+
+        long[] sorted = Arrays.copyOf(mDrawNanos, sampleCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sampleCount) - 1;
+        return sorted[Math.max(0, Math.min(index, sampleCount - 1))];
+    }
+
+    /**
+     * Prints the stats.
+     *
+     * @param writer Where to print them
+     * @param prefix Printed at the start of every line
+     */
+    public synchronized void dump(PrintWriter writer, String prefix) {
+        writer.print(prefix);
+        writer.println("frames=" + mFrameCount);
+        writer.print(prefix);
+        writer.println(String.format("drawMillis p50=%.2f p90=%.2f p99=%.2f max=%.2f",
+                getDrawNanosPercentile(50) / 1e6,
+                getDrawNanosPercentile(90) / 1e6,
+                getDrawNanosPercentile(99) / 1e6,
+                getDrawNanosPercentile(100) / 1e6));
+        writer.print(prefix);
+        writer.println("wakeUps=" + mWakeUpCount + " missedDeadlines=" + mMissedDeadlineCount
+                + " maxLatenessMillis=" + mMaxLatenessMillis);
+    }
+}
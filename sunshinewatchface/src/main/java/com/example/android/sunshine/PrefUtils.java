@@ -12,7 +12,6 @@ public class PrefUtils {
 
     private static final String KEY_SYNC_TEMP = "SharedPrefsSyncTemp";
     private static final String KEY_SYNC_ICON = "SharedPrefsSyncIcon";
-    private static final String KEY_SYNC_WAITING = "SharedPrefsSyncWaiting";
 
     private static final String KEY_SYNC_TEMP_DEFAULT = "-- / --";
     private static final String KEY_SYNC_ICON_DEFAULT = "ic_logo";
@@ -41,16 +40,4 @@ public class PrefUtils {
         editor.apply();
     }
 
-    public static void setSyncIsWaitingBoolean(Context context, boolean isWaiting) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.putBoolean(KEY_SYNC_WAITING, isWaiting);
-        editor.apply();
-    }
-
-    public static boolean getSyncIsWaitingBoolean(Context context) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        return prefs.getBoolean(KEY_SYNC_WAITING, false);
-    }
-
 }
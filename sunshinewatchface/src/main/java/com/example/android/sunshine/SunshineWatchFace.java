@@ -21,10 +21,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Resources;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
@@ -33,44 +30,74 @@ import android.os.Handler;
 import android.os.Message;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
-import android.text.format.DateFormat;
-import android.util.Log;
 import android.view.Gravity;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 import android.widget.Toast;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.lang.ref.WeakReference;
-import java.text.SimpleDateFormat;
 import java.util.Calendar;
-import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Digital watch face with seconds. In ambient mode, the seconds aren't displayed. On devices with
- * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
+ * Digital watch face showing hours and minutes. In interactive mode it is redrawn by a timer
+ * aligned to the start of every minute; in ambient mode it is only redrawn on the time tick,
+ * and it is drawn in outline on black. On devices with low-bit
+ * ambient mode, the text is drawn without anti-aliasing in ambient mode, and on devices that
+ * need burn-in protection it is moved by a few pixels every minute.
  */
 public class SunshineWatchFace extends CanvasWatchFaceService {
-    private static final String TAG = SunshineWatchFace.class.getSimpleName();
-
     private static final Typeface NORMAL_TYPEFACE =
           Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
 
     /**
-     * Update rate in milliseconds for interactive mode. We update once a second since seconds are
-     * displayed in interactive mode.
+     * Update rate in milliseconds for interactive mode. We update once a minute since seconds
+     * aren't displayed, which is the next time anything on the face changes.
      */
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.MINUTES.toMillis(1);
 
     /**
      * Handler message id for updating the time periodically in interactive mode.
      */
     private static final int MSG_UPDATE_TIME = 0;
 
+    /* The engine currently drawing, whose frame stats are dumped */
+    private Engine mEngine;
+
     @Override
     public Engine onCreateEngine() {
-        return new Engine();
+        mEngine = new Engine();
+        return mEngine;
+    }
+
+    /**
+     * Prints the frame stats of the watch face, for
+     * "adb shell dumpsys activity service com.example.android.sunshine/.SunshineWatchFace".
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(fd, writer, args);
+        Engine engine = mEngine;
+        if (engine != null) {
+            writer.println("Frame stats:");
+            engine.mFrameStats.dump(writer, "  ");
+        }
+    }
+
+    /**
+     * Returns how long to wait for the start of the next update period, so updates happen as
+     * close as possible to the moment the shown time changes rather than drifting within the
+     * minute.
+     *
+     * @param now        The wall clock time
+     * @param updateRate The update period, in milliseconds
+     * @return The delay, in milliseconds, from 1 to updateRate
+     */
+    static long getDelayToNextUpdate(long now, long updateRate) {
+        return updateRate - (now % updateRate);
     }
 
     private static class EngineHandler extends Handler {
@@ -95,45 +122,58 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
     private class Engine extends CanvasWatchFaceService.Engine {
 
-        private static final long UPDATE_DELAY = 60000;
+        final Handler mUpdateTimeHandler = new EngineHandler(this);
+
+        /* Wall clock time the pending update was scheduled for, or 0 if it runs right away */
+        long mScheduledUpdateMillis;
+
+        final FrameStats mFrameStats = new FrameStats();
 
-        final Handler mUpdateTimeHandler = new Handler() {
-            @Override
-            public void handleMessage(Message msg) {
-                switch (obtainMessage().what) {
-                    case MSG_UPDATE_TIME:
-                        if (Log.isLoggable(TAG, Log.VERBOSE)) {
-                            Log.v(TAG, "Updateing Time");
-                        }
-                        invalidate();
-                        if (shouldTimerBeRunning()) {
-                            mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, UPDATE_DELAY);
-                        }
-                }
-            }
-        }; //new EngineHandler(this);
         boolean mRegisteredTimeZoneReceiver = false;
         Paint mBackgroundPaint;
         Paint mTimeTextPaint;
         Paint mDateTextPaint;
         Paint mTempTextPaint;
-        boolean mAmbient;
+        /* Written on the main thread, read by the weather listener on its own thread */
+        volatile boolean mAmbient;
         Calendar mCalendar;
+        WatchFaceTimeFormatter mTimeFormatter;
+        WatchFaceRenderer mRenderer;
+
+        /*
+         * Besides time zone changes, this also hears about locale changes and changes to the
+         * 24 hour setting (which is broadcast as ACTION_TIME_CHANGED), since those are the only
+         * times the formatter has to be rebuilt.
+         */
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
                 mCalendar.setTimeZone(TimeZone.getDefault());
+                mTimeFormatter.reload(getApplicationContext());
+                mRenderer.invalidateLayers();
                 invalidate();
             }
         };
-        float mXOffset;
-        float mYOffset;
-        float mYDateOffset;
-        float mYTempOffset;
-        boolean mIsRound;
 
-        String mTempText;
-        Bitmap mWeatherIcon;
+        /*
+         * Replaced as a whole by the listener below, from the thread SyncListenerService runs on,
+         * and read once per frame by onDraw. The renderer redraws its weather layer when it sees
+         * a different instance.
+         */
+        volatile WeatherState mWeatherState;
+
+        final WeatherUpdateChannel.Listener mWeatherListener =
+                new WeatherUpdateChannel.Listener() {
+                    @Override
+                    public void onWeatherStateChanged(WeatherState weatherState) {
+                        mWeatherState = weatherState;
+                        // Ambient frames are only drawn on the time tick, which will pick up
+                        // the new weather, so the screen isn't woken up for it.
+                        if (!mAmbient) {
+                            postInvalidate();
+                        }
+                    }
+                };
 
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
@@ -146,7 +186,17 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             super.onCreate(holder);
 
             Resources resources = SunshineWatchFace.this.getResources();
-            setSyncObjects(resources);
+
+            // Listen first so no update is missed, then use the weather that arrived while the
+            // process was running, if any. The preferences are only read when there was none.
+            WeatherUpdateChannel.registerListener(mWeatherListener);
+            WeatherState latestState = WeatherUpdateChannel.getLatestState();
+            if (latestState == null) {
+                latestState = WeatherState.fromPreferences(getApplicationContext());
+            }
+            if (mWeatherState == null) {
+                mWeatherState = latestState;
+            }
 
             setWatchFaceStyle(new WatchFaceStyle.Builder(SunshineWatchFace.this)
                   .setCardPeekMode(WatchFaceStyle.PEEK_MODE_VARIABLE)
@@ -169,23 +219,21 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             mTempTextPaint = createTextPaint(resources.getColor(R.color.white));
 
             mCalendar = Calendar.getInstance();
+            mTimeFormatter = new WatchFaceTimeFormatter(getApplicationContext());
+            mRenderer = new WatchFaceRenderer(mCalendar, mTimeFormatter, mBackgroundPaint,
+                    mTimeTextPaint, mDateTextPaint, mTempTextPaint);
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            WeatherUpdateChannel.unregisterListener(mWeatherListener);
+            if (mEngine == this) {
+                mEngine = null;
+            }
             super.onDestroy();
         }
 
-        private void setSyncObjects(Resources resources) {
-            mTempText = PrefUtils.getSyncTemp(getApplicationContext());
-            String iconName = PrefUtils.getSyncIconName(getApplicationContext());
-            final int resourceId = resources.getIdentifier(iconName, "drawable",
-                  getApplicationContext().getPackageName());
-            mWeatherIcon = BitmapFactory
-                  .decodeResource(getApplicationContext().getResources(),resourceId);
-        }
-
         private Paint createTextPaint(int textColor) {
             Paint paint = new Paint();
             paint.setColor(textColor);
@@ -201,8 +249,11 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             if (visible) {
                 registerReceiver();
 
-                // Update time zone in case it changed while we weren't visible.
+                // Update time zone, locale and time format in case they changed while we weren't
+                // visible.
                 mCalendar.setTimeZone(TimeZone.getDefault());
+                mTimeFormatter.reload(getApplicationContext());
+                mRenderer.invalidateLayers();
                 invalidate();
             } else {
                 unregisterReceiver();
@@ -219,6 +270,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             }
             mRegisteredTimeZoneReceiver = true;
             IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
             SunshineWatchFace.this.registerReceiver(mTimeZoneReceiver, filter);
         }
 
@@ -234,13 +287,9 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         public void onApplyWindowInsets(WindowInsets insets) {
             super.onApplyWindowInsets(insets);
 
-            mIsRound = insets.isRound();
-
             // Load resources that have alternate values for round watches.
             Resources resources = SunshineWatchFace.this.getResources();
             boolean isRound = insets.isRound();
-            mYDateOffset = resources.getDimension(R.dimen.date_y_offset);
-            mYTempOffset = resources.getDimension(R.dimen.temp_y_offset);
 //            mXOffset = resources.getDimension(isRound
 //                  ? R.dimen.digital_x_offset_round : R.dimen.digital_x_offset);
             float timeTextSize = resources.getDimension(isRound
@@ -255,26 +304,22 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             mTimeTextPaint.setTextSize(timeTextSize);
             mTempTextPaint.setTextSize(tempTextSize);
             mDateTextPaint.setTextSize(dateTextSize);
+
+            mRenderer.setOffsets(resources.getDimension(R.dimen.date_y_offset),
+                    resources.getDimension(R.dimen.temp_y_offset));
         }
 
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mRenderer.setBurnInProtection(
+                    properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false));
         }
 
         @Override
         public void onTimeTick() {
             super.onTimeTick();
-
-            boolean syncIsWaiting = PrefUtils.getSyncIsWaitingBoolean(getApplicationContext());
-
-            //Log.d("onTimeTick ", "syncIsWaiting: " + String.valueOf(syncIsWaiting));
-            if (syncIsWaiting) {
-                setSyncObjects(SunshineWatchFace.this.getResources());
-                PrefUtils.setSyncIsWaitingBoolean(getApplicationContext(), false);
-            }
-
             invalidate();
         }
 
@@ -320,67 +365,11 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            float xFactor;
-            if (mIsRound) {
-                xFactor = 8.5f;
-            } else {
-                xFactor = 5f;
-            }
-
-            mXOffset = bounds.width()/xFactor;
-            float xTimeOffsetFactor;
-            float xTempOffsetFactor;
-            mYOffset = bounds.height()/3f;
-
-            // Draw the background.
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-            }
-
-            // Get system preference of hour format and apply
-            long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-
-            //Need to cast to Integer for logical comparison with .equals
-            Integer intPm = Calendar.PM;
-            Integer curHour = mCalendar.get(Calendar.HOUR);
-            boolean is24h = DateFormat.is24HourFormat(getApplicationContext());
-            boolean isPm = intPm.equals(mCalendar.get(Calendar.AM_PM));
-            boolean hourIs10_11_12 = curHour.equals(10) | curHour.equals(11) | curHour.equals(0);
-
-            String hourFormat = is24h?"H":"h";
-
-            if ((is24h & isPm) | (hourIs10_11_12)) {
-                xTimeOffsetFactor = 3.3f;
-            } else {
-                xTimeOffsetFactor = 2.8f;
-            }
-            float timeXOffset = bounds.width()/xTimeOffsetFactor;
-
-            String timeText = new SimpleDateFormat(hourFormat + ":mm", Locale.getDefault())
-                    .format(mCalendar.getTime());
-
-
-
-            float weatherIconX = (bounds.width() - mWeatherIcon.getWidth())/2f;
-            float weatherIconY = bounds.width()*.65f;
-
-
-            int tempTextLength = mTempText.length();
-
-            xTempOffsetFactor = getXOffsetFactor(mIsRound, tempTextLength);
-
-
-
-            float tempXOffset = bounds.width()/xTempOffsetFactor;
-
-            String dateText = new SimpleDateFormat("EEE, MMM d yyyy", Locale.getDefault()).format(mCalendar.getTime());
-            canvas.drawText(timeText, timeXOffset, mYOffset, mTimeTextPaint);
-            canvas.drawText(dateText, mXOffset, mYOffset + mYDateOffset, mDateTextPaint);
-            canvas.drawText(mTempText, tempXOffset, mYOffset + mYTempOffset, mTempTextPaint);
-            canvas.drawBitmap(mWeatherIcon, weatherIconX, weatherIconY, null);
+            long start = System.nanoTime();
+            // Read the weather once, so the text and the icon always come from the same update.
+            mRenderer.draw(canvas, bounds, mWeatherState, isInAmbientMode(),
+                    System.currentTimeMillis());
+            mFrameStats.recordFrame(System.nanoTime() - start);
         }
 
         /**
@@ -390,6 +379,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         private void updateTimer() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
             if (shouldTimerBeRunning()) {
+                mScheduledUpdateMillis = 0;
                 mUpdateTimeHandler.sendEmptyMessage(MSG_UPDATE_TIME);
             }
         }
@@ -403,50 +393,21 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         }
 
         /**
-         * Handle updating the time periodically in interactive mode.
+         * Handle updating the time periodically in interactive mode: redraw, record how late the
+         * update was, and schedule the next one for the start of the next minute.
          */
         private void handleUpdateTimeMessage() {
+            long timeMs = System.currentTimeMillis();
+            if (mScheduledUpdateMillis != 0) {
+                mFrameStats.recordWakeUp(mScheduledUpdateMillis, timeMs);
+            }
+
             invalidate();
             if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
-                long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                      - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
+                long delayMs = getDelayToNextUpdate(timeMs, INTERACTIVE_UPDATE_RATE_MS);
+                mScheduledUpdateMillis = timeMs + delayMs;
                 mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
             }
         }
-
-        private float getXOffsetFactor(boolean isRound, int textLength) {
-            if (!isRound) {
-                switch (textLength) {
-                    case 11:
-                        return 4.06f;
-                    case 10:
-                        return 3.86f;
-                    case 9:
-                        return 3.53f;
-                    case 8:
-                        return 3.26f;
-                    case 7:
-                        return 2.95f;
-                    default:
-                        return 3.53f;
-                }
-            } else {
-                switch (textLength) {
-                    case 11:
-                        return 3.7f;
-                    case 10:
-                        return 3.4f;
-                    case 9:
-                        return 3.1f;
-                    case 8:
-                        return 2.8f;
-                    case 7:
-                        return 2.5f;
-                    default:
-                        return 3.53f;
-                }
-            }
-        }
     }
 }
@@ -10,8 +10,9 @@ import com.google.android.gms.wearable.WearableListenerService;
 
 public class SyncListenerService extends WearableListenerService {
 
-    private static final String KEY_HI_LOW_TEMP = "SunshineSyncWearableHi";
-    private static final String KEY_WEATHER_IMAGE = "SunshineSyncWearableWeatherImage";
+    private static final String TAG = SyncListenerService.class.getSimpleName();
+
+    private static final String KEY_FORECAST = "SunshineSyncWearableForecast";
     private static final String DATA_SYNC_MAP_PATH = "/sunshinewatchface";
 
     @Override
@@ -21,15 +22,34 @@ public class SyncListenerService extends WearableListenerService {
                 DataMap dataMap = DataMapItem.fromDataItem(dataEvent.getDataItem()).getDataMap();
                 String path = dataEvent.getDataItem().getUri().getPath();
                 if (path.equals(DATA_SYNC_MAP_PATH)) {
-                    String hiLowTemp = dataMap.getString(KEY_HI_LOW_TEMP);
-                    String weatherIconName = dataMap.getString(KEY_WEATHER_IMAGE);
+                    WearableForecast forecast =
+                            WearableForecast.decode(dataMap.getByteArray(KEY_FORECAST));
+                    if (forecast == null) {
+                        continue;
+                    }
 
                     Log.d("SyncListener:", " Started");
 
-
-                    PrefUtils.setSyncIsWaitingBoolean(getApplicationContext(), true);
+                    /* The first day of the forecast is today */
+                    String hiLowTemp = forecast.formatHighLow(getApplicationContext(), 0);
+                    int weatherIconId = WearableForecast.getIconResourceId(
+                            forecast.getWeatherId(0));
+
+                    /*
+                     * The preferences are only read when an engine starts, and keep the icon by
+                     * name. Running engines get the new weather straight away, by resource id,
+                     * with the icon decoded here rather than on the thread that draws the watch
+                     * face.
+                     */
                     PrefUtils.setSyncTemp(getApplicationContext(), hiLowTemp);
-                    PrefUtils.setSyncIconName(getApplicationContext(), weatherIconName);
+                    PrefUtils.setSyncIconName(getApplicationContext(),
+                            getResources().getResourceEntryName(weatherIconId));
+                    WeatherUpdateChannel.publish(WeatherState
+                            .create(getApplicationContext(), hiLowTemp, weatherIconId));
+                    if (Log.isLoggable(TAG, Log.DEBUG)) {
+                        Log.d(TAG, "Weather icon cache: "
+                                + WeatherIconCache.getInstance(getApplicationContext()));
+                    }
                 }
             }
         }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine;
+
+import android.graphics.Bitmap;
+import android.graphics.Paint;
+
+/**
+ * Positions of the elements of the watch face. Each text is centered horizontally by measuring
+ * it with its paint, and the measurement is kept until the text, the bounds or the insets
+ * change, so a frame within the same minute measures nothing.
+ * <p>
+ * Whoever changes a text has to say so through {@link #invalidateTime()},
+ * {@link #invalidateDate()} or by passing a different temperature string, and whoever changes
+ * a paint has to call {@link #invalidate()}. Only used on the thread that draws the watch face.
+ */
+public class WatchFaceLayout {
+
+    /* The time sits a third of the way down; the date and temperature are offset below it */
+    private static final float TIME_Y_FACTOR = 1 / 3f;
+
+    /* The weather icon sits this far down, relative to the width of the face */
+    private static final float ICON_Y_FACTOR = .65f;
+
+    private final Paint mTimeTextPaint;
+    private final Paint mDateTextPaint;
+    private final Paint mTempTextPaint;
+
+    private int mWidth = -1;
+    private int mHeight = -1;
+    private float mYDateOffset;
+    private float mYTempOffset;
+
+    private boolean mTimeMeasured;
+    private float mTimeX;
+
+    private boolean mDateMeasured;
+    private float mDateX;
+
+    /* Compared by identity, since a new weather state always brings a new string */
+    private String mMeasuredTempText;
+    private float mTempX;
+
+    private int mMeasureCount;
+
+    public WatchFaceLayout(Paint timeTextPaint, Paint dateTextPaint, Paint tempTextPaint) {
+        mTimeTextPaint = timeTextPaint;
+        mDateTextPaint = dateTextPaint;
+        mTempTextPaint = tempTextPaint;
+    }
+
+    /**
+     * Sets how far below the time the date and the temperature are drawn, which depends on the
+     * insets. Every text is measured again, since their sizes change along with the insets.
+     */
+    public void setOffsets(float yDateOffset, float yTempOffset) {
+        mYDateOffset = yDateOffset;
+        mYTempOffset = yTempOffset;
+        invalidate();
+    }
+
+    /**
+     * Sets the size of the face. Nothing is measured again unless the size changed.
+     */
+    public void setBounds(int width, int height) {
+        if (width != mWidth || height != mHeight) {
+            mWidth = width;
+            mHeight = height;
+            invalidate();
+        }
+    }
+
+    /**
+     * Measures every text again when next asked for, for when a paint changed.
+     */
+    public void invalidate() {
+        mTimeMeasured = false;
+        mDateMeasured = false;
+        mMeasuredTempText = null;
+    }
+
+    /* The time text changed */
+    public void invalidateTime() {
+        mTimeMeasured = false;
+    }
+
+    /* The date text changed */
+    public void invalidateDate() {
+        mDateMeasured = false;
+    }
+
+    public float getTimeX(char[] text, int length) {
+        if (!mTimeMeasured) {
+            mTimeX = center(mTimeTextPaint.measureText(text, 0, length));
+            mTimeMeasured = true;
+        }
+        return mTimeX;
+    }
+
+    public float getTimeY() {
+        return mHeight * TIME_Y_FACTOR;
+    }
+
+    public float getDateX(char[] text, int length) {
+        if (!mDateMeasured) {
+            mDateX = center(mDateTextPaint.measureText(text, 0, length));
+            mDateMeasured = true;
+        }
+        return mDateX;
+    }
+
+    public float getDateY() {
+        return getTimeY() + mYDateOffset;
+    }
+
+    public float getTempX(String tempText) {
+        if (tempText != mMeasuredTempText) {
+            mTempX = center(mTempTextPaint.measureText(tempText));
+            mMeasuredTempText = tempText;
+        }
+        return mTempX;
+    }
+
+    public float getTempY() {
+        return getTimeY() + mYTempOffset;
+    }
+
+    public float getIconX(Bitmap icon) {
+        return (mWidth - icon.getWidth()) / 2f;
+    }
+
+    public float getIconY() {
+        return mWidth * ICON_Y_FACTOR;
+    }
+
+    /* Number of times a text was measured */
+    public int getMeasureCount() {
+        return mMeasureCount;
+    }
+
+    private float center(float textWidth) {
+        mMeasureCount++;
+        return (mWidth - textWidth) / 2f;
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import java.util.Calendar;
+
+/**
+ * Draws the watch face. In interactive mode it is drawn in three layers, so a frame only redraws
+ * what changes every minute.
+ * <ul>
+ * <li>The background, the temperature and the weather icon are drawn into an offscreen bitmap
+ * that is only redrawn when the weather or the bounds change.</li>
+ * <li>The date is drawn into a band of its own, which is redrawn when the day changes.</li>
+ * <li>The time is drawn straight onto the frame.</li>
+ * </ul>
+ * An interactive frame therefore takes two bitmap draws and one text draw.
+ * <p>
+ * Ambient frames are only drawn once a minute, and every pixel they light costs battery, so
+ * they skip the layers, which would copy the whole screen. They clear the screen to black and
+ * draw the text and an outline of the weather icon straight onto it. With burn-in protection,
+ * everything is shifted by a few pixels each minute so no pixel stays lit for long.
+ * <p>
+ * Text is placed by a
+ * {@link WatchFaceLayout}, which measures it only when it changes. Whenever the paints, their
+ * text sizes or the offsets change, {@link #invalidateLayers()} has to be called.
+ * <p>
+ * Only used on the thread that draws the watch face.
+ */
+public class WatchFaceRenderer {
+
+    /*
+     * Pairs of x and y offsets, in pixels, that ambient frames cycle through one per minute
+     * when burn-in protection is on. They stay within a few pixels of the interactive position.
+     */
+    private static final int[] BURN_IN_OFFSETS = {
+            0, 0, -4, 0, -4, -4, 0, -4, 4, -4, 4, 0, 4, 4, 0, 4, -4, 4
+    };
+
+    private final Calendar mCalendar;
+    private final WatchFaceTimeFormatter mTimeFormatter;
+
+    private final Paint mBackgroundPaint;
+    private final Paint mTimeTextPaint;
+    private final Paint mDateTextPaint;
+    private final Paint mTempTextPaint;
+
+    /* Draws the outline of the weather icon in ambient mode */
+    private final Paint mAmbientIconPaint;
+
+    private final WatchFaceLayout mLayout;
+
+    private boolean mBurnInProtection;
+
+    /* The day being shown, to notice when the date text changes */
+    private int mDay = -1;
+
+    /* The background and weather, and what they were drawn for */
+    private Bitmap mStaticLayer;
+    private Canvas mStaticCanvas;
+    private WeatherState mStaticLayerWeather;
+    private boolean mStaticLayerValid;
+
+    /* The date band, and whether it shows the current day */
+    private Bitmap mDateLayer;
+    private Canvas mDateCanvas;
+    private float mDateLayerTop;
+    private boolean mDateLayerValid;
+
+    private final Paint.FontMetrics mFontMetrics = new Paint.FontMetrics();
+
+    private int mStaticLayerBuildCount;
+    private int mDateLayerBuildCount;
+
+    /**
+     * @param calendar        Calendar set to the time of each frame, shared with the engine
+     * @param timeFormatter   Formats the time and date, shared with the engine
+     * @param backgroundPaint Paint of the background in interactive mode
+     * @param timeTextPaint   Paint of the time
+     * @param dateTextPaint   Paint of the date
+     * @param tempTextPaint   Paint of the high and low temperature
+     */
+    public WatchFaceRenderer(Calendar calendar, WatchFaceTimeFormatter timeFormatter,
+            Paint backgroundPaint, Paint timeTextPaint, Paint dateTextPaint,
+            Paint tempTextPaint) {
+        mCalendar = calendar;
+        mTimeFormatter = timeFormatter;
+        mBackgroundPaint = backgroundPaint;
+        mTimeTextPaint = timeTextPaint;
+        mDateTextPaint = dateTextPaint;
+        mTempTextPaint = tempTextPaint;
+        mLayout = new WatchFaceLayout(timeTextPaint, dateTextPaint, tempTextPaint);
+
+        mAmbientIconPaint = new Paint();
+        mAmbientIconPaint.setColor(Color.WHITE);
+    }
+
+    /**
+     * Sets the offsets of the date and temperature below the time, which depend on the insets.
+     */
+    public void setOffsets(float yDateOffset, float yTempOffset) {
+        mLayout.setOffsets(yDateOffset, yTempOffset);
+        invalidateLayers();
+    }
+
+    /**
+     * Sets whether the screen needs to be protected from burn-in in ambient mode, from the
+     * PROPERTY_BURN_IN_PROTECTION of the watch.
+     */
+    public void setBurnInProtection(boolean burnInProtection) {
+        mBurnInProtection = burnInProtection;
+    }
+
+    /**
+     * Redraws both cached layers on the next frame. Needed after a paint changes, and for the
+     * date layer after the locale or time zone changes.
+     */
+    public void invalidateLayers() {
+        mStaticLayerValid = false;
+        mDay = -1;
+        mLayout.invalidate();
+    }
+
+    /**
+     * Draws a frame.
+     *
+     * @param canvas       Canvas of the watch face
+     * @param bounds       Bounds of the watch face
+     * @param weatherState The weather to show
+     * @param ambient      Whether the watch is in ambient mode
+     * @param now          The time to show
+     */
+    public void draw(Canvas canvas, Rect bounds, WeatherState weatherState, boolean ambient,
+            long now) {
+        int width = bounds.width();
+        int height = bounds.height();
+        mLayout.setBounds(width, height);
+
+        // Nothing below allocates unless a layer has to be rebuilt: the time and date are
+        // formatted into reused buffers, and only when the minute changes, which is also the
+        // only time the time is measured again.
+        mCalendar.setTimeInMillis(now);
+        if (mTimeFormatter.format(mCalendar)) {
+            mLayout.invalidateTime();
+        }
+
+        int day = mCalendar.get(Calendar.YEAR) * 1000 + mCalendar.get(Calendar.DAY_OF_YEAR);
+        if (day != mDay) {
+            mDay = day;
+            mDateLayerValid = false;
+            mLayout.invalidateDate();
+        }
+
+        if (ambient) {
+            drawAmbient(canvas, weatherState, now);
+        } else {
+            drawInteractive(canvas, width, height, weatherState);
+        }
+    }
+
+    private void drawInteractive(Canvas canvas, int width, int height,
+            WeatherState weatherState) {
+        if (!mStaticLayerValid || mStaticLayerWeather != weatherState || mStaticLayer == null
+                || mStaticLayer.getWidth() != width || mStaticLayer.getHeight() != height) {
+            buildStaticLayer(width, height, weatherState);
+        }
+
+        if (!mDateLayerValid || mDateLayer == null || mDateLayer.getWidth() != width) {
+            buildDateLayer(width);
+        }
+
+        canvas.drawBitmap(mStaticLayer, 0, 0, null);
+        canvas.drawBitmap(mDateLayer, 0, mDateLayerTop, null);
+        drawTime(canvas);
+    }
+
+    /**
+     * Draws an ambient frame: no background but black, no layers, and the outline of the icon
+     * rather than the icon. With burn-in protection the frame is moved to the next offset in
+     * {@link #BURN_IN_OFFSETS} every minute.
+     */
+    private void drawAmbient(Canvas canvas, WeatherState weatherState, long now) {
+        canvas.drawColor(Color.BLACK);
+
+        int saveCount = canvas.save();
+        if (mBurnInProtection) {
+            int step = (int) (now / 60000 % (BURN_IN_OFFSETS.length / 2));
+            canvas.translate(BURN_IN_OFFSETS[step * 2], BURN_IN_OFFSETS[step * 2 + 1]);
+        }
+
+        drawTime(canvas);
+
+        char[] dateChars = mTimeFormatter.getDateChars();
+        int dateLength = mTimeFormatter.getDateLength();
+        canvas.drawText(dateChars, 0, dateLength, mLayout.getDateX(dateChars, dateLength),
+                mLayout.getDateY(), mDateTextPaint);
+
+        String tempText = weatherState.getTempText();
+        canvas.drawText(tempText, mLayout.getTempX(tempText), mLayout.getTempY(),
+                mTempTextPaint);
+
+        // The outline is a little larger than the icon, so it is centered on where the icon
+        // would be.
+        Bitmap icon = weatherState.getWeatherIcon();
+        Bitmap outline = weatherState.getAmbientIcon();
+        float outlineInset = (outline.getHeight() - icon.getHeight()) / 2f;
+        canvas.drawBitmap(outline, mLayout.getIconX(outline), mLayout.getIconY() - outlineInset,
+                mAmbientIconPaint);
+
+        canvas.restoreToCount(saveCount);
+    }
+
+    private void drawTime(Canvas canvas) {
+        char[] timeChars = mTimeFormatter.getTimeChars();
+        int timeLength = mTimeFormatter.getTimeLength();
+        canvas.drawText(timeChars, 0, timeLength, mLayout.getTimeX(timeChars, timeLength),
+                mLayout.getTimeY(), mTimeTextPaint);
+    }
+
+    /* Positions of the elements, exposed so their measuring can be checked */
+    WatchFaceLayout getLayout() {
+        return mLayout;
+    }
+
+    /* Number of times the background and weather layer was drawn */
+    public int getStaticLayerBuildCount() {
+        return mStaticLayerBuildCount;
+    }
+
+    /* Number of times the date layer was drawn */
+    public int getDateLayerBuildCount() {
+        return mDateLayerBuildCount;
+    }
+
+    private void buildStaticLayer(int width, int height, WeatherState weatherState) {
+        if (mStaticLayer == null || mStaticLayer.getWidth() != width
+                || mStaticLayer.getHeight() != height) {
+            mStaticLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mStaticCanvas = new Canvas(mStaticLayer);
+        }
+
+        mStaticCanvas.drawRect(0, 0, width, height, mBackgroundPaint);
+
+        String tempText = weatherState.getTempText();
+        Bitmap weatherIcon = weatherState.getWeatherIcon();
+
+        mStaticCanvas.drawText(tempText, mLayout.getTempX(tempText), mLayout.getTempY(),
+                mTempTextPaint);
+        mStaticCanvas.drawBitmap(weatherIcon, mLayout.getIconX(weatherIcon), mLayout.getIconY(),
+                null);
+
+        mStaticLayerWeather = weatherState;
+        mStaticLayerValid = true;
+        mStaticLayerBuildCount++;
+    }
+
+    /**
+     * Draws the date into a transparent band just tall enough for the date paint, which is
+     * composited over the static layer.
+     */
+    private void buildDateLayer(int width) {
+        mDateTextPaint.getFontMetrics(mFontMetrics);
+        int height = (int) Math.ceil(mFontMetrics.bottom - mFontMetrics.top);
+
+        if (mDateLayer == null || mDateLayer.getWidth() != width
+                || mDateLayer.getHeight() != height) {
+            mDateLayer = Bitmap.createBitmap(width, Math.max(height, 1),
+                    Bitmap.Config.ARGB_8888);
+            mDateCanvas = new Canvas(mDateLayer);
+        }
+
+        char[] dateChars = mTimeFormatter.getDateChars();
+        int dateLength = mTimeFormatter.getDateLength();
+
+        mDateLayer.eraseColor(Color.TRANSPARENT);
+        mDateCanvas.drawText(dateChars, 0, dateLength, mLayout.getDateX(dateChars, dateLength),
+                -mFontMetrics.top, mDateTextPaint);
+
+        mDateLayerTop = mLayout.getDateY() + mFontMetrics.top;
+        mDateLayerValid = true;
+        mDateLayerBuildCount++;
+    }
+}
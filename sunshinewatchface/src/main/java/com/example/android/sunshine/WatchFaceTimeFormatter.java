@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.text.format.DateFormat;
+
+import java.text.DateFormatSymbols;
+import java.text.DecimalFormatSymbols;
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * Formats the time ("h:mm" or "H:mm") and the date ("EEE, MMM d yyyy") shown by the watch face
+ * into reused char buffers, so drawing a frame doesn't allocate anything.
+ * <p>
+ * The names of the days and months, the digits of the locale and the user's 24 hour setting are
+ * looked up once in {@link #reload(Context)}, which has to be called again whenever the locale,
+ * the time zone or the time format changes.
+ */
+public class WatchFaceTimeFormatter {
+
+    /* Longest date we expect, with room to spare for long day and month names */
+    private static final int MAX_DATE_LENGTH = 64;
+
+    private final char[] mTimeChars = new char[5];
+    private int mTimeLength;
+
+    private final char[] mDateChars = new char[MAX_DATE_LENGTH];
+    private int mDateLength;
+
+    /* Indexed by Calendar.DAY_OF_WEEK and Calendar.MONTH respectively */
+    private String[] mShortWeekdays;
+    private String[] mShortMonths;
+
+    private char mZeroDigit;
+    private boolean m24HourFormat;
+
+    /* The minute the buffers currently hold, so a frame within the same minute does no work */
+    private long mFormattedMinute = -1;
+
+    public WatchFaceTimeFormatter(Context context) {
+        reload(context);
+    }
+
+    /**
+     * Looks up everything that depends on the locale and the user's settings. This allocates, so
+     * it is only called when one of those changes, never while drawing.
+     *
+     * @param context Used to read the 24 hour setting
+     */
+    public void reload(Context context) {
+        Locale locale = Locale.getDefault();
+        DateFormatSymbols symbols = DateFormatSymbols.getInstance(locale);
+        mShortWeekdays = symbols.getShortWeekdays();
+        mShortMonths = symbols.getShortMonths();
+        mZeroDigit = DecimalFormatSymbols.getInstance(locale).getZeroDigit();
+        m24HourFormat = DateFormat.is24HourFormat(context);
+        mFormattedMinute = -1;
+    }
+
+    /**
+     * Formats the time and date held by the calendar into the buffers.
+     *
+     * @param calendar The time to format
+     * @return Whether the buffers were rewritten, which only happens when the minute changes or
+     * after {@link #reload(Context)}
+     */
+    public boolean format(Calendar calendar) {
+        long minute = calendar.getTimeInMillis() / 60000;
+        if (minute == mFormattedMinute) {
+            return false;
+        }
+        mFormattedMinute = minute;
+
+        int hour;
+        if (m24HourFormat) {
+            hour = calendar.get(Calendar.HOUR_OF_DAY);
+        } else {
+            hour = calendar.get(Calendar.HOUR);
+            if (hour == 0) hour = 12;
+        }
+
+        mTimeLength = appendNumber(mTimeChars, 0, hour, 1);
+        mTimeChars[mTimeLength++] = ':';
+        mTimeLength = appendNumber(mTimeChars, mTimeLength, calendar.get(Calendar.MINUTE), 2);
+
+        int length = append(mDateChars, 0, mShortWeekdays[calendar.get(Calendar.DAY_OF_WEEK)]);
+        length = append(mDateChars, length, ", ");
+        length = append(mDateChars, length, mShortMonths[calendar.get(Calendar.MONTH)]);
+        length = append(mDateChars, length, " ");
+        length = appendNumber(mDateChars, length, calendar.get(Calendar.DAY_OF_MONTH), 1);
+        length = append(mDateChars, length, " ");
+        mDateLength = appendNumber(mDateChars, length, calendar.get(Calendar.YEAR), 4);
+        return true;
+    }
+
+    public boolean is24HourFormat() {
+        return m24HourFormat;
+    }
+
+    public char[] getTimeChars() {
+        return mTimeChars;
+    }
+
+    public int getTimeLength() {
+        return mTimeLength;
+    }
+
+    public char[] getDateChars() {
+        return mDateChars;
+    }
+
+    public int getDateLength() {
+        return mDateLength;
+    }
+
+    /**
+     * Copies text into the buffer at the given offset, dropping whatever doesn't fit.
+     *
+     * @return The offset following the copied text
+     */
+    private static int append(char[] buffer, int offset, String text) {
+        int count = Math.min(text.length(), buffer.length - offset);
+        text.getChars(0, count, buffer, offset);
+        return offset + count;
+    }
+
+    /**
+     * Writes a non-negative number into the buffer using the digits of the current locale,
+     * padding it with zeros up to minDigits.
+     *
+     * @return The offset following the number
+     */
+    private int appendNumber(char[] buffer, int offset, int number, int minDigits) {
+        int digits = 1;
+        for (int rest = number / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, minDigits);
+        if (offset + digits > buffer.length) {
+            return offset;
+        }
+
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = (char) (mZeroDigit + number % 10);
+            number /= 10;
+        }
+        return offset + digits;
+    }
+}
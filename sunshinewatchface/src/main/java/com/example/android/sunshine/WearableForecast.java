@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * The forecast sent by the phone, decoded from the binary layout written by the phone's
+ * WearablePayload:
+ * <pre>
+ *     byte  version
+ *     byte  units               (0 metric, 1 imperial)
+ *     int   first day           (days since the epoch, UTC)
+ *     byte  day count
+ *     then, for every day:
+ *     float high                (°C)
+ *     float low                 (°C)
+ *     short weather id
+ * </pre>
+ */
+public final class WearableForecast {
+
+    private static final String TAG = WearableForecast.class.getSimpleName();
+
+    /* The only version of the layout this decoder understands */
+    private static final byte VERSION = 1;
+
+    private static final byte UNITS_METRIC = 0;
+
+    private final boolean mMetric;
+    private final int mFirstDay;
+    private final float[] mHighs;
+    private final float[] mLows;
+    private final int[] mWeatherIds;
+
+    private WearableForecast(boolean metric, int firstDay, float[] highs, float[] lows,
+            int[] weatherIds) {
+        mMetric = metric;
+        mFirstDay = firstDay;
+        mHighs = highs;
+        mLows = lows;
+        mWeatherIds = weatherIds;
+    }
+
+    /**
+     * Decodes a forecast sent by the phone.
+     *
+     * @param payload The bytes received from the phone
+     * @return The forecast, or null if the payload has an unknown version or is malformed
+     */
+    public static WearableForecast decode(byte[] payload) {
+        if (payload == null || payload.length == 0) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        try {
+            byte version = buffer.get();
+            if (version != VERSION) {
+                Log.w(TAG, "Ignoring forecast with unknown version " + version);
+                return null;
+            }
+
+            boolean metric = buffer.get() == UNITS_METRIC;
+            int firstDay = buffer.getInt();
+            int dayCount = buffer.get() & 0xff;
+            if (dayCount == 0) {
+                return null;
+            }
+
+            float[] highs = new float[dayCount];
+            float[] lows = new float[dayCount];
+            int[] weatherIds = new int[dayCount];
+            for (int i = 0; i < dayCount; i++) {
+                highs[i] = buffer.getFloat();
+                lows[i] = buffer.getFloat();
+                weatherIds[i] = buffer.getShort();
+            }
+
+            return new WearableForecast(metric, firstDay, highs, lows, weatherIds);
+        } catch (BufferUnderflowException e) {
+            Log.w(TAG, "Ignoring truncated forecast", e);
+            return null;
+        }
+    }
+
+    public boolean isMetric() {
+        return mMetric;
+    }
+
+    /* The first day of the forecast, in days since the epoch */
+    public int getFirstDay() {
+        return mFirstDay;
+    }
+
+    public int getDayCount() {
+        return mWeatherIds.length;
+    }
+
+    /* High temperature of the given day in °C */
+    public float getHigh(int day) {
+        return mHighs[day];
+    }
+
+    /* Low temperature of the given day in °C */
+    public float getLow(int day) {
+        return mLows[day];
+    }
+
+    public int getWeatherId(int day) {
+        return mWeatherIds[day];
+    }
+
+    /**
+     * Formats the high and low temperature of a day the way the phone shows them, in the units
+     * the user picked on the phone: "HIGH° / LOW°".
+     *
+     * @param context Used to read the temperature format
+     * @param day     Index of the day in the forecast
+     * @return The formatted temperatures
+     */
+    public String formatHighLow(Context context, int day) {
+        return formatTemperature(context, mHighs[day]) + " / "
+                + formatTemperature(context, mLows[day]);
+    }
+
+    private String formatTemperature(Context context, float temperature) {
+        double rounded = Math.round(temperature);
+        if (!mMetric) {
+            rounded = rounded * 1.8 + 32;
+        }
+        return String.format(context.getString(R.string.format_temperature), rounded);
+    }
+
+    /**
+     * Returns the icon for a weather condition. This is the same mapping the phone uses for its
+     * small icons.
+     *
+     * @param weatherId Weather condition ID from OpenWeatherMap
+     * @return Drawable resource ID of the icon
+     */
+    public static int getIconResourceId(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 771 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        } else if (weatherId >= 900 && weatherId <= 906) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 958 && weatherId <= 962) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 951 && weatherId <= 957) {
+            return R.drawable.ic_clear;
+        }
+
+        Log.e(TAG, "Unknown Weather: " + weatherId);
+        return R.drawable.ic_storm;
+    }
+}
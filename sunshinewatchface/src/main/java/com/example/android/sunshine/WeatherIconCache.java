@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.util.LruCache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory cache of the decoded weather icons, the watch face's counterpart of the phone's
+ * WeatherArtCache. The weather rarely changes condition from one sync to the next, so most
+ * updates and engine starts find their icon here instead of decoding it again.
+ * <p>
+ * The watch face draws the icon as it is decoded, so entries are keyed by resource id alone.
+ * Ambient mode draws an outline of the icon instead, which is kept in a cache of its own. Both
+ * are bounded by bytes and emptied when the system asks for memory back.
+ */
+public final class WeatherIconCache {
+
+    /* A handful of decoded icons, which is every condition the watch face can show */
+    private static final int MAX_BYTES = 512 * 1024;
+
+    /* Outlines only keep an alpha channel, so they take a quarter of the bytes of the icons */
+    private static final int MAX_OUTLINE_BYTES = MAX_BYTES / 4;
+
+    /* Width of the outline drawn around the icon in ambient mode, in pixels */
+    private static final int OUTLINE_WIDTH_PX = 2;
+
+    private static WeatherIconCache sInstance;
+
+    private final Resources mResources;
+    private final LruCache<Integer, Bitmap> mIcons;
+    private final LruCache<Integer, Bitmap> mOutlines;
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mDecodeNanos = new AtomicLong();
+
+    /**
+     * Returns the cache of the watch face, which is trimmed along with the rest of its memory.
+     *
+     * @param context Used to read the resources
+     * @return The cache shared by the whole watch face
+     */
+    public static synchronized WeatherIconCache getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            sInstance = new WeatherIconCache(appContext.getResources());
+            appContext.registerComponentCallbacks(new ComponentCallbacks2() {
+                @Override
+                public void onTrimMemory(int level) {
+                    if (level >= TRIM_MEMORY_RUNNING_LOW) {
+                        sInstance.evictAll();
+                    }
+                }
+
+                @Override
+                public void onLowMemory() {
+                    sInstance.evictAll();
+                }
+
+                @Override
+                public void onConfigurationChanged(Configuration newConfig) {
+                }
+            });
+        }
+        return sInstance;
+    }
+
+    private WeatherIconCache(Resources resources) {
+        mResources = resources;
+        mIcons = new LruCache<Integer, Bitmap>(MAX_BYTES) {
+            @Override
+            protected int sizeOf(Integer key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        mOutlines = new LruCache<Integer, Bitmap>(MAX_OUTLINE_BYTES) {
+            @Override
+            protected int sizeOf(Integer key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Returns the icon for a resource, decoding it if it isn't cached yet.
+     *
+     * @param resourceId The drawable of the weather icon
+     * @return The icon, or null if the resource couldn't be decoded. It is shared, so it must
+     * not be changed or recycled.
+     */
+    public Bitmap get(int resourceId) {
+        Bitmap icon = mIcons.get(resourceId);
+        if (icon != null) {
+            mHitCount.incrementAndGet();
+            return icon;
+        }
+
+        long start = System.nanoTime();
+        icon = BitmapFactory.decodeResource(mResources, resourceId);
+        mDecodeNanos.addAndGet(System.nanoTime() - start);
+        mMissCount.incrementAndGet();
+
+        if (icon != null) {
+            mIcons.put(resourceId, icon);
+        }
+        return icon;
+    }
+
+    /**
+     * Returns the outline of the icon for a resource, which ambient mode draws instead of the
+     * icon so that only a thin line of pixels is lit. It is created if it isn't cached yet.
+     *
+     * @param resourceId The drawable of the weather icon
+     * @return An alpha only bitmap, drawn in the color of the paint it is drawn with. It is a
+     * couple of pixels larger than the icon on every side, or null if the icon couldn't be
+     * decoded. It is shared, so it must not be changed or recycled.
+     */
+    public Bitmap getOutline(int resourceId) {
+        Bitmap outline = mOutlines.get(resourceId);
+        if (outline == null) {
+            Bitmap icon = get(resourceId);
+            if (icon == null) {
+                return null;
+            }
+            outline = createOutline(icon, OUTLINE_WIDTH_PX);
+            mOutlines.put(resourceId, outline);
+        }
+        return outline;
+    }
+
+    /**
+     * Traces the shape of an icon: its alpha is drawn shifted by the width of the outline in
+     * every direction, and then the unshifted alpha is cut out of the middle, which leaves a
+     * ring around the shape.
+     */
+    static Bitmap createOutline(Bitmap icon, int width) {
+        Bitmap mask = icon.extractAlpha();
+        Bitmap outline = Bitmap.createBitmap(icon.getWidth() + 2 * width,
+                icon.getHeight() + 2 * width, Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(outline);
+
+        Paint paint = new Paint();
+        for (int dx = -width; dx <= width; dx += width) {
+            for (int dy = -width; dy <= width; dy += width) {
+                if (dx != 0 || dy != 0) {
+                    canvas.drawBitmap(mask, width + dx, width + dy, paint);
+                }
+            }
+        }
+
+        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.DST_OUT));
+        canvas.drawBitmap(mask, width, width, paint);
+
+        mask.recycle();
+        return outline;
+    }
+
+    private void evictAll() {
+        mIcons.evictAll();
+        mOutlines.evictAll();
+    }
+
+    @Override
+    public String toString() {
+        long hits = mHitCount.get();
+        long misses = mMissCount.get();
+        long lookups = hits + misses;
+        long decodeMillisSaved = misses == 0 ? 0 : mDecodeNanos.get() / misses * hits / 1000000;
+        return "hits=" + hits + " misses=" + misses
+                + " hitRate=" + (lookups == 0 ? 0 : Math.round(100.0 * hits / lookups))
+                + "% decodeMillisSaved=" + decodeMillisSaved;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+/**
+ * The weather shown by the watch face, ready to be drawn. Instances are immutable, so the engine
+ * can swap in a new one with a single assignment while it is being drawn.
+ */
+public final class WeatherState {
+
+    private final String mTempText;
+    private final Bitmap mWeatherIcon;
+    private final Bitmap mAmbientIcon;
+
+    private WeatherState(String tempText, Bitmap weatherIcon, Bitmap ambientIcon) {
+        mTempText = tempText;
+        mWeatherIcon = weatherIcon;
+        mAmbientIcon = ambientIcon;
+    }
+
+    /**
+     * Prepares a state for drawing, which includes decoding the icon and tracing its outline for
+     * ambient mode unless they are cached. This can do disk I/O, so it shouldn't be called on
+     * the thread that draws the watch face.
+     *
+     * @param context    Used to load the icon
+     * @param tempText   The high and low temperature, as sent by the phone
+     * @param resourceId The drawable of the weather icon, or 0 if there is none
+     * @return The prepared state
+     */
+    public static WeatherState create(Context context, String tempText, int resourceId) {
+        WeatherIconCache iconCache = WeatherIconCache.getInstance(context);
+
+        // An icon this version of the watch face doesn't have is shown as the logo.
+        Bitmap weatherIcon = iconCache.get(resourceId);
+        if (weatherIcon == null) {
+            resourceId = R.drawable.ic_logo;
+            weatherIcon = iconCache.get(resourceId);
+        }
+        return new WeatherState(tempText, weatherIcon, iconCache.getOutline(resourceId));
+    }
+
+    /**
+     * Prepares a state from the last weather received from the phone, which is kept in the
+     * preferences. The icon is kept by name, since resource ids can change between versions of
+     * the watch face, so it is looked up here; that is slow, but only happens when an engine
+     * starts.
+     *
+     * @param context Used to read the preferences and find the icon
+     * @return The prepared state
+     */
+    public static WeatherState fromPreferences(Context context) {
+        int resourceId = context.getResources().getIdentifier(
+                PrefUtils.getSyncIconName(context), "drawable", context.getPackageName());
+        return create(context, PrefUtils.getSyncTemp(context), resourceId);
+    }
+
+    public String getTempText() {
+        return mTempText;
+    }
+
+    public Bitmap getWeatherIcon() {
+        return mWeatherIcon;
+    }
+
+    /* The outline of the icon, an alpha only bitmap drawn in ambient mode */
+    public Bitmap getAmbientIcon() {
+        return mAmbientIcon;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands new weather from {@link SyncListenerService} to any running watch face engine within the
+ * same process. The engines are told about new weather as soon as it arrives, so they don't need
+ * to check for it on every tick.
+ */
+public final class WeatherUpdateChannel {
+
+    /**
+     * Receives new weather. Listeners are called on the thread that published the weather, which
+     * is never the thread that draws the watch face.
+     */
+    public interface Listener {
+        void onWeatherStateChanged(WeatherState weatherState);
+    }
+
+    private static final AtomicReference<WeatherState> sLatestState = new AtomicReference<>();
+    private static final CopyOnWriteArrayList<Listener> sListeners =
+            new CopyOnWriteArrayList<>();
+
+    private WeatherUpdateChannel() {
+    }
+
+    /**
+     * Makes new weather the latest and passes it to every registered listener.
+     *
+     * @param weatherState The new weather, already prepared for drawing
+     */
+    public static void publish(WeatherState weatherState) {
+        sLatestState.set(weatherState);
+        for (Listener listener : sListeners) {
+            listener.onWeatherStateChanged(weatherState);
+        }
+    }
+
+    /**
+     * @return The latest weather published since the process started, or null if there was none
+     */
+    public static WeatherState getLatestState() {
+        return sLatestState.get();
+    }
+
+    public static void registerListener(Listener listener) {
+        sListeners.addIfAbsent(listener);
+    }
+
+    public static void unregisterListener(Listener listener) {
+        sListeners.remove(listener);
+    }
+}